@@ -1,6 +1,7 @@
-import java.text.NumberFormat;
-import java.util.Locale;
-import java.util.Map;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Scanner;
@@ -13,11 +14,12 @@ import java.util.Scanner;
  * <ul>
  *   <li><b>Customer mode</b>: list items, add to cart, view cart, checkout</li>
  *   <li><b>Admin mode</b>: view inventory, restock products, view top sellers</li>
- *   <li>Inventory persists to a simple text file on exit via a shutdown hook</li>
+ *   <li>Inventory backend chosen with {@code -Dkiosk.store=jdbc|memory|file|mapped}; file-backed
+ *       stores also persist on exit via a shutdown hook</li>
  * </ul>
  * <p>
  * This class coordinates high-level I/O flow and delegates data operations to
- * {@code Inventory}, {@code Product}, and {@code Cart}.
+ * {@code InventoryStore}, {@code Product}, and {@code Cart}.
  *
  * @author Joseph Guarriello
  */
@@ -28,6 +30,12 @@ public class App {
     private static final String ADMIN_PIN = "1234";
     /** Inventory seed/backup file name. */
     private static final String INVENTORY_FILE = "products.txt";
+    /** Order journal written by the kiosk (rotated files sit next to it). */
+    private static final String ORDERS_FILE = "orders.csv";
+    /** Soft holds on the stock in customers' carts; created once the inventory is open. */
+    private static StockReservations reservations;
+    /** Sales report engine; keeps closed days cached between reports. */
+    private static final SalesAnalytics analytics = new SalesAnalytics();
 
     /**
      * Application entry point.
@@ -35,7 +43,8 @@ public class App {
      * @param args CLI args (unused)
      */
     public static void main(String[] args) {
-        Inventory inventory = seed();
+        InventoryStore inventory = seed();
+        reservations = StockReservations.forStore(inventory, p -> inventory.find(p.getId()).map(Product::getStock).orElse(0));
 
         // Persist on exit regardless of where we return
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -71,8 +80,9 @@ public class App {
      *
      * @param inv active inventory instance
      */
-    private static void runCustomer(Inventory inv) {
+    private static void runCustomer(InventoryStore inv) {
         Cart cart = new Cart();
+        StockReservations.Hold hold = reservations.open();
         while (true) {
             println("""
                     
@@ -86,10 +96,13 @@ public class App {
             String choice = prompt("Select");
             switch (choice) {
                 case "1" -> listItems(inv);
-                case "2" -> addToCart(inv, cart);
+                case "2" -> addToCart(inv, cart, hold);
                 case "3" -> viewCart(cart);
-                case "4" -> checkout(inv, cart);
-                case "0" -> { return; }
+                case "4" -> checkout(inv, cart, hold);
+                case "0" -> {
+                    hold.releaseAll(); // the cart is abandoned
+                    return;
+                }
                 default -> println("Invalid option.");
             }
         }
@@ -102,7 +115,7 @@ public class App {
      *
      * @param inv active inventory instance
      */
-    private static void runAdmin(Inventory inv) {
+    private static void runAdmin(InventoryStore inv) {
         String pin = prompt("Enter admin PIN");
         if (!ADMIN_PIN.equals(pin)) {
             println("Access denied.");
@@ -115,6 +128,8 @@ public class App {
                       1) View inventory
                       2) Restock product
                       3) Top sellers
+                      4) Sync catalog from file
+                      5) Sales report
                       0) Back
                     """);
             String choice = prompt("Select");
@@ -122,6 +137,8 @@ public class App {
                 case "1" -> listItems(inv);
                 case "2" -> doRestock(inv);
                 case "3" -> showTopSellers(inv);
+                case "4" -> doSync(inv);
+                case "5" -> showSalesReport(inv);
                 case "0" -> { return; }
                 default -> println("Invalid option.");
             }
@@ -135,23 +152,24 @@ public class App {
      *
      * @param inv active inventory instance
      */
-    private static void listItems(Inventory inv) {
+    private static void listItems(InventoryStore inv) {
         println("\nID   Category     Name                         Price     Stock");
         println("---- ------------ ---------------------------- --------- -----");
-        for (Product p : inv.all()) {
-            printf("%-4d %-12s %-28s %-9s %5d%n",
-                    p.getId(), p.getCategory(), p.getName(), formatMoney(p.getPrice()), p.getStock());
-        }
+        // streamed through a server-side cursor so large catalogs never sit in memory at once
+        inv.forEach(p -> printf("%-4d %-12s %-28s %-9s %5d%n",
+                p.getId(), p.getCategory(), p.getName(), Money.format(p.getPriceCents()), p.getStock()));
     }
 
     /**
-     * Prompts the user for a product ID and quantity, validates both, and adds the line to the cart.
+     * Prompts the user for a product ID and quantity, validates both, holds the quantity
+     * against stock, and adds the line to the cart.
      * Gracefully handles EOF and number format errors.
      *
      * @param inv   active inventory instance
      * @param cart  current customer's cart
+     * @param hold  stock held by the cart
      */
-    private static void addToCart(Inventory inv, Cart cart) {
+    private static void addToCart(InventoryStore inv, Cart cart, StockReservations.Hold hold) {
         try {
             Integer id = promptInt("Enter product ID");
             if (id == null) return; // user hit EOF or invalid entry already messaged
@@ -166,8 +184,8 @@ public class App {
             Integer qty = promptPositiveInt("Quantity");
             if (qty == null) return;
 
-            if (qty > p.getStock()) {
-                println("Not enough stock. Available: " + p.getStock());
+            if (!hold.reserve(p, qty)) {
+                println("Not enough stock. Available: " + reservations.available(p));
                 return;
             }
 
@@ -193,37 +211,43 @@ public class App {
         println("\nCart:");
         println("Qty  Item                           Price      Line Total");
         println("---  ----------------------------   --------   ----------");
-        cart.lines().forEach((p, q) -> {
-            double line = p.getPrice() * q;
-            printf("%-4d %-28s   %-9s   %-10s%n",
-                    q, p.getName(), formatMoney(p.getPrice()), formatMoney(line));
-        });
+        for (int i = 0; i < cart.size(); i++) {
+            printf("%-4d %-28s   %-9s   %-10s%n", cart.quantity(i), cart.product(i).getName(),
+                    Money.format(cart.unitCents(i)), Money.format(cart.lineCents(i)));
+        }
         println("---------------------------------------------------------");
-        println("Subtotal: " + formatMoney(cart.subtotal()));
+        println("Subtotal: " + Money.format(cart.subtotalCents()));
     }
 
     /**
-     * Validates stock, consumes inventory, clears the cart, and persists the inventory.
+     * Applies the sale with guarded stock decrements, clears the cart, and persists the inventory.
+     * If any line lacks stock nothing is sold and the short items are listed.
      *
      * @param inv  active inventory instance
      * @param cart current customer's cart
+     * @param hold stock held by the cart; released once the sale commits
      */
-    private static void checkout(Inventory inv, Cart cart) {
+    private static void checkout(InventoryStore inv, Cart cart, StockReservations.Hold hold) {
         if (cart.isEmpty()) {
             println("Cart is empty.");
             return;
         }
-        // Double-check stock before consuming
-        for (Map.Entry<Product, Integer> e : cart.lines().entrySet()) {
-            if (e.getValue() > e.getKey().getStock()) {
-                println("Insufficient stock for " + e.getKey().getName() + ". Please adjust cart.");
-                return;
+        var lost = hold.renew(cart.lines()); // only if the hold timed out
+        if (!lost.isEmpty()) {
+            for (Product p : lost) println("Your cart was idle and " + p.getName() + " is no longer available in that quantity.");
+            return;
+        }
+        SaleResult result = inv.applySale(new LinkedHashMap<>(cart.lines()));
+        if (!result.committed()) {
+            for (Product p : result.outOfStock()) {
+                println("Insufficient stock for " + p.getName() + ". Please adjust cart.");
             }
+            return;
         }
-        cart.lines().forEach(Product::consume);
-        double total = cart.subtotal();
+        long total = cart.subtotalCents();
+        hold.releaseAll(); // the sale now owns the units
         cart.clear();
-        println("Checkout complete! Total: " + formatMoney(total));
+        println("Checkout complete! Total: " + Money.format(total));
         println("Thank you for your order.");
         // persist inventory after sale
         inv.saveToFile();
@@ -235,7 +259,7 @@ public class App {
      *
      * @param inv active inventory instance
      */
-    private static void doRestock(Inventory inv) {
+    private static void doRestock(InventoryStore inv) {
         try {
             Integer id = promptInt("Product ID to restock");
             if (id == null) return;
@@ -253,12 +277,34 @@ public class App {
         }
     }
 
+    /**
+     * Syncs the MySQL catalog with a products file, writing only rows that changed.
+     *
+     * @param inv active inventory instance
+     */
+    private static void doSync(InventoryStore inv) {
+        if (!(inv instanceof Inventory db)) {
+            println("Sync is only available with the MySQL store.");
+            return;
+        }
+        try {
+            String file = prompt("Products file [" + INVENTORY_FILE + "]");
+            if (file.isEmpty()) file = INVENTORY_FILE;
+            boolean delete = prompt("Delete products missing from the file? (y/N)").equalsIgnoreCase("y");
+            println("Synced: " + db.syncFromFile(file, delete));
+        } catch (NoSuchElementException e) {
+            println("Input closed. Returning to menu.");
+        } catch (Exception e) {
+            println("Error: " + e.getMessage());
+        }
+    }
+
     /**
      * Displays the top-N selling products (default 5) with rank, sold count, stock, and price.
      *
      * @param inv active inventory instance
      */
-    private static void showTopSellers(Inventory inv) {
+    private static void showTopSellers(InventoryStore inv) {
         int n = 5;
         var list = inv.topSelling(n);
         if (list.isEmpty()) {
@@ -271,7 +317,51 @@ public class App {
         int rank = 1;
         for (Product p : list) {
             printf("%-4d %-28s   %-4d  %-5d  %-8s%n",
-                    rank++, p.getName(), p.getSold(), p.getStock(), formatMoney(p.getPrice()));
+                    rank++, p.getName(), p.getSold(), p.getStock(), Money.format(p.getPriceCents()));
+        }
+    }
+
+    /**
+     * Prompts for a date range and prints revenue, order value, basket size, and sales by hour,
+     * product and category, computed from the order journal.
+     *
+     * @param inv active inventory instance (for product categories)
+     */
+    private static void showSalesReport(InventoryStore inv) {
+        try {
+            LocalDate today = LocalDate.now();
+            String f = prompt("From (yyyy-MM-dd) [" + today.minusDays(6) + "]");
+            String t = prompt("To (yyyy-MM-dd) [" + today + "]");
+            LocalDate from = f.isEmpty() ? today.minusDays(6) : LocalDate.parse(f);
+            LocalDate to = t.isEmpty() ? today : LocalDate.parse(t);
+
+            SalesAnalytics.SalesReport r = analytics.report(SalesAnalytics.journalFiles(Path.of(ORDERS_FILE)),
+                    from, to, SalesAnalytics.categories(inv.all()));
+            println("\nSales " + from + " to " + to + ":");
+            printf("Orders: %d   Units: %d   Revenue: %s%n", r.orders(), r.units(), Money.format(r.revenueCents()));
+            printf("Average order: %s   Basket size: %.2f items%n", Money.format(r.averageOrderCents()), r.basketSize());
+            if (r.orders() == 0) return;
+
+            println("\nHour  Orders  Revenue");
+            println("----  ------  ----------");
+            for (int h = 0; h < 24; h++) {
+                if (r.ordersByHour()[h] == 0 && r.revenueByHour()[h] == 0) continue;
+                printf("%02d:00 %6d  %10s%n", h, r.ordersByHour()[h], Money.format(r.revenueByHour()[h]));
+            }
+            println("\nProduct                        Category     Units  Revenue");
+            println("----------------------------   ------------ -----  ----------");
+            r.products().stream().limit(10).forEach(p -> printf("%-28s   %-12s %5d  %10s%n",
+                    p.product(), p.category(), p.units(), Money.format(p.revenueCents())));
+            println("\nCategory       Revenue");
+            println("------------   ----------");
+            r.revenueByCategory().forEach((c, cents) -> printf("%-12s   %10s%n", c, Money.format(cents)));
+            printf("%n(%,d journal bytes scanned in %d ms)%n", r.bytesScanned(), r.millis());
+        } catch (DateTimeParseException e) {
+            println("Invalid date: " + e.getParsedString());
+        } catch (NoSuchElementException e) {
+            println("Input closed. Returning to menu.");
+        } catch (Exception e) {
+            println("Error: " + e.getMessage());
         }
     }
 
@@ -280,10 +370,10 @@ public class App {
     /**
      * Initializes inventory and imports data from {@link #INVENTORY_FILE} if empty.
      *
-     * @return a ready-to-use {@code Inventory} instance
+     * @return a ready-to-use {@code InventoryStore} (backend from {@code kiosk.store})
      */
-    private static Inventory seed() {
-        Inventory inv = new Inventory();
+    private static InventoryStore seed() {
+        InventoryStore inv = InventoryStore.fromSystemProperty();
         inv.importFromFileIfEmpty(INVENTORY_FILE); // seeds DB once if empty
         // load from text file if present
         return inv;
@@ -362,14 +452,4 @@ public class App {
     private static void printf(String fmt, Object... args) {
         System.out.printf(fmt, args);
     }
-
-    /**
-     * Formats a currency amount using the U.S. locale.
-     *
-     * @param amount a monetary value
-     * @return formatted currency string (e.g., "$4.50")
-     */
-    private static String formatMoney(double amount) {
-        return NumberFormat.getCurrencyInstance(Locale.US).format(amount);
-    }
 }
\ No newline at end of file
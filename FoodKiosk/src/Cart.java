@@ -1,21 +1,44 @@
-import java.util.LinkedHashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /* You are not expected to understand this –Dennis Richie's—yes, that Dennis Richie!— Odd Comments and Strange Doings in Unix*/
 
 /**
  * Represents a customer's shopping cart in the Food-Type Kiosk system.
  * <p>
- * The cart stores {@link Product} objects and their quantities
- * using a {@link LinkedHashMap} to preserve insertion order.
- * It provides methods to add products, compute the subtotal,
- * and check or clear contents.
+ * Lines are kept in insertion order in parallel arrays (product, quantity, unit price in
+ * {@link Money} cents), and an open-addressing table maps each product id to its line, so no
+ * quantity is boxed and a lookup is a few array reads. The subtotal is a running sum in cents,
+ * adjusted on every add, set and remove, so {@link #subtotal()} is constant-time and free of
+ * floating-point drift.
+ * <p>
+ * The UI reads lines by position ({@link #size()}, {@link #product(int)}, {@link #quantity(int)},
+ * {@link #lineCents(int)}) without allocating. {@link #lines()} remains as a live map view for
+ * code that wants a {@code Map<Product,Integer>}.
+ * <p>
+ * Not thread-safe: a cart belongs to one customer session.
  *
  * @author Joseph Guarriello
  */
 public class Cart {
-    /** Map of products and their associated quantities. */
-    private final Map<Product, Integer> lines = new LinkedHashMap<>();
+    private static final int INITIAL_LINES = 8;
+
+    /** Products, quantities and unit prices (cents) by line, in insertion order. */
+    private Product[] products = new Product[INITIAL_LINES];
+    private int[] qty = new int[INITIAL_LINES];
+    private long[] unitCents = new long[INITIAL_LINES];
+    private int size;
+
+    /** Product id to line + 1 (0 = empty slot); linear probing, at most half full. */
+    private int[] index = new int[INITIAL_LINES * 2];
+
+    private long subtotalCents;
+    private Map<Product, Integer> view;
 
     /**
      * Adds a product to the cart, merging quantities if the product already exists.
@@ -26,7 +49,46 @@ public class Cart {
      */
     public void add(Product p, int qty) {
         if (qty <= 0) throw new IllegalArgumentException("Quantity must be positive");
-        lines.merge(p, qty, Integer::sum);
+        int line = find(p.getId());
+        if (line < 0) {
+            append(p, qty);
+        } else {
+            this.qty[line] += qty;
+            subtotalCents += unitCents[line] * qty;
+        }
+    }
+
+    /**
+     * Sets a product's quantity, adding the line if needed; zero removes it.
+     *
+     * @param p   the product
+     * @param qty the new quantity (must not be negative)
+     * @return the previous quantity ({@code 0} if the product was not in the cart)
+     * @throws IllegalArgumentException if {@code qty < 0}
+     */
+    public int set(Product p, int qty) {
+        if (qty < 0) throw new IllegalArgumentException("Quantity must not be negative");
+        int line = find(p.getId());
+        if (line < 0) {
+            if (qty > 0) append(p, qty);
+            return 0;
+        }
+        if (qty == 0) return removeLine(line);
+        int old = this.qty[line];
+        this.qty[line] = qty;
+        subtotalCents += unitCents[line] * (qty - old);
+        return old;
+    }
+
+    /**
+     * Removes a product's line.
+     *
+     * @param p the product
+     * @return the quantity removed ({@code 0} if the product was not in the cart)
+     */
+    public int remove(Product p) {
+        int line = find(p.getId());
+        return line < 0 ? 0 : removeLine(line);
     }
 
     /**
@@ -35,18 +97,76 @@ public class Cart {
      * @return total price of all products in the cart
      */
     public double subtotal() {
-        return lines.entrySet().stream()
-                .mapToDouble(e -> e.getKey().getPrice() * e.getValue())
-                .sum();
+        return Money.toDollars(subtotalCents);
+    }
+
+    /**
+     * @return total price of all products in the cart, in cents
+     */
+    public long subtotalCents() {
+        return subtotalCents;
+    }
+
+    // ---------- Lines by position ----------
+
+    /**
+     * @return number of lines (distinct products)
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param line line position, {@code 0 <= line < size()}
+     * @return the line's product
+     */
+    public Product product(int line) {
+        return products[checkLine(line)];
+    }
+
+    /**
+     * @param line line position
+     * @return the line's quantity
+     */
+    public int quantity(int line) {
+        return qty[checkLine(line)];
+    }
+
+    /**
+     * @param line line position
+     * @return the line's unit price in cents
+     */
+    public long unitCents(int line) {
+        return unitCents[checkLine(line)];
     }
 
     /**
-     * Returns a view of the product–quantity map for iteration or display.
+     * @param line line position
+     * @return quantity times unit price, in cents
+     */
+    public long lineCents(int line) {
+        checkLine(line);
+        return unitCents[line] * qty[line];
+    }
+
+    /**
+     * @param productId product identifier
+     * @return the product's quantity in the cart, {@code 0} if absent
+     */
+    public int quantityOf(int productId) {
+        int line = find(productId);
+        return line < 0 ? 0 : qty[line];
+    }
+
+    /**
+     * Returns a live view of the product–quantity map for iteration or display, in insertion
+     * order. {@code put} and {@code remove} write through to the cart.
      *
      * @return map of {@link Product} to quantity
      */
     public Map<Product, Integer> lines() {
-        return lines;
+        if (view == null) view = new LinesView();
+        return view;
     }
 
     /**
@@ -55,13 +175,138 @@ public class Cart {
      * @return {@code true} if the cart has no items; {@code false} otherwise
      */
     public boolean isEmpty() {
-        return lines.isEmpty();
+        return size == 0;
     }
 
     /**
      * Clears all items from the cart.
      */
     public void clear() {
-        lines.clear();
+        Arrays.fill(products, 0, size, null);
+        Arrays.fill(index, 0);
+        size = 0;
+        subtotalCents = 0;
+    }
+
+    // ---------- Storage ----------
+
+    private int checkLine(int line) {
+        if (line < 0 || line >= size) throw new IndexOutOfBoundsException("Line " + line + ", size " + size);
+        return line;
+    }
+
+    private static int slot(int productId, int mask) {
+        int h = productId * 0x9E3779B9; // Fibonacci hashing spreads sequential ids
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /** @return the product's line, or -1 */
+    private int find(int productId) {
+        int mask = index.length - 1;
+        for (int s = slot(productId, mask); ; s = (s + 1) & mask) {
+            int e = index[s];
+            if (e == 0) return -1;
+            if (products[e - 1].getId() == productId) return e - 1;
+        }
+    }
+
+    private void append(Product p, int q) {
+        if (size == products.length) {
+            int cap = size * 2;
+            products = Arrays.copyOf(products, cap);
+            qty = Arrays.copyOf(qty, cap);
+            unitCents = Arrays.copyOf(unitCents, cap);
+            index = new int[cap * 2];
+            for (int i = 0; i < size; i++) insertIndex(products[i].getId(), i);
+        }
+        products[size] = p;
+        qty[size] = q;
+        unitCents[size] = p.getPriceCents();
+        insertIndex(p.getId(), size);
+        subtotalCents += unitCents[size] * q;
+        size++;
+    }
+
+    private void insertIndex(int productId, int line) {
+        int mask = index.length - 1;
+        int s = slot(productId, mask);
+        while (index[s] != 0) s = (s + 1) & mask;
+        index[s] = line + 1;
+    }
+
+    /**
+     * Removes a line, closing the gap so insertion order holds. Carts are a handful of lines,
+     * so shifting and re-indexing the tail is cheaper than tombstones.
+     */
+    private int removeLine(int line) {
+        int old = qty[line];
+        subtotalCents -= unitCents[line] * old;
+        int tail = size - line - 1;
+        System.arraycopy(products, line + 1, products, line, tail);
+        System.arraycopy(qty, line + 1, qty, line, tail);
+        System.arraycopy(unitCents, line + 1, unitCents, line, tail);
+        products[--size] = null;
+        Arrays.fill(index, 0);
+        for (int i = 0; i < size; i++) insertIndex(products[i].getId(), i);
+        return old;
+    }
+
+    // ---------- Map view ----------
+
+    /** {@link #lines()}: reads and writes the cart's arrays directly. */
+    private final class LinesView extends AbstractMap<Product, Integer> {
+        @Override public int size() { return size; }
+
+        @Override public boolean containsKey(Object o) {
+            return o instanceof Product p && find(p.getId()) >= 0;
+        }
+
+        @Override public Integer get(Object o) {
+            if (!(o instanceof Product p)) return null;
+            int line = find(p.getId());
+            return line < 0 ? null : qty[line];
+        }
+
+        @Override public Integer put(Product p, Integer q) {
+            if (q <= 0) throw new IllegalArgumentException("Quantity must be positive");
+            int old = set(p, q);
+            return old == 0 ? null : old;
+        }
+
+        @Override public Integer remove(Object o) {
+            if (!(o instanceof Product p)) return null;
+            int old = Cart.this.remove(p);
+            return old == 0 ? null : old;
+        }
+
+        @Override public void clear() { Cart.this.clear(); }
+
+        @Override public Set<Entry<Product, Integer>> entrySet() {
+            return new AbstractSet<>() {
+                @Override public int size() { return size; }
+
+                @Override public Iterator<Entry<Product, Integer>> iterator() {
+                    return new Iterator<>() {
+                        private int next;
+                        private int last = -1;
+
+                        @Override public boolean hasNext() { return next < size; }
+
+                        @Override public Entry<Product, Integer> next() {
+                            if (next >= size) throw new NoSuchElementException();
+                            last = next++;
+                            return new SimpleImmutableEntry<>(products[last], qty[last]);
+                        }
+
+                        @Override public void remove() {
+                            if (last < 0) throw new IllegalStateException();
+                            removeLine(last);
+                            next = last;
+                            last = -1;
+                        }
+                    };
+                }
+            };
+        }
     }
 }
@@ -0,0 +1,266 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Streaming, parallel bulk import of a products feed into MySQL.
+ * <p>
+ * The pipeline has three stages connected by a bounded queue, so memory stays constant whatever
+ * the file size:
+ * <ol>
+ *   <li>a reader thread streams lines from disk and hands out blocks of {@code batchRows} lines</li>
+ *   <li>a pool of parse workers turns each block into products ({@link ProductLineParser}) and
+ *       rejected lines</li>
+ *   <li>the calling thread takes the parsed blocks <em>in file order</em> (so a later line for the
+ *       same id still wins), upserts each block as one JDBC batch, which Connector/J rewrites into a
+ *       multi-row {@code INSERT} ({@code rewriteBatchedStatements=true}), stamps it with a catalog
+ *       version of its own ({@link Inventory#stampVersion}) and commits it, so a kiosk polling
+ *       {@link Inventory#changesSince(long)} mid-import picks up every block as it lands</li>
+ * </ol>
+ * Malformed lines are written to a reject file as {@code lineNumber<TAB>reason<TAB>line}.
+ * Progress is reported about once a second and at the end.
+ * <p>
+ * Blocks already committed stay committed if a later block fails; the upsert makes re-running
+ * the same feed safe.
+ *
+ * @author Joseph Guarriello
+ */
+public class CatalogImporter {
+    private static final String SQL_UPSERT = """
+    INSERT INTO products(id,category,name,price,stock,sold)
+    VALUES (?,?,?,?,?,?)
+    ON DUPLICATE KEY UPDATE category=VALUES(category), name=VALUES(name),
+                            price=VALUES(price), stock=VALUES(stock)
+""";
+    /** How often progress is reported. */
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final ConnectionPool pool;
+    private final int workers;
+    private final int batchRows;
+    private Consumer<ImportReport> progress = r -> System.out.println("Import: " + r);
+
+    /**
+     * Import counters.
+     *
+     * @param lines    lines read so far
+     * @param imported rows upserted and committed
+     * @param rejected malformed lines written to the reject file
+     * @param millis   elapsed time
+     */
+    public record ImportReport(long lines, long imported, long rejected, long millis) {
+        /** @return committed rows per second */
+        public double rowsPerSecond() {
+            return millis == 0 ? imported : imported * 1000.0 / millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d lines, %,d imported, %,d rejected, %,.0f rows/s",
+                    lines, imported, rejected, rowsPerSecond());
+        }
+    }
+
+    /** A block of raw lines and the number of its first line (1-based). */
+    private record LineBlock(long firstLine, List<String> lines) { }
+
+    /** Parse output for one block. */
+    private record ParsedBlock(int lineCount, List<Product> rows, List<String> rejects) {
+        static final ParsedBlock END = new ParsedBlock(0, List.of(), List.of());
+    }
+
+    /**
+     * Creates an importer sized by {@code kiosk.import.workers} (default: available processors)
+     * and {@code kiosk.import.batchRows} (default 1000).
+     *
+     * @param pool connection pool to write through
+     */
+    public CatalogImporter(ConnectionPool pool) {
+        this(pool, Integer.getInteger("kiosk.import.workers", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("kiosk.import.batchRows", 1_000));
+    }
+
+    /**
+     * Creates an importer.
+     *
+     * @param pool      connection pool to write through
+     * @param workers   parse threads (&gt; 0)
+     * @param batchRows lines per block, i.e. rows per committed batch (&gt; 0)
+     */
+    public CatalogImporter(ConnectionPool pool, int workers, int batchRows) {
+        if (workers <= 0 || batchRows <= 0) throw new IllegalArgumentException("workers and batchRows must be positive");
+        this.pool = pool;
+        this.workers = workers;
+        this.batchRows = batchRows;
+    }
+
+    /**
+     * Replaces the default progress printer.
+     *
+     * @param listener called about once a second with running totals
+     * @return this importer
+     */
+    public CatalogImporter onProgress(Consumer<ImportReport> listener) {
+        this.progress = listener;
+        return this;
+    }
+
+    /**
+     * Imports a feed.
+     *
+     * @param file       products feed ({@code id,category,name,price,stock[,sold]} per line)
+     * @param rejectFile where malformed lines are written; only created if there are any
+     * @return final counters
+     * @throws RuntimeException if the file cannot be read or a batch cannot be written
+     */
+    public ImportReport importFile(Path file, Path rejectFile) {
+        long started = System.nanoTime();
+        BlockingQueue<Future<ParsedBlock>> parsed = new ArrayBlockingQueue<>(workers * 2);
+        ExecutorService parsers = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "import-parse");
+            t.setDaemon(true);
+            return t;
+        });
+        Thread reader = new Thread(() -> read(file, parsers, parsed), "import-read");
+        reader.setDaemon(true);
+        reader.start();
+
+        long lines = 0, imported = 0, rejected = 0;
+        long nextReport = started + PROGRESS_INTERVAL_NANOS;
+        BufferedWriter rejects = null;
+        try (PooledConnection c = pool.borrow()) {
+            c.setAutoCommit(false);
+            PreparedStatement ps = c.prepareCached(SQL_UPSERT);
+            for (ParsedBlock block = take(parsed); block != ParsedBlock.END; block = take(parsed)) {
+                lines += block.lineCount();
+                if (!block.rejects().isEmpty()) {
+                    if (rejects == null) rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8);
+                    for (String r : block.rejects()) { rejects.write(r); rejects.newLine(); }
+                    rejected += block.rejects().size();
+                }
+                if (block.rows().isEmpty()) continue;
+                List<Integer> ids = new ArrayList<>(block.rows().size());
+                for (Product p : block.rows()) {
+                    ps.setInt(1, p.getId());
+                    ps.setString(2, p.getCategory());
+                    ps.setString(3, p.getName());
+                    ps.setBigDecimal(4, Money.toDecimal(p.getPriceCents()));
+                    ps.setInt(5, p.getStock());
+                    ps.setInt(6, p.getSold());
+                    ps.addBatch();
+                    ids.add(p.getId());
+                }
+                ps.executeBatch();
+                Inventory.stampVersion(c, ids);
+                c.commit();
+                imported += block.rows().size();
+
+                long now = System.nanoTime();
+                if (now >= nextReport) {
+                    progress.accept(report(lines, imported, rejected, started));
+                    nextReport = now + PROGRESS_INTERVAL_NANOS;
+                }
+            }
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException("Import failed after " + imported + " rows: " + e.getMessage(), e);
+        } finally {
+            reader.interrupt();
+            parsers.shutdownNow();
+            if (rejects != null) {
+                try { rejects.close(); } catch (IOException e) { System.out.println("Error writing rejects: " + e.getMessage()); }
+            }
+        }
+        ImportReport done = report(lines, imported, rejected, started);
+        progress.accept(done);
+        return done;
+    }
+
+    // ---------- Pipeline stages ----------
+
+    /**
+     * Reader stage: streams the file in blocks and queues a parse task per block, in order.
+     * Ends the stream with {@link ParsedBlock#END}, or with a failed future if reading fails.
+     */
+    private void read(Path file, ExecutorService parsers, BlockingQueue<Future<ParsedBlock>> parsed) {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            long lineNo = 1;
+            List<String> lines = new ArrayList<>(batchRows);
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                lines.add(line);
+                if (lines.size() == batchRows) {
+                    LineBlock block = new LineBlock(lineNo, lines);
+                    parsed.put(parsers.submit(() -> parse(block)));
+                    lineNo += lines.size();
+                    lines = new ArrayList<>(batchRows);
+                }
+            }
+            if (!lines.isEmpty()) {
+                LineBlock block = new LineBlock(lineNo, lines);
+                parsed.put(parsers.submit(() -> parse(block)));
+            }
+            parsed.put(CompletableFuture.completedFuture(ParsedBlock.END));
+        } catch (IOException e) {
+            try {
+                parsed.put(CompletableFuture.failedFuture(new UncheckedIOException(e)));
+            } catch (InterruptedException stopped) {
+                // writer stopped early
+            }
+        } catch (InterruptedException e) {
+            // writer stopped early
+        }
+    }
+
+    /**
+     * Parse stage for one block.
+     */
+    private static ParsedBlock parse(LineBlock block) {
+        List<Product> rows = new ArrayList<>(block.lines().size());
+        List<String> rejects = new ArrayList<>();
+        long lineNo = block.firstLine();
+        for (String line : block.lines()) {
+            try {
+                Product p = ProductLineParser.parse(line);
+                if (p != null) rows.add(p);
+            } catch (IllegalArgumentException e) {
+                rejects.add(lineNo + "\t" + e.getMessage() + "\t" + line);
+            }
+            lineNo++;
+        }
+        return new ParsedBlock(block.lines().size(), rows, rejects);
+    }
+
+    /**
+     * Takes the next block in file order, waiting for its parse to finish.
+     */
+    private static ParsedBlock take(BlockingQueue<Future<ParsedBlock>> parsed) throws IOException {
+        try {
+            return parsed.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static ImportReport report(long lines, long imported, long rejected, long startedNanos) {
+        return new ImportReport(lines, imported, rejected, (System.nanoTime() - startedNanos) / 1_000_000);
+    }
+}
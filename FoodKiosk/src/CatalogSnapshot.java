@@ -0,0 +1,387 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * An immutable catalog: products sorted by id in an array, plus an open-addressing id-to-index
+ * table, tagged with the catalog version it reflects.
+ * <p>
+ * A second array keeps the products in display order (category, then name, then id) next to
+ * their precomputed sort keys ({@link #sortKey}), so {@link #sorted()} is a walk with no sort and
+ * no comparator, and {@link #inCategory(String)} is a binary search for the category's range.
+ * Applying an edit merges only the changed products into that order.
+ * <p>
+ * Stores publish the current snapshot through one {@code volatile} field. Readers (table models,
+ * searches, listings) take that reference once and work on a consistent catalog with no lock and
+ * no copying; writers build the next snapshot from an {@link Edit} and swap it in. A bulk change
+ * is staged in an {@code Edit} and becomes visible all at once, never half applied.
+ * <p>
+ * Only the catalog is frozen. Stock and sold counters live in each {@link Product}'s shared,
+ * atomically updated counters, so sales never rebuild a snapshot; a catalog edit uses
+ * {@link Product#withCatalog} to keep them.
+ *
+ * @author Joseph Guarriello
+ */
+public final class CatalogSnapshot {
+    /** The empty catalog at version 0. */
+    public static final CatalogSnapshot EMPTY =
+            new CatalogSnapshot(new Product[0], null, new Product[0], new String[0], 0);
+
+    private static final Comparator<Product> BY_ID = Comparator.comparingInt(Product::getId);
+    private static final Comparator<Keyed> BY_KEY = Comparator.comparing(Keyed::key);
+
+    /** Products in id order. */
+    private final Product[] products;
+    /** Id to index + 1 (0 = empty slot); linear probing, at most half full. */
+    private final int[] index;
+    /** Products in display order, and their sort keys. */
+    private final Product[] byKey;
+    private final String[] keys;
+    private final long version;
+    private final List<Product> view;
+    private final List<Product> sortedView;
+
+    /** A product with its sort key, while building the display order. */
+    private record Keyed(String key, Product product) { }
+
+    /**
+     * @param sorted  products in strictly increasing id order (owned by the snapshot)
+     * @param index   id table for {@code sorted}, or {@code null} to build one
+     * @param byKey   the same products in sort key order (owned by the snapshot)
+     * @param keys    their sort keys
+     * @param version catalog version
+     */
+    private CatalogSnapshot(Product[] sorted, int[] index, Product[] byKey, String[] keys, long version) {
+        this.products = sorted;
+        this.byKey = byKey;
+        this.keys = keys;
+        this.version = version;
+        this.index = index != null ? index : buildIndex(sorted);
+        this.view = new ProductList(products, 0, products.length);
+        this.sortedView = new ProductList(byKey, 0, byKey.length);
+    }
+
+    private static int[] buildIndex(Product[] sorted) {
+        int[] index = new int[Math.max(2, Integer.highestOneBit(Math.max(1, sorted.length)) << 2)];
+        int mask = index.length - 1;
+        for (int i = 0; i < sorted.length; i++) {
+            int s = slot(sorted[i].getId(), mask);
+            while (index[s] != 0) s = (s + 1) & mask;
+            index[s] = i + 1;
+        }
+        return index;
+    }
+
+    /**
+     * Computes a product's display-order key: {@code category \0 name \0 id}, with the id as two
+     * chars whose order matches signed int order. Comparing keys with {@link String#compareTo}
+     * orders by category, then name (both as {@code String.compareTo} would), then id.
+     *
+     * @param p product
+     * @return its sort key
+     */
+    static String sortKey(Product p) {
+        int id = p.getId() ^ Integer.MIN_VALUE;
+        String category = p.getCategory(), name = p.getName();
+        return new StringBuilder(category.length() + name.length() + 4)
+                .append(category).append('\0').append(name).append('\0')
+                .append((char) (id >>> 16)).append((char) id)
+                .toString();
+    }
+
+    /**
+     * Builds a snapshot from any collection; a later product replaces an earlier one with the same id.
+     *
+     * @param products catalog contents
+     * @param version  catalog version they reflect
+     * @return the snapshot
+     */
+    public static CatalogSnapshot of(Collection<Product> products, long version) {
+        Map<Integer, Product> byId = new LinkedHashMap<>();
+        for (Product p : products) byId.put(p.getId(), p);
+        Product[] sorted = byId.values().toArray(new Product[0]);
+        Arrays.sort(sorted, BY_ID);
+        Keyed[] keyed = new Keyed[sorted.length];
+        for (int i = 0; i < sorted.length; i++) keyed[i] = new Keyed(sortKey(sorted[i]), sorted[i]);
+        Arrays.sort(keyed, BY_KEY);
+        Product[] byKey = new Product[keyed.length];
+        String[] keys = new String[keyed.length];
+        for (int i = 0; i < keyed.length; i++) {
+            byKey[i] = keyed[i].product();
+            keys[i] = keyed[i].key();
+        }
+        return new CatalogSnapshot(sorted, null, byKey, keys, version);
+    }
+
+    // ---------- Reads ----------
+
+    /**
+     * @return catalog version this snapshot reflects
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return number of products
+     */
+    public int size() {
+        return products.length;
+    }
+
+    /**
+     * @param i position in id order, {@code 0 <= i < size()}
+     * @return the product at that position
+     */
+    public Product at(int i) {
+        return products[i];
+    }
+
+    /**
+     * @param id product identifier
+     * @return the product, or {@code null} if the catalog does not have it
+     */
+    public Product get(int id) {
+        int i = indexOf(id);
+        return i < 0 ? null : products[i];
+    }
+
+    /**
+     * @param id product identifier
+     * @return the product's position in id order, or {@code -1}
+     */
+    public int indexOf(int id) {
+        int mask = index.length - 1;
+        for (int s = slot(id, mask); ; s = (s + 1) & mask) {
+            int e = index[s];
+            if (e == 0) return -1;
+            if (products[e - 1].getId() == id) return e - 1;
+        }
+    }
+
+    /**
+     * @return every product in id order, as an unmodifiable view of the snapshot (no copy)
+     */
+    public List<Product> products() {
+        return view;
+    }
+
+    /**
+     * @return every product ordered by category, then name, then id, as an unmodifiable view
+     *         (no copy, no sort)
+     */
+    public List<Product> sorted() {
+        return sortedView;
+    }
+
+    /**
+     * Lists one category in display order: O(log n) to find the range, then a view of it.
+     *
+     * @param category exact category name
+     * @return the category's products ordered by name, then id (unmodifiable view; empty if none)
+     */
+    public List<Product> inCategory(String category) {
+        int from = lowerBound(category + '\0');
+        int to = lowerBound(category + '\u0001');
+        return new ProductList(byKey, from, to);
+    }
+
+    /** @return the first position whose key is {@code >= key} */
+    private int lowerBound(String key) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Starts staging changes against this catalog.
+     *
+     * @return an empty edit
+     */
+    public Edit edit() {
+        return new Edit();
+    }
+
+    /**
+     * Applies staged changes, producing the next snapshot. In id order, replacements keep their
+     * positions, additions are merged in and removals dropped in one pass. In display order, a
+     * replacement whose sort key is unchanged (a price edit, a refreshed row) is swapped in place;
+     * other changes are sorted among themselves and merged with the untouched products. Either
+     * way the cost is O(n + k log k) for {@code k} staged changes, with no full re-sort.
+     *
+     * @param edit    staged changes (may have been staged against an older snapshot)
+     * @param version version of the new snapshot
+     * @return the new snapshot ({@code this} if the edit is empty and the version unchanged)
+     */
+    public CatalogSnapshot apply(Edit edit, long version) {
+        if (edit.isEmpty()) {
+            return version == this.version ? this : new CatalogSnapshot(products, index, byKey, keys, version);
+        }
+        Product[] added = new Product[edit.changes.size()];
+        int nAdded = 0;
+        Product[] out = products.clone();
+        boolean removals = false;
+
+        Product[] keyOut = byKey.clone();
+        boolean[] drop = null;
+        List<Keyed> moved = new ArrayList<>();
+        for (Map.Entry<Integer, Product> e : edit.changes.entrySet()) {
+            int i = indexOf(e.getKey());
+            Product next = e.getValue();
+            if (i < 0) {
+                if (next != null) {
+                    added[nAdded++] = next;
+                    moved.add(new Keyed(sortKey(next), next));
+                }
+                continue;
+            }
+            int pos = lowerBound(sortKey(products[i]));
+            if (next == null) {
+                out[i] = null;
+                removals = true;
+            } else {
+                out[i] = next;
+                String key = sortKey(next);
+                if (key.equals(keys[pos])) {
+                    keyOut[pos] = next;
+                    continue;
+                }
+                moved.add(new Keyed(key, next));
+            }
+            if (drop == null) drop = new boolean[keys.length];
+            drop[pos] = true;
+        }
+
+        Product[] idOrder = out;
+        int[] idIndex = index;
+        if (nAdded > 0 || removals) {
+            Arrays.sort(added, 0, nAdded, BY_ID);
+            Product[] merged = new Product[out.length + nAdded];
+            int m = 0, a = 0;
+            for (Product p : out) {
+                if (p == null) continue;
+                while (a < nAdded && added[a].getId() < p.getId()) merged[m++] = added[a++];
+                merged[m++] = p;
+            }
+            while (a < nAdded) merged[m++] = added[a++];
+            idOrder = m == merged.length ? merged : Arrays.copyOf(merged, m);
+            idIndex = null;
+        }
+        if (moved.isEmpty() && drop == null) return new CatalogSnapshot(idOrder, idIndex, keyOut, keys, version);
+
+        moved.sort(BY_KEY);
+        Product[] keyMerged = new Product[idOrder.length];
+        String[] keysMerged = new String[idOrder.length];
+        int m = 0, a = 0;
+        for (int j = 0; j < keyOut.length; j++) {
+            if (drop != null && drop[j]) continue;
+            while (a < moved.size() && moved.get(a).key().compareTo(keys[j]) < 0) {
+                keysMerged[m] = moved.get(a).key();
+                keyMerged[m++] = moved.get(a++).product();
+            }
+            keysMerged[m] = keys[j];
+            keyMerged[m++] = keyOut[j];
+        }
+        for (; a < moved.size(); a++) {
+            keysMerged[m] = moved.get(a).key();
+            keyMerged[m++] = moved.get(a).product();
+        }
+        return new CatalogSnapshot(idOrder, idIndex, keyMerged, keysMerged, version);
+    }
+
+    private static int slot(int id, int mask) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /** A read-only list over a range of one of the snapshot's arrays. */
+    private static final class ProductList extends AbstractList<Product> implements RandomAccess {
+        private final Product[] array;
+        private final int from;
+        private final int to;
+
+        ProductList(Product[] array, int from, int to) {
+            this.array = array;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override public Product get(int i) {
+            if (i < 0 || i >= to - from) throw new IndexOutOfBoundsException(i);
+            return array[from + i];
+        }
+
+        @Override public int size() { return to - from; }
+    }
+
+    // ---------- Staged changes ----------
+
+    /**
+     * Catalog changes staged for one atomic swap. Nothing is visible until a store applies the
+     * edit. The last change to an id wins. Not thread-safe: one admin stages one edit.
+     */
+    public static final class Edit {
+        /** Id to new product, or to {@code null} for a removal; in staging order. */
+        private final Map<Integer, Product> changes = new LinkedHashMap<>();
+
+        private Edit() { }
+
+        /**
+         * Stages adding a product or replacing the one with its id. To change an existing product
+         * without resetting its stock, stage {@code existing.withCatalog(...)}.
+         *
+         * @param p product
+         * @return this edit
+         */
+        public Edit put(Product p) {
+            changes.put(p.getId(), p);
+            return this;
+        }
+
+        /**
+         * Stages removing a product.
+         *
+         * @param id product identifier
+         * @return this edit
+         */
+        public Edit remove(int id) {
+            changes.put(id, null);
+            return this;
+        }
+
+        /**
+         * @return {@code true} if nothing is staged
+         */
+        public boolean isEmpty() {
+            return changes.isEmpty();
+        }
+
+        /**
+         * @return staged products (additions and replacements), in staging order
+         */
+        public List<Product> puts() {
+            List<Product> out = new ArrayList<>();
+            for (Product p : changes.values()) if (p != null) out.add(p);
+            return out;
+        }
+
+        /**
+         * @return ids staged for removal, in staging order
+         */
+        public List<Integer> removals() {
+            List<Integer> out = new ArrayList<>();
+            changes.forEach((id, p) -> { if (p == null) out.add(id); });
+            return out;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshot of the catalog, used to paint the kiosk before the database answers.
+ * <p>
+ * Layout (big-endian, via {@link DataOutputStream}):
+ * <pre>
+ *   int    magic 'FKS1'
+ *   long   catalog version the snapshot reflects
+ *   long   write time (epoch millis)
+ *   int    category count, then each category as modified UTF-8
+ *   int    product count, then per product:
+ *            int id, short category index, UTF name, double price, int stock, int sold
+ *   long   CRC32 of everything above
+ * </pre>
+ * Categories are dictionary-encoded because a catalog has a handful of them and thousands of rows.
+ * Files are written to a temporary sibling and atomically moved into place, so a reader never
+ * sees a half-written snapshot; a truncated or corrupt file is simply ignored.
+ *
+ * @author Joseph Guarriello
+ */
+public final class CatalogSnapshotFile {
+    /** File magic: "FKS1". */
+    private static final int MAGIC = 0x464B5331;
+
+    private CatalogSnapshotFile() { }
+
+    /**
+     * Catalog contents read back from a snapshot.
+     *
+     * @param version   catalog version at write time (pass to {@code changesSince} to reconcile)
+     * @param writtenAt epoch millis when the snapshot was written
+     * @param products  products in the order they were written
+     */
+    public record Snapshot(long version, long writtenAt, List<Product> products) { }
+
+    /**
+     * Writes a snapshot atomically.
+     *
+     * @param file     destination
+     * @param version  catalog version the products reflect
+     * @param products products to store
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, long version, List<Product> products) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Files.newOutputStream(tmp), crc), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeLong(version);
+                out.writeLong(System.currentTimeMillis());
+
+                Map<String, Integer> dict = new HashMap<>();
+                List<String> categories = new ArrayList<>();
+                for (Product p : products) {
+                    if (dict.putIfAbsent(p.getCategory(), categories.size()) == null) categories.add(p.getCategory());
+                }
+                out.writeInt(categories.size());
+                for (String c : categories) out.writeUTF(c);
+
+                out.writeInt(products.size());
+                for (Product live : products) {
+                    Product p = live.copy();
+                    out.writeInt(p.getId());
+                    out.writeShort(dict.get(p.getCategory()));
+                    out.writeUTF(p.getName());
+                    out.writeDouble(p.getPrice());
+                    out.writeInt(p.getStock());
+                    out.writeInt(p.getSold());
+                }
+                out.flush();
+                out.writeLong(crc.getValue()); // CRC of the bytes before the trailer
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param file snapshot file
+     * @return the snapshot, or empty if the file is missing, truncated or fails its checksum
+     */
+    public static Optional<Snapshot> read(Path file) {
+        if (!Files.isRegularFile(file)) return Optional.empty();
+        CRC32 crc = new CRC32();
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc);
+             DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC) return Optional.empty();
+            long version = in.readLong();
+            long writtenAt = in.readLong();
+
+            String[] categories = new String[in.readInt()];
+            for (int i = 0; i < categories.length; i++) categories[i] = in.readUTF();
+
+            int n = in.readInt();
+            List<Product> products = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int id = in.readInt();
+                String category = categories[in.readShort()];
+                String name = in.readUTF();
+                double price = in.readDouble();
+                int stock = in.readInt();
+                int sold = in.readInt();
+                products.add(new Product(id, name, category, price, stock, sold));
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) return Optional.empty();
+            return Optional.of(new Snapshot(version, writtenAt, products));
+        } catch (EOFException | RuntimeException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            System.out.println("Could not read catalog snapshot: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
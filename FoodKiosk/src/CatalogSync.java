@@ -0,0 +1,261 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings the {@code products} table in line with a products feed by writing only what differs.
+ * <p>
+ * Every row carries a {@code fingerprint}: a stored generated column holding the first 60 bits of
+ * {@code SHA1(CONCAT_WS('|', category, name, price))}, so it stays correct whichever code writes
+ * the row. A sync
+ * <ol>
+ *   <li>reads the feed, hashing each record the same way ({@link #fingerprint(Product)})</li>
+ *   <li>opens a transaction and reads {@code (id, fingerprint)} for every row with
+ *       {@code FOR UPDATE} &ndash; 12 bytes a row, not the whole catalog &ndash; so no restock,
+ *       import or other sync can change a row between the diff and its write (sales of those
+ *       rows wait for the sync's commit)</li>
+ *   <li>in the same transaction: inserts ids missing from the table, updates category/name/price of
+ *       rows whose fingerprint differs, and deletes rows missing from the feed; then claims one
+ *       catalog version, stamps it on the written rows and records each deletion in
+ *       {@code product_tombstones} so {@link Inventory#changesSince(long)} can report it</li>
+ * </ol>
+ * Stock and sold are live counters owned by the kiosks: they are only taken from the feed for new
+ * products and are never overwritten for existing ones. Unchanged rows are not written at all, so
+ * their version does not move and caches do not refetch them.
+ *
+ * @author Joseph Guarriello
+ */
+public class CatalogSync {
+    private static final String SQL_FINGERPRINTS = "SELECT id, fingerprint FROM products FOR UPDATE";
+    private static final String SQL_INSERT = """
+    INSERT INTO products(id,category,name,price,stock,sold)
+    VALUES (?,?,?,?,?,?)
+    ON DUPLICATE KEY UPDATE category=VALUES(category), name=VALUES(name), price=VALUES(price)
+""";
+    private static final String SQL_UPDATE = "UPDATE products SET category=?, name=?, price=? WHERE id=?";
+    private static final String SQL_DELETE = "DELETE FROM products WHERE id=?";
+    private static final String SQL_TOMBSTONE =
+            "INSERT INTO product_tombstones(id, version) VALUES (?, ?) ON DUPLICATE KEY UPDATE version=VALUES(version)";
+    private static final String SQL_CLEAR_TOMBSTONE = "DELETE FROM product_tombstones WHERE id=?";
+
+    private final ConnectionPool pool;
+
+    /**
+     * Outcome of a sync.
+     *
+     * @param feedRows  valid, distinct products in the feed
+     * @param inserted  new products
+     * @param updated   products whose category, name or price changed
+     * @param deleted   products no longer in the feed
+     * @param unchanged products left untouched
+     * @param rejected  malformed feed lines (written to the reject file)
+     * @param millis    elapsed time
+     */
+    public record SyncReport(int feedRows, int inserted, int updated, int deleted, int unchanged,
+                             int rejected, long millis) {
+        @Override
+        public String toString() {
+            return String.format("%d in feed: %d inserted, %d updated, %d deleted, %d unchanged, %d rejected (%d ms)",
+                    feedRows, inserted, updated, deleted, unchanged, rejected, millis);
+        }
+    }
+
+    /**
+     * @param pool connection pool to write through
+     */
+    public CatalogSync(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Syncs the table with a feed.
+     *
+     * @param feed          products feed ({@code id,category,name,price,stock[,sold]} per line)
+     * @param rejectFile    where malformed lines are written; only created if there are any
+     * @param deleteMissing whether rows absent from the feed are deleted
+     * @return what was written
+     * @throws IllegalStateException if the feed holds no valid products (refusing to empty the catalog)
+     * @throws RuntimeException      if the feed cannot be read or the transaction fails
+     */
+    public SyncReport sync(Path feed, Path rejectFile, boolean deleteMissing) {
+        long started = System.nanoTime();
+        Map<Integer, Product> wanted = new LinkedHashMap<>();
+        int rejected = readFeed(feed, rejectFile, wanted);
+        if (wanted.isEmpty()) throw new IllegalStateException("Feed has no valid products: " + feed);
+
+        try (PooledConnection c = pool.borrow()) {
+            c.setAutoCommit(false);
+            Map<Integer, Long> current = fingerprints(c);
+
+            List<Product> inserts = new ArrayList<>();
+            List<Product> updates = new ArrayList<>();
+            for (Product p : wanted.values()) {
+                Long existing = current.remove(p.getId());
+                if (existing == null) inserts.add(p);
+                else if (existing != fingerprint(p)) updates.add(p);
+            }
+            List<Integer> deletes = deleteMissing ? new ArrayList<>(current.keySet()) : List.of();
+            int unchanged = wanted.size() - inserts.size() - updates.size();
+
+            if (!inserts.isEmpty() || !updates.isEmpty() || !deletes.isEmpty()) {
+                write(c, inserts, updates, deletes);
+            }
+            c.commit(); // also releases the row locks when nothing changed
+            return new SyncReport(wanted.size(), inserts.size(), updates.size(), deletes.size(), unchanged,
+                    rejected, (System.nanoTime() - started) / 1_000_000);
+        } catch (SQLException e) {
+            throw new RuntimeException("Sync failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Applies the diff as batches inside the caller's transaction, claiming the catalog version
+     * last ({@link Inventory#stampVersion}). Tombstones are only written after the claim, by one
+     * writer at a time, so they never take part in a lock wait on {@code catalog_seq}.
+     */
+    private static void write(PooledConnection c, List<Product> inserts, List<Product> updates,
+                              List<Integer> deletes) throws SQLException {
+        List<Integer> written = new ArrayList<>(inserts.size() + updates.size());
+        if (!inserts.isEmpty()) {
+            try (PreparedStatement ins = c.prepareStatement(SQL_INSERT)) {
+                for (Product p : inserts) {
+                    ins.setInt(1, p.getId());
+                    ins.setString(2, p.getCategory());
+                    ins.setString(3, p.getName());
+                    ins.setBigDecimal(4, Money.toDecimal(p.getPriceCents()));
+                    ins.setInt(5, p.getStock());
+                    ins.setInt(6, p.getSold());
+                    ins.addBatch();
+                    written.add(p.getId());
+                }
+                ins.executeBatch();
+            }
+        }
+        if (!updates.isEmpty()) {
+            try (PreparedStatement ps = c.prepareStatement(SQL_UPDATE)) {
+                for (Product p : updates) {
+                    ps.setString(1, p.getCategory());
+                    ps.setString(2, p.getName());
+                    ps.setBigDecimal(3, Money.toDecimal(p.getPriceCents()));
+                    ps.setInt(4, p.getId());
+                    ps.addBatch();
+                    written.add(p.getId());
+                }
+                ps.executeBatch();
+            }
+        }
+        if (!deletes.isEmpty()) {
+            try (PreparedStatement del = c.prepareStatement(SQL_DELETE)) {
+                for (int id : deletes) {
+                    del.setInt(1, id);
+                    del.addBatch();
+                }
+                del.executeBatch();
+            }
+        }
+
+        long version = Inventory.stampVersion(c, written);
+        if (!inserts.isEmpty()) {
+            try (PreparedStatement clear = c.prepareStatement(SQL_CLEAR_TOMBSTONE)) {
+                for (Product p : inserts) {
+                    clear.setInt(1, p.getId());
+                    clear.addBatch();
+                }
+                clear.executeBatch();
+            }
+        }
+        if (!deletes.isEmpty()) {
+            try (PreparedStatement tomb = c.prepareStatement(SQL_TOMBSTONE)) {
+                for (int id : deletes) {
+                    tomb.setInt(1, id);
+                    tomb.setLong(2, version);
+                    tomb.addBatch();
+                }
+                tomb.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Reads every row's fingerprint.
+     */
+    private static Map<Integer, Long> fingerprints(PooledConnection c) throws SQLException {
+        Map<Integer, Long> out = new HashMap<>();
+        try (PreparedStatement ps = c.prepareStatement(SQL_FINGERPRINTS)) {
+            ps.setFetchSize(Inventory.DEFAULT_FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Parses the feed into {@code wanted} (a later line for the same id wins).
+     *
+     * @return number of rejected lines
+     */
+    private static int readFeed(Path feed, Path rejectFile, Map<Integer, Product> wanted) {
+        int rejected = 0;
+        BufferedWriter rejects = null;
+        try (BufferedReader in = Files.newBufferedReader(feed, StandardCharsets.UTF_8)) {
+            long lineNo = 0;
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                lineNo++;
+                try {
+                    Product p = ProductLineParser.parse(line);
+                    if (p != null) wanted.put(p.getId(), p);
+                } catch (IllegalArgumentException e) {
+                    if (rejects == null) rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8);
+                    rejects.write(lineNo + "\t" + e.getMessage() + "\t" + line);
+                    rejects.newLine();
+                    rejected++;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read feed: " + e.getMessage(), e);
+        } finally {
+            if (rejects != null) {
+                try { rejects.close(); } catch (IOException e) { System.out.println("Error writing rejects: " + e.getMessage()); }
+            }
+        }
+        return rejected;
+    }
+
+    // ---------- Fingerprints ----------
+
+    /**
+     * Computes the same value MySQL stores in {@code products.fingerprint}:
+     * the first 15 hex digits of {@code SHA1(category|name|price)}, with the price rendered as
+     * {@code DECIMAL(10,2)}.
+     *
+     * @param p product
+     * @return 60-bit fingerprint
+     */
+    static long fingerprint(Product p) {
+        String price = Money.plain(p.getPriceCents());
+        byte[] sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-1")
+                    .digest((p.getCategory() + '|' + p.getName() + '|' + price).getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JRE ships SHA-1
+        }
+        long v = 0;
+        for (int i = 0; i < 8; i++) v = (v << 8) | (sha[i] & 0xFF);
+        return v >>> 4;
+    }
+}
@@ -0,0 +1,326 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Small bounded JDBC connection pool shared by {@link Inventory} and {@link Database}.
+ * <p>
+ * Opening a MySQL connection costs a TCP handshake plus authentication, which used to be paid
+ * on every single query. The pool keeps physical connections open and hands them out as
+ * {@link PooledConnection} leases that return themselves on {@code close()}.
+ * <ul>
+ *   <li><b>Bounded</b>: at most {@code maxSize} connections exist at once; borrowers wait up to
+ *       {@code borrowTimeoutMs} and then get an {@link SQLTimeoutException}</li>
+ *   <li><b>Warm-up</b>: {@link #warmUp()} opens {@code minIdle} connections up front so the first
+ *       checkout does not pay the connect cost</li>
+ *   <li><b>Validation-on-borrow</b>: a connection idle for longer than {@link #VALIDATION_BYPASS_MS}
+ *       is pinged with {@link Connection#isValid(int)} before it is handed out</li>
+ *   <li><b>Max lifetime</b>: connections older than {@code maxLifetimeMs} are closed instead of
+ *       being reused, so server-side timeouts never hit a borrower</li>
+ *   <li><b>Statement cache</b>: each connection keeps an LRU {@link StatementCache}; SQL registered
+ *       with {@link #registerHotStatements(List)} is prepared as soon as a connection is opened</li>
+ *   <li><b>Metrics</b>: see {@link #stats()}</li>
+ * </ul>
+ *
+ * @author Joseph Guarriello
+ */
+public class ConnectionPool implements AutoCloseable {
+    /** JDBC URL for the Food Kiosk database. */
+    static final String URL  = "jdbc:mysql://localhost:3306/foodkiosk?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC&useServerPrepStmts=true&useCursorFetch=true&rewriteBatchedStatements=true";
+    /** Database username (e.g., {@code kiosk} or {@code root}). */
+    static final String USER = "kiosk";
+    /** Database password associated with {@link #USER}. */
+    static final String PASS = "Kiosk!234";
+
+    /** Connections used within this window are trusted without a validation round trip. */
+    static final long VALIDATION_BYPASS_MS = 500;
+    /** Seconds to wait for {@link Connection#isValid(int)}. */
+    private static final int VALIDATION_TIMEOUT_S = 2;
+
+    /** Prepared statements kept open per connection. */
+    static final int STATEMENT_CACHE_SIZE = Integer.getInteger("kiosk.pool.statementCacheSize", 32);
+
+    /** Lazily created process-wide pool. */
+    private static volatile ConnectionPool shared;
+
+    private final String url;
+    private final String user;
+    private final String pass;
+    private final int maxSize;
+    private final int minIdle;
+    private final long borrowTimeoutMs;
+    private final long maxLifetimeMs;
+
+    /** Idle connections, most recently returned first (keeps hot connections hot). */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    /** One permit per connection that may be leased. */
+    private final Semaphore permits;
+    private volatile boolean closed;
+    /** SQL prepared eagerly on every new connection. */
+    private final Set<String> hotStatements = new CopyOnWriteArraySet<>();
+
+    // ---------- Metrics ----------
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    /**
+     * Creates a pool. No connections are opened until {@link #warmUp()} or the first borrow.
+     *
+     * @param url             JDBC URL
+     * @param user            database user
+     * @param pass            database password
+     * @param maxSize         maximum number of open connections (&gt; 0)
+     * @param minIdle         connections opened by {@link #warmUp()}
+     * @param borrowTimeoutMs how long {@link #borrow()} waits for a free connection
+     * @param maxLifetimeMs   age after which a connection is retired
+     * @throws IllegalArgumentException if {@code maxSize <= 0}
+     */
+    public ConnectionPool(String url, String user, String pass,
+                          int maxSize, int minIdle, long borrowTimeoutMs, long maxLifetimeMs) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(Math.max(0, minIdle), maxSize);
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.maxLifetimeMs = maxLifetimeMs;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Returns the pool shared by every repository in this process, creating and warming it up on
+     * first use. Sizing can be tuned with the system properties {@code kiosk.pool.max},
+     * {@code kiosk.pool.minIdle}, {@code kiosk.pool.borrowTimeoutMs} and {@code kiosk.pool.maxLifetimeMs}.
+     *
+     * @return the shared pool
+     */
+    public static ConnectionPool shared() {
+        ConnectionPool p = shared;
+        if (p == null) {
+            synchronized (ConnectionPool.class) {
+                p = shared;
+                if (p == null) {
+                    p = new ConnectionPool(URL, USER, PASS,
+                            Integer.getInteger("kiosk.pool.max", 8),
+                            Integer.getInteger("kiosk.pool.minIdle", 2),
+                            Long.getLong("kiosk.pool.borrowTimeoutMs", 5_000L),
+                            Long.getLong("kiosk.pool.maxLifetimeMs", 30 * 60_000L));
+                    p.warmUp();
+                    ConnectionPool pool = p;
+                    Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "pool-shutdown"));
+                    shared = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Registers SQL that every connection should have prepared up front. Connections opened
+     * after this call prepare the statements immediately; already-open connections prepare
+     * them on their next borrow.
+     *
+     * @param sql statements to keep hot
+     */
+    public void registerHotStatements(List<String> sql) {
+        hotStatements.addAll(sql);
+    }
+
+    /**
+     * Opens connections until {@code minIdle} are idle. Failures are reported but not fatal,
+     * so a kiosk can still start while MySQL is coming up.
+     */
+    public void warmUp() {
+        while (!closed && idle.size() < minIdle && permits.tryAcquire()) {
+            try {
+                idle.offerFirst(open());
+            } catch (SQLException e) {
+                System.out.println("Pool warm-up failed: " + e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Leases a connection, waiting up to the borrow timeout for one to become free.
+     *
+     * @return a validated connection lease; close it to hand the connection back
+     * @throws SQLTimeoutException if no connection became available in time
+     * @throws SQLException        if a new connection could not be opened
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMs
+                        + " ms waiting for a database connection (" + stats() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (isUsable(pc)) break;
+                discard(pc);
+            }
+            if (pc == null) pc = open();
+            preloadHotStatements(pc);
+            pc.lease();
+            borrows.incrementAndGet();
+            return pc;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Called by {@link PooledConnection#close()} to hand a connection back.
+     *
+     * @param pc     the returned lease
+     * @param broken {@code true} if the connection must not be reused
+     */
+    void release(PooledConnection pc, boolean broken) {
+        try {
+            if (broken || closed || expired(pc)) discard(pc);
+            else idle.offerFirst(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return a snapshot of the pool counters
+     */
+    public PoolStats stats() {
+        long n = borrows.get();
+        int idleNow = idle.size();
+        int active = maxSize - permits.availablePermits();
+        return new PoolStats(active, idleNow, maxSize, created.get(), evicted.get(), n, timeouts.get(),
+                n == 0 ? 0 : totalWaitNanos.get() / n / 1_000, maxWaitNanos.get() / 1_000,
+                statementHits.sum(), statementMisses.sum());
+    }
+
+    /**
+     * Closes every idle connection and rejects further borrows. Leased connections are closed
+     * when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) discard(pc);
+    }
+
+    // ---------- Internals ----------
+
+    /**
+     * Opens a new physical connection.
+     *
+     * @return a fresh, unleased connection wrapper
+     * @throws SQLException if the driver cannot connect
+     */
+    private PooledConnection open() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, user, pass);
+        created.incrementAndGet();
+        PooledConnection pc = new PooledConnection(this, raw,
+                new StatementCache(raw, STATEMENT_CACHE_SIZE, statementHits, statementMisses));
+        preloadHotStatements(pc);
+        return pc;
+    }
+
+    /**
+     * Prepares any registered hot statement the connection does not hold yet.
+     * A statement that fails to prepare is skipped; it will be prepared on first use instead.
+     *
+     * @param pc connection to prepare on
+     */
+    private void preloadHotStatements(PooledConnection pc) {
+        if (pc.preloadedCount() == hotStatements.size()) return;
+        for (String sql : hotStatements) {
+            try {
+                pc.statements().preload(sql);
+            } catch (SQLException ignored) {}
+        }
+        pc.setPreloadedCount(hotStatements.size());
+    }
+
+    /**
+     * Decides whether an idle connection can be handed out again.
+     *
+     * @param pc idle connection
+     * @return {@code true} if not expired and (recently used or successfully pinged)
+     */
+    private boolean isUsable(PooledConnection pc) {
+        if (expired(pc)) return false;
+        if (System.currentTimeMillis() - pc.lastUsedAt() < VALIDATION_BYPASS_MS) return true;
+        try {
+            return pc.raw().isValid(VALIDATION_TIMEOUT_S);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean expired(PooledConnection pc) {
+        return System.currentTimeMillis() - pc.createdAt() >= maxLifetimeMs;
+    }
+
+    private void discard(PooledConnection pc) {
+        evicted.incrementAndGet();
+        pc.closePhysical();
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Point-in-time pool metrics.
+     *
+     * @param active        connections currently leased
+     * @param idle          connections parked in the pool
+     * @param maxSize       configured upper bound
+     * @param created       physical connections opened since startup
+     * @param evicted       physical connections closed (expired, invalid or broken)
+     * @param borrows       successful borrows
+     * @param timeouts      borrows that gave up waiting
+     * @param avgWaitMicros mean time spent waiting for a permit
+     * @param maxWaitMicros worst time spent waiting for a permit
+     * @param stmtHits      prepared statements served from a connection's cache
+     * @param stmtMisses    prepared statements that had to be prepared
+     */
+    public record PoolStats(int active, int idle, int maxSize, long created, long evicted,
+                            long borrows, long timeouts, long avgWaitMicros, long maxWaitMicros,
+                            long stmtHits, long stmtMisses) {
+        @Override public String toString() {
+            return "active=" + active + ", idle=" + idle + ", max=" + maxSize
+                    + ", created=" + created + ", evicted=" + evicted + ", borrows=" + borrows
+                    + ", timeouts=" + timeouts + ", avgWait=" + avgWaitMicros + "µs, maxWait=" + maxWaitMicros + "µs"
+                    + ", stmtHits=" + stmtHits + ", stmtMisses=" + stmtMisses;
+        }
+    }
+}
@@ -1,3 +1,5 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -9,7 +11,7 @@ import java.util.List;
  * <p>
  * Responsibilities:
  * <ul>
- *   <li>Ensure the {@code products} table exists at startup.</li>
+ *   <li>Ensure the schema is current at startup ({@link SchemaMigrator}).</li>
  *   <li>Insert or update product records (with upsert behavior).</li>
  *   <li>Update stock levels.</li>
  *   <li>Retrieve a simple list of products as formatted strings.</li>
@@ -21,66 +23,52 @@ import java.util.List;
  * @author Joseph Guarriello
  */
 public class Database {
-    /** JDBC URL for connecting to the MySQL database. */
-    private static final String URL  =
-            "jdbc:mysql://localhost:3306/foodkiosk?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC";
-
-    /** Database username (e.g., {@code kiosk} or {@code root}). */
-    private static final String USER = "kiosk";
-
-    /** Database password corresponding to {@link #USER}. */
-    private static final String PASS = "Kiosk!234";
+    /** Shared connection pool (same one {@link Inventory} uses). */
+    private final ConnectionPool pool = ConnectionPool.shared();
 
     /**
      * Constructs the {@code Database} helper and ensures required tables exist.
      */
     public Database() {
-        createTablesIfNotExist();
+        SchemaMigrator.migrate(pool);
     }
 
     /**
      * Returns a live JDBC connection to the kiosk database.
      * <p>
-     * <b>Note:</b> This placeholder currently returns {@code null}.
-     * Update it to return {@code DriverManager.getConnection(URL, USER, PASS)} if needed
-     * for advanced integration.
+     * The connection is leased from {@link ConnectionPool#shared()}; closing it returns it to the
+     * pool instead of closing the physical connection.
      *
-     * @return a {@link Connection} to the database, or {@code null} (currently unimplemented)
+     * @return a {@link Connection} to the database, or {@code null} if none could be obtained
      */
     public static Connection getConnection() {
-        return null;
-    }
-
-    /**
-     * Creates the {@code products} table if it does not already exist.
-     * <p>
-     * Columns:
-     * <ul>
-     *   <li>{@code id} (INT, primary key)</li>
-     *   <li>{@code category} (VARCHAR)</li>
-     *   <li>{@code name} (VARCHAR)</li>
-     *   <li>{@code price} (DOUBLE)</li>
-     *   <li>{@code stock} (INT)</li>
-     *   <li>{@code sold} (INT, default 0)</li>
-     * </ul>
-     * The table uses the default InnoDB engine and UTF-8 charset.
-     */
-    private void createTablesIfNotExist() {
-        String sqlProducts = """
-            CREATE TABLE IF NOT EXISTS products (
-                id INT PRIMARY KEY,
-                category VARCHAR(50),
-                name VARCHAR(100),
-                price DOUBLE,
-                stock INT,
-                sold INT DEFAULT 0
-            )
-        """;
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASS);
-             Statement stmt = conn.createStatement()) {
-            stmt.execute(sqlProducts);
+        try {
+            PooledConnection lease = ConnectionPool.shared().borrow();
+            boolean[] closed = new boolean[1];
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                if (!closed[0]) { closed[0] = true; lease.close(); }
+                                return null;
+                            case "isClosed":
+                                return closed[0] || lease.connection().isClosed();
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                if (closed[0]) throw new SQLException("Connection is closed");
+                                try {
+                                    return method.invoke(lease.connection(), args);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                        }
+                    });
         } catch (SQLException e) {
             e.printStackTrace();
+            return null;
         }
     }
 
@@ -101,7 +89,7 @@ public class Database {
     public void insertProduct(int id, String category, String name, double price, int stock) {
         String sql = "INSERT INTO products (id, category, name, price, stock) VALUES (?, ?, ?, ?, ?) " +
                 "ON DUPLICATE KEY UPDATE category=?, name=?, price=?, stock=?";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASS);
+        try (PooledConnection conn = pool.borrow();
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, id);
             ps.setString(2, category);
@@ -126,7 +114,7 @@ public class Database {
      */
     public void updateStock(int id, int stock) {
         String sql = "UPDATE products SET stock=? WHERE id=?";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASS);
+        try (PooledConnection conn = pool.borrow();
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, stock);
             ps.setInt(2, id);
@@ -151,7 +139,7 @@ public class Database {
     public List<String> listProducts() {
         List<String> list = new ArrayList<>();
         String sql = "SELECT * FROM products ORDER BY id";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASS);
+        try (PooledConnection conn = pool.borrow();
              PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
@@ -0,0 +1,44 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * {@link MemoryInventoryStore} that persists to a {@code products.txt}-style text file.
+ * <p>
+ * This is the console app's original persistence model: the file is read once at startup and
+ * rewritten on {@link #saveToFile()}, which {@link App} calls after every sale and restock.
+ * Lines are written as {@code id,category,name,price,stock,sold} under a header row.
+ *
+ * @author Joseph Guarriello
+ */
+public class FileInventoryStore extends MemoryInventoryStore {
+    /** File the catalog is loaded from and saved to. */
+    private final String filename;
+
+    /**
+     * Creates the store and loads {@code filename} if it exists.
+     *
+     * @param filename products file to load and persist to
+     */
+    public FileInventoryStore(String filename) {
+        this.filename = filename;
+        loadFromFile(filename);
+    }
+
+    /**
+     * Rewrites the products file with the current catalog.
+     */
+    @Override
+    public void saveToFile() {
+        try (PrintWriter out = new PrintWriter(new FileWriter(filename))) {
+            out.println("id,category,name,price,stock,sold");
+            for (Product live : all()) {
+                Product p = live.copy();
+                out.printf("%d,%s,%s,%s,%d,%d%n",
+                        p.getId(), p.getCategory(), p.getName(), Money.plain(p.getPriceCents()), p.getStock(), p.getSold());
+            }
+        } catch (IOException e) {
+            System.out.println("Error writing file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,221 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges concurrent sales into shared transactions so many checkouts pay for one commit.
+ * <p>
+ * Every MySQL commit waits for a redo-log fsync, which caps throughput when each sale commits on
+ * its own. Here callers enqueue a sale and get a future; a single committer thread takes the first
+ * waiting sale, keeps collecting for up to {@code windowMillis} or until {@code maxBatch} sales are
+ * queued, and applies the whole group in one transaction:
+ * <ul>
+ *   <li>the rows of every product in the group are locked first, in id order, with one
+ *       {@code SELECT ... FOR UPDATE}. Each sale alone decrements in id order, but a group runs
+ *       its sales one after another, so without this it would lock product 7 for the first sale
+ *       and then product 3 for the second, and deadlock with a group doing the opposite</li>
+ *   <li>each sale runs its guarded decrements ({@link Inventory#applyGuarded}) and, if they all
+ *       matched, inserts its order ({@link Inventory#recordOrder}) behind its own savepoint, so a sale
+ *       that is short on stock, or fails with a data error, is rolled back alone and the rest of the
+ *       group still commits</li>
+ *   <li>the group claims one catalog version at the end and stamps it on every row its committed
+ *       sales touched ({@link Inventory#stampVersion}), then one commit (one fsync) completes
+ *       every caller's future</li>
+ *   <li>a deadlock or lock-wait timeout rolls back the whole transaction, so the group is retried
+ *       as a unit like {@link Inventory#applySale(Map)} retries a single sale</li>
+ * </ul>
+ *
+ * @author Joseph Guarriello
+ */
+public class GroupCommitter implements AutoCloseable {
+    /** Locks a group's product rows in id order; {@code %s} is one placeholder per product. */
+    private static final String SQL_LOCK_ROWS = "SELECT id FROM products WHERE id IN (%s) ORDER BY id FOR UPDATE";
+
+    private final Inventory inventory;
+    private final ConnectionPool pool;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final BlockingQueue<PendingSale> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    /** Cleared by {@link #close()}; read and cleared under the monitor with the enqueue. */
+    private volatile boolean running = true;
+
+    /** A queued sale and the future its caller is waiting on. */
+    private record PendingSale(List<Map.Entry<Product, Integer>> ordered, LocalDateTime at,
+                               CompletableFuture<SaleResult> done) { }
+
+    /** Queued by {@link #close()} behind the last sale: the committer stops when it takes it. */
+    private static final PendingSale STOP = new PendingSale(List.of(), null, null);
+
+    /**
+     * Starts the committer thread.
+     *
+     * @param inventory    repository whose guarded sale logic is reused
+     * @param pool         pool to borrow the group's connection from
+     * @param windowMillis how long to keep collecting after the first sale arrives
+     * @param maxBatch     maximum sales per transaction (&gt; 0)
+     */
+    public GroupCommitter(Inventory inventory, ConnectionPool pool, long windowMillis, int maxBatch) {
+        if (maxBatch <= 0) throw new IllegalArgumentException("maxBatch must be positive");
+        this.inventory = inventory;
+        this.pool = pool;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+        this.maxBatch = maxBatch;
+        this.committer = new Thread(this::run, "group-commit");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Queues a sale for the next group.
+     *
+     * @param lines products and quantities sold
+     * @return completes with the sale's result once the shared commit lands, or exceptionally
+     *         if the group could not be committed
+     */
+    public CompletableFuture<SaleResult> submit(Map<Product, Integer> lines) {
+        CompletableFuture<SaleResult> done = new CompletableFuture<>();
+        PendingSale sale = new PendingSale(Inventory.orderById(lines), LocalDateTime.now(), done);
+        synchronized (this) { // so close() cannot slip in between the check and the enqueue
+            if (running) {
+                queue.add(sale);
+                return done;
+            }
+        }
+        done.completeExceptionally(new IllegalStateException("Group committer is closed"));
+        return done;
+    }
+
+    /**
+     * Stops accepting sales, lets the committer commit what is already queued and waits for it to
+     * stop. The thread is told by a {@link #STOP} marker behind the last sale, not interrupted, so
+     * a group is never cut off in the middle of a JDBC call. A sale submitted concurrently is
+     * either queued before the marker, and committed, or rejected; none is left waiting.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            running = false;
+        }
+        queue.add(STOP);
+        try {
+            committer.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (committer.isAlive()) return; // still committing; it stops at the marker
+        List<PendingSale> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.remove(STOP);
+        if (!rest.isEmpty()) commitGroup(rest);
+    }
+
+    // ---------- Committer thread ----------
+
+    private void run() {
+        List<PendingSale> group = new ArrayList<>(maxBatch);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                PendingSale first = queue.take();
+                if (first == STOP) return;
+                group.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (group.size() < maxBatch) {
+                    long left = deadline - System.nanoTime();
+                    PendingSale next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    if (next == STOP) { stop = true; break; }
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                // not sent by close(); commit what was collected and keep going
+            }
+            if (!group.isEmpty()) commitGroup(group);
+            group.clear();
+        }
+    }
+
+    /**
+     * Applies and commits one group, retrying on deadlocks, then completes every future.
+     *
+     * @param group sales to apply together
+     */
+    private void commitGroup(List<PendingSale> group) {
+        for (int attempt = 1; ; attempt++) {
+            Object[] outcomes = new Object[group.size()]; // SaleResult or RuntimeException per sale
+            try (PooledConnection c = pool.borrow()) {
+                c.setAutoCommit(false);
+                lockRows(c, group);
+                Set<Integer> touched = new TreeSet<>();
+                for (int i = 0; i < group.size(); i++) {
+                    Savepoint sp = c.connection().setSavepoint();
+                    try {
+                        List<Map.Entry<Product, Integer>> ordered = group.get(i).ordered();
+                        SaleResult r = inventory.applyGuarded(c, ordered);
+                        if (r.committed()) {
+                            r = SaleResult.recorded(Inventory.recordOrder(c, ordered, group.get(i).at()));
+                            touched.addAll(Inventory.productIds(ordered));
+                        } else {
+                            c.connection().rollback(sp);
+                        }
+                        outcomes[i] = r;
+                    } catch (SQLException e) {
+                        if (Inventory.isRetryable(e)) throw e; // whole transaction is gone
+                        c.connection().rollback(sp);
+                        outcomes[i] = new RuntimeException(e);
+                    }
+                }
+                if (!touched.isEmpty()) Inventory.stampVersion(c, touched);
+                c.commit();
+            } catch (SQLException e) {
+                if (attempt < Inventory.MAX_SALE_ATTEMPTS && Inventory.isRetryable(e)) {
+                    Inventory.backOff(attempt);
+                    continue;
+                }
+                RuntimeException failure = new RuntimeException("Group commit failed: " + e.getMessage(), e);
+                for (PendingSale p : group) p.done().completeExceptionally(failure);
+                return;
+            }
+            for (int i = 0; i < group.size(); i++) {
+                if (outcomes[i] instanceof SaleResult r) group.get(i).done().complete(r);
+                else group.get(i).done().completeExceptionally((RuntimeException) outcomes[i]);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Locks the row of every product the group sells, in id order, before any sale runs, so
+     * concurrent groups and single sales all take their row locks in one global order.
+     *
+     * @param c     the group's connection, in a transaction
+     * @param group sales to apply together
+     * @throws SQLException on a database error, including a lock wait timeout
+     */
+    private static void lockRows(PooledConnection c, List<PendingSale> group) throws SQLException {
+        Set<Integer> ids = new TreeSet<>();
+        for (PendingSale p : group) ids.addAll(Inventory.productIds(p.ordered()));
+        if (ids.isEmpty()) return;
+        String sql = SQL_LOCK_ROWS.formatted(String.join(",", Collections.nCopies(ids.size(), "?")));
+        try (PreparedStatement ps = c.connection().prepareStatement(sql)) { // IN list varies, so not cached
+            int i = 1;
+            for (int id : ids) ps.setInt(i++, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) { } // locks are taken as the rows are read
+            }
+        }
+    }
+}
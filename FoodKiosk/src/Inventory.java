@@ -1,20 +1,31 @@
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * Inventory data-access layer backed by MySQL.
+ * Inventory data-access layer backed by MySQL (the {@code jdbc} {@link InventoryStore}).
  * <p>
  * Responsibilities:
  * <ul>
- *   <li>Create/verify the {@code products} table schema on startup</li>
+ *   <li>Bring the schema up to date on startup via {@link SchemaMigrator}</li>
  *   <li>Optionally import seed data from a CSV-like text file when the table is empty</li>
  *   <li>CRUD-style read operations and small write operations (restock, apply sale)</li>
+ *   <li>Order history: every sale inserts an {@code orders} row and its {@code order_lines} in the
+ *       sale's own transaction</li>
  *   <li>Projection queries like top-selling products</li>
+ *   <li>Change tracking: every write stamps the touched rows with a new catalog version so
+ *       clients can fetch only what changed via {@link #changesSince(long)}</li>
+ *   <li>Incremental sync from a products feed via {@link #syncFromFile(String, boolean)}</li>
  * </ul>
  * <p>
- * Table schema (created if missing):
+ * Table schema (see {@link SchemaMigrator#MIGRATIONS}):
  * <pre>
  * products(
  *   id INT PRIMARY KEY,
@@ -22,138 +33,203 @@ import java.nio.file.Path;
  *   name VARCHAR(100) NOT NULL,
  *   price DECIMAL(10,2) NOT NULL,
  *   stock INT NOT NULL,
- *   sold INT NOT NULL DEFAULT 0
+ *   sold INT NOT NULL DEFAULT 0,
+ *   version BIGINT NOT NULL DEFAULT 0,     -- catalog version of the last write, indexed
+ *   fingerprint BIGINT                     -- generated: SHA1(category|name|price), see CatalogSync
+ * )
+ * product_tombstones(
+ *   id INT PRIMARY KEY,                    -- deleted product
+ *   version BIGINT NOT NULL                -- catalog version of the delete, indexed
+ * )
+ * orders(id BIGINT AUTO_INCREMENT, created_at DATETIME(3) indexed, total, item_count,
+ *        journal_key unique)                -- journal_key: set by OrderBackfill for orders without an id
+ * order_lines(order_id, line_no, product_id indexed, product_name, qty, unit_price, line_total)
+ * stock_holds(hold_id, product_id, qty, expires_at)  -- cart reservations, see StockReservations
+ * catalog_seq(
+ *   id TINYINT PRIMARY KEY,                 -- single row, id = 1
+ *   v BIGINT NOT NULL                       -- last issued catalog version
  * )
  * </pre>
+ * Versions are issued from {@code catalog_seq} at the end of the writing transaction: a writer
+ * does its work first, then claims the version and stamps it on the rows it wrote as its last
+ * step before commit ({@link #stampVersion}). The row lock is held only for that short tail, so
+ * writers from different kiosks overlap their real work, but it is still held until commit, so
+ * versions become visible in increasing order and a client that has seen version {@code N} never
+ * misses a later commit with a smaller version.
  *
  * @author Joseph Guarriello
  */
-public class Inventory {
-    /** JDBC URL for the Food Kiosk database. */
-    private static final String URL  = "jdbc:mysql://localhost:3306/foodkiosk?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC";
-    /** Database username (e.g., {@code kiosk} or {@code root}). */
-    private static final String USER = "kiosk";
-    /** Database password associated with {@link #USER}. */
-    private static final String PASS = "Kiosk!234";
+public class Inventory implements InventoryStore {
+    /** Column list shared by every product query. */
+    private static final String COLUMNS = "id,category,name,price,stock,sold";
+    /** Change feed used by {@link #changesSince(long)}. */
+    private static final String SQL_CHANGES = "SELECT " + COLUMNS + ",version FROM products WHERE version > ? ORDER BY version, id";
+    /** Deletions for {@link #changesSince(long)}. */
+    private static final String SQL_REMOVED = "SELECT id, version FROM product_tombstones WHERE version > ?";
+    /** Claims the next catalog version; the value comes back as the generated key. */
+    private static final String SQL_NEXT_VERSION = "UPDATE catalog_seq SET v = LAST_INSERT_ID(v + 1) WHERE id = 1";
+    /** Stamps a claimed version on one written row (batched by {@link #stampVersion}). */
+    private static final String SQL_STAMP_VERSION = "UPDATE products SET version = ? WHERE id = ?";
+    /** Latest issued catalog version. */
+    private static final String SQL_CURRENT_VERSION = "SELECT v FROM catalog_seq WHERE id = 1";
+    /** Full catalog scan. */
+    private static final String SQL_ALL = "SELECT " + COLUMNS + " FROM products ORDER BY id";
+    /** Primary-key lookup. */
+    private static final String SQL_FIND = "SELECT " + COLUMNS + " FROM products WHERE id=?";
+    /** Stock increment used by {@link #restock(int, int)}. */
+    private static final String SQL_RESTOCK = "UPDATE products SET stock = stock + ? WHERE id = ?";
+    /** Per-line update used by {@link #applySale(Map)}. */
+    private static final String SQL_APPLY_SALE =
+            "UPDATE products SET stock = stock - ?, sold = sold + ? WHERE id = ? AND stock >= ?";
+    /** Order header written with each sale; the id comes back as the generated key. */
+    private static final String SQL_ORDER = "INSERT INTO orders(created_at, total, item_count) VALUES (?,?,?)";
+    /** One row per sale line, batched (rewritten into a multi-row insert by the driver). */
+    static final String SQL_ORDER_LINE =
+            "INSERT INTO order_lines(order_id,line_no,product_id,product_name,qty,unit_price,line_total) VALUES (?,?,?,?,?,?,?)";
+    /** Top-N projection used by {@link #topSelling(int)}. */
+    private static final String SQL_TOP_SELLING = "SELECT " + COLUMNS + " FROM products ORDER BY sold DESC, id ASC LIMIT ?";
+    /** Attempts for a sale transaction that keeps hitting deadlocks or lock-wait timeouts. */
+    static final int MAX_SALE_ATTEMPTS = 3;
+
+    /** Rows per server-side cursor fetch for {@link #stream()} / {@link #forEach(Consumer)}. */
+    static final int DEFAULT_FETCH_SIZE = Integer.getInteger("kiosk.fetchSize", 1_000);
+
+    /** Statements every pooled connection prepares as soon as it is opened. */
+    private static final List<String> HOT_STATEMENTS =
+            List.of(SQL_ALL, SQL_FIND, SQL_RESTOCK, SQL_APPLY_SALE, SQL_STAMP_VERSION, SQL_TOP_SELLING, SQL_CHANGES,
+                    SQL_REMOVED, SQL_ORDER_LINE);
+
+    /** Shared connection pool; every query borrows from it instead of reconnecting. */
+    private final ConnectionPool pool;
+    /** Set when group commit is enabled; sales are then merged into shared transactions. */
+    private volatile GroupCommitter groupCommitter;
 
     /**
-     * Constructs an {@code Inventory} repo and ensures the schema exists.
+     * Constructs an {@code Inventory} repo on the shared {@link ConnectionPool} and ensures the schema is current.
      * <p>
-     * Invokes {@link #ensureSchema()} which is idempotent and safe to run repeatedly.
+     * Invokes {@link SchemaMigrator#migrate(ConnectionPool)}, which is a single read once the schema is current.
      */
     public Inventory() {
-        ensureSchema();
+        this(ConnectionPool.shared());
     }
 
     /**
-     * Ensures the {@code products} table exists and contains a {@code sold} column.
+     * Constructs an {@code Inventory} repo on the given pool and ensures the schema is current.
      * <p>
-     * If {@code sold} is missing, it is added with a default of {@code 0}.
+     * Group commit is switched on when the {@code kiosk.groupCommit.windowMs} system property is
+     * positive (batch size from {@code kiosk.groupCommit.maxBatch}, default 64).
      *
-     * @throws RuntimeException if schema validation or migrations fail
+     * @param pool connection pool to borrow from
      */
-    private void ensureSchema() {
-        try (Connection c = DriverManager.getConnection(URL, USER, PASS);
-             Statement st = c.createStatement()) {
-
-            // 1) Ensure table exists
-            st.execute("""
-            CREATE TABLE IF NOT EXISTS products (
-                id INT PRIMARY KEY,
-                category VARCHAR(50) NOT NULL,
-                name VARCHAR(100) NOT NULL,
-                price DECIMAL(10,2) NOT NULL,
-                stock INT NOT NULL
-            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
-        """);
-
-            // 2) Ensure 'sold' column exists
-            try (PreparedStatement chk = c.prepareStatement(
-                    "SELECT COUNT(*) FROM information_schema.COLUMNS " +
-                            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'products' AND COLUMN_NAME = 'sold'")) {
-                try (ResultSet rs = chk.executeQuery()) {
-                    rs.next();
-                    if (rs.getInt(1) == 0) {
-                        try (Statement alter = c.createStatement()) {
-                            alter.execute("ALTER TABLE products ADD COLUMN sold INT NOT NULL DEFAULT 0 AFTER stock");
-                            System.out.println("✅ Added missing 'sold' column.");
-                        }
-                    }
-                }
-            }
+    public Inventory(ConnectionPool pool) {
+        this.pool = pool;
+        SchemaMigrator.migrate(pool);
+        pool.registerHotStatements(HOT_STATEMENTS);
+        long window = Long.getLong("kiosk.groupCommit.windowMs", 0L);
+        if (window > 0) enableGroupCommit(window, Integer.getInteger("kiosk.groupCommit.maxBatch", 64));
+    }
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Schema check failed: " + e.getMessage(), e);
+    /**
+     * Routes all subsequent sales through a {@link GroupCommitter}, so concurrent checkouts share
+     * one transaction and one commit.
+     *
+     * @param windowMillis how long the committer waits for more sales after the first arrives
+     * @param maxBatch     maximum sales per shared transaction
+     */
+    public synchronized void enableGroupCommit(long windowMillis, int maxBatch) {
+        if (groupCommitter != null) groupCommitter.close();
+        groupCommitter = new GroupCommitter(this, pool, windowMillis, maxBatch);
+    }
+
+    /**
+     * Turns group commit off again after committing any queued sales.
+     */
+    public synchronized void disableGroupCommit() {
+        if (groupCommitter != null) groupCommitter.close();
+        groupCommitter = null;
+    }
+
+    /**
+     * @return the pool this repository borrows from
+     */
+    ConnectionPool pool() {
+        return pool;
+    }
+
+    /**
+     * Stops group commit, if enabled. The connection pool is left open: it is shared.
+     */
+    @Override
+    public void close() {
+        disableGroupCommit();
+    }
+
+    /**
+     * Claims the next catalog version. Inside a transaction the {@code catalog_seq} row stays
+     * locked until commit, so do it last ({@link #stampVersion}).
+     *
+     * @param c connection with an open transaction
+     * @return the new version
+     * @throws SQLException on JDBC errors
+     */
+    private static long nextVersion(PooledConnection c) throws SQLException {
+        PreparedStatement ps = c.prepareCachedWithKeys(SQL_NEXT_VERSION);
+        ps.executeUpdate();
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            if (!keys.next()) throw new SQLException("catalog_seq row is missing");
+            return keys.getLong(1);
+        }
+    }
+
+    /**
+     * Claims the next catalog version and stamps it on rows the caller's transaction has already
+     * written (and so already holds locks on). Call it as the last write before commit, so the
+     * {@code catalog_seq} row is locked only for the stamp and the commit.
+     *
+     * @param c   connection with an open transaction
+     * @param ids products written by the transaction
+     * @return the new version
+     * @throws SQLException on JDBC errors
+     */
+    static long stampVersion(PooledConnection c, Collection<Integer> ids) throws SQLException {
+        long version = nextVersion(c);
+        if (ids.isEmpty()) return version;
+        PreparedStatement ps = c.prepareCached(SQL_STAMP_VERSION);
+        for (int id : ids) {
+            ps.setLong(1, version);
+            ps.setInt(2, id);
+            ps.addBatch();
         }
+        ps.executeBatch();
+        return version;
     }
 
     /**
      * One-time import from a text file <em>if and only if</em> the {@code products} table is empty.
      * <p>
      * Expected CSV-like format per line (header allowed, comments starting with {@code #} are ignored):
-     * <pre>id,category,name,price,stock</pre>
-     * Non-numeric IDs or malformed lines are skipped. Existing IDs are upserted.
+     * <pre>id,category,name,price,stock[,sold]</pre>
+     * The file is streamed through a {@link CatalogImporter}, so feeds of any size import in
+     * constant memory. Malformed lines are written to {@code <file>.rejects}. Existing IDs are upserted.
      *
      * @param file path to the seed file (e.g., {@code products.txt})
      * @throws RuntimeException if an IO/JDBC error occurs
      */
+    @Override
     public void importFromFileIfEmpty(String file) {
-        try (Connection c = DriverManager.getConnection(URL, USER, PASS);
-             Statement st = c.createStatement()) {
-            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM products")) {
-                rs.next();
-                if (rs.getInt(1) > 0) return; // already has data
-            }
-            Path path = Path.of(file);
-            if (!Files.exists(path)) return;
-
-            List<String> lines = Files.readAllLines(path);
-            String sql = """
-    INSERT INTO products(id,category,name,price,stock,sold)
-    VALUES (?,?,?,?,?,0)
-    ON DUPLICATE KEY UPDATE category=VALUES(category), name=VALUES(name),
-                            price=VALUES(price), stock=VALUES(stock)
-""";
-            try (PreparedStatement ps = c.prepareStatement(sql)) {
-                for (String raw : lines) {
-                    if (raw == null) continue;
-                    String s = raw.strip();                  // trim both ends
-                    if (s.isEmpty() || s.startsWith("#"))    // allow comments/blank lines
-                        continue;
-
-                    // handle possible UTF-8 BOM
-                    if (s.charAt(0) == '\uFEFF') s = s.substring(1);
-
-                    String[] p = s.split(",");
-                    if (p.length < 5) continue;
-
-                    String idStr = p[0].trim();
-                    // skip header or bad first field (not all digits)
-                    if (!idStr.matches("\\d+")) continue;
-
-                    try {
-                        int id       = Integer.parseInt(idStr);
-                        String cat   = p[1].trim();
-                        String name  = p[2].trim();
-                        double price = Double.parseDouble(p[3].trim());
-                        int stock    = Integer.parseInt(p[4].trim());
-
-                        ps.setInt(1, id);
-                        ps.setString(2, cat);
-                        ps.setString(3, name);
-                        ps.setDouble(4, price);
-                        ps.setInt(5, stock);
-                        ps.addBatch();
-                    } catch (NumberFormatException badLine) {
-                        // skip just this line; continue importing the rest
-                    }
-                }
-                ps.executeBatch();
-            }
-
-        } catch (Exception e) {
+        Path path = Path.of(file);
+        if (!Files.exists(path)) return;
+        try (PooledConnection c = pool.borrow();
+             Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT 1 FROM products LIMIT 1")) {
+            if (rs.next()) return; // already has data
+        } catch (SQLException e) {
             throw new RuntimeException("Import failed: " + e.getMessage(), e);
         }
+        CatalogImporter.ImportReport report = new CatalogImporter(pool)
+                .importFile(path, Path.of(file + ".rejects"));
+        if (report.rejected() > 0)
+            System.out.println(report.rejected() + " malformed line(s) written to " + file + ".rejects");
     }
 
     /**
@@ -162,19 +238,126 @@ public class Inventory {
      * @return list of all {@link Product} rows
      * @throws RuntimeException on JDBC errors
      */
+    @Override
     public List<Product> all() {
         List<Product> out = new ArrayList<>();
-        String sql = "SELECT id,category,name,price,stock,sold FROM products ORDER BY id";
-        try (Connection c = DriverManager.getConnection(URL, USER, PASS);
-             PreparedStatement ps = c.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) out.add(map(rs));
+        try (PooledConnection c = pool.borrow();
+             ResultSet rs = c.prepareCached(SQL_ALL).executeQuery()) {
+            ProductRowMapper m = ProductRowMapper.of(rs);
+            while (rs.next()) out.add(m.map(rs));
             return out;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Streams every product ordered by {@code id} using a server-side cursor with the default
+     * fetch size ({@code kiosk.fetchSize}, 1000 rows).
+     *
+     * @return a lazily populated stream; close it (try-with-resources) to release the connection
+     * @see #stream(int)
+     */
+    public Stream<Product> stream() {
+        return stream(DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Streams every product ordered by {@code id} without materializing the catalog.
+     * <p>
+     * The JDBC URL enables {@code useCursorFetch}, so with a positive fetch size MySQL keeps the
+     * result in a server-side cursor and the driver pulls {@code fetchSize} rows at a time; client
+     * heap stays flat regardless of catalog size. The pooled connection stays leased until the
+     * stream is closed or fully consumed.
+     *
+     * @param fetchSize rows per round trip (&gt; 0)
+     * @return a lazily populated stream; close it (try-with-resources) to release the connection
+     * @throws IllegalArgumentException if {@code fetchSize <= 0}
+     * @throws RuntimeException         on JDBC errors
+     */
+    public Stream<Product> stream(int fetchSize) {
+        if (fetchSize <= 0) throw new IllegalArgumentException("fetchSize must be positive");
+        ProductCursor cursor = new ProductCursor();
+        try {
+            cursor.open(pool, fetchSize);
+        } catch (SQLException e) {
+            cursor.close();
+            throw new RuntimeException(e);
+        }
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    /**
+     * Visits every product ordered by {@code id} through a server-side cursor, releasing the
+     * connection before returning (also when {@code action} throws).
+     *
+     * @param fetchSize rows per round trip (&gt; 0)
+     * @param action    callback invoked once per product
+     * @throws RuntimeException on JDBC errors
+     */
+    public void forEach(int fetchSize, Consumer<? super Product> action) {
+        try (Stream<Product> rows = stream(fetchSize)) {
+            rows.forEach(action);
+        }
+    }
+
+    /**
+     * Same as {@link #forEach(int, Consumer)} with the default fetch size.
+     *
+     * @param action callback invoked once per product
+     */
+    @Override
+    public void forEach(Consumer<? super Product> action) {
+        forEach(DEFAULT_FETCH_SIZE, action);
+    }
+
+    /**
+     * Spliterator over an open cursor. Owns its connection, statement and result set and
+     * releases all three on {@link #close()} or when the last row has been read.
+     */
+    private static final class ProductCursor extends Spliterators.AbstractSpliterator<Product> implements AutoCloseable {
+        private PooledConnection c;
+        private PreparedStatement ps;
+        private ResultSet rs;
+        private ProductRowMapper mapper;
+
+        ProductCursor() {
+            super(Long.MAX_VALUE, ORDERED | NONNULL | IMMUTABLE);
+        }
+
+        void open(ConnectionPool pool, int fetchSize) throws SQLException {
+            c = pool.borrow();
+            // not cached: the statement carries a per-call fetch size and lives as long as the stream
+            ps = c.connection().prepareStatement(SQL_ALL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            rs = ps.executeQuery();
+            mapper = ProductRowMapper.of(rs);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Product> action) {
+            if (rs == null) return false;
+            try {
+                if (!rs.next()) { close(); return false; }
+                action.accept(mapper.map(rs));
+                return true;
+            } catch (SQLException e) {
+                close();
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try { if (rs != null) rs.close(); } catch (SQLException ignored) {}
+            try { if (ps != null) ps.close(); } catch (SQLException ignored) {}
+            if (c != null) c.close();
+            rs = null;
+            ps = null;
+            c = null;
+        }
+    }
+
     /**
      * Looks up a product by {@code id}.
      *
@@ -182,13 +365,13 @@ public class Inventory {
      * @return an {@link Optional} containing the product if found; otherwise empty
      * @throws RuntimeException on JDBC errors
      */
+    @Override
     public Optional<Product> find(int id) {
-        String sql = "SELECT id,category,name,price,stock,sold FROM products WHERE id=?";
-        try (Connection c = DriverManager.getConnection(URL, USER, PASS);
-             PreparedStatement ps = c.prepareStatement(sql)) {
+        try (PooledConnection c = pool.borrow()) {
+            PreparedStatement ps = c.prepareCached(SQL_FIND);
             ps.setInt(1, id);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return Optional.of(map(rs));
+                if (rs.next()) return Optional.of(ProductRowMapper.of(rs).map(rs));
                 return Optional.empty();
             }
         } catch (SQLException e) {
@@ -203,39 +386,194 @@ public class Inventory {
      * @param qty       quantity to add (maybe negative if you intend to decrement, though not recommended)
      * @throws RuntimeException if the product does not exist or a JDBC error occurs
      */
+    @Override
     public void restock(int productId, int qty) {
-        String sql = "UPDATE products SET stock = stock + ? WHERE id = ?";
-        try (Connection c = DriverManager.getConnection(URL, USER, PASS);
-             PreparedStatement ps = c.prepareStatement(sql)) {
+        try (PooledConnection c = pool.borrow()) {
+            c.setAutoCommit(false);
+            PreparedStatement ps = c.prepareCached(SQL_RESTOCK);
             ps.setInt(1, qty);
             ps.setInt(2, productId);
             if (ps.executeUpdate() == 0) throw new RuntimeException("Product not found: " + productId);
+            stampVersion(c, List.of(productId));
+            c.commit();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * Applies a sale transactionally by decrementing stock and incrementing sold for each line.
+     * Applies a sale transactionally with guarded decrements.
+     * <p>
+     * Each line runs {@code UPDATE ... WHERE id = ? AND stock >= ?}, so stock can never go negative
+     * even when several kiosks sell the same item at once. All lines go to the server as one batch
+     * ({@code rewriteBatchedStatements=true}) in ascending id order, so concurrent sales lock rows
+     * in the same order and cannot deadlock each other. If any line lacks stock the whole sale is
+     * rolled back and the failing lines are reported. Deadlocks and lock-wait timeouts caused by
+     * other writers are retried up to {@link #MAX_SALE_ATTEMPTS} times.
+     * <p>
+     * With group commit enabled the sale is queued and this call blocks until the shared commit lands.
      *
      * @param lines map of {@link Product} to quantity sold
-     * @throws RuntimeException on JDBC/transaction errors
+     * @return whether the sale committed with its order id and, if not, which lines were short
+     * @throws RuntimeException on JDBC/transaction errors (after retries)
      */
-    public void applySale(Map<Product,Integer> lines) {
-        String sql = "UPDATE products SET stock = stock - ?, sold = sold + ? WHERE id = ?";
-        try (Connection c = DriverManager.getConnection(URL, USER, PASS);
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            c.setAutoCommit(false);
-            for (Map.Entry<Product,Integer> e : lines.entrySet()) {
-                ps.setInt(1, e.getValue());
-                ps.setInt(2, e.getValue());
-                ps.setInt(3, e.getKey().getId());
-                ps.addBatch();
+    @Override
+    public SaleResult applySale(Map<Product,Integer> lines) {
+        GroupCommitter gc = groupCommitter;
+        if (gc != null) {
+            try {
+                return gc.submit(lines).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
             }
-            ps.executeBatch();
-            c.commit();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        }
+        List<Map.Entry<Product,Integer>> ordered = orderById(lines);
+        for (int attempt = 1; ; attempt++) {
+            try (PooledConnection c = pool.borrow()) {
+                c.setAutoCommit(false);
+                SaleResult result = applyGuarded(c, ordered);
+                if (!result.committed()) {
+                    c.rollback();
+                    return result;
+                }
+                long orderId = recordOrder(c, ordered, LocalDateTime.now());
+                stampVersion(c, productIds(ordered));
+                c.commit();
+                return SaleResult.recorded(orderId);
+            } catch (SQLException e) {
+                if (attempt >= MAX_SALE_ATTEMPTS || !isRetryable(e)) throw new RuntimeException(e);
+                backOff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #applySale(Map)}. With group commit enabled the future completes
+     * when the sale's shared transaction commits; otherwise the sale runs on the calling thread.
+     *
+     * @param lines map of {@link Product} to quantity sold
+     * @return the sale's outcome
+     */
+    public CompletableFuture<SaleResult> applySaleAsync(Map<Product,Integer> lines) {
+        GroupCommitter gc = groupCommitter;
+        if (gc != null) return gc.submit(lines);
+        try {
+            return CompletableFuture.completedFuture(applySale(lines));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Runs the guarded decrements for one sale on a connection with an open transaction.
+     * Does not stamp a version, commit or roll back.
+     *
+     * @param c       connection inside a transaction
+     * @param ordered sale lines sorted by product id
+     * @return {@link SaleResult#OK} if every line matched, otherwise the lines that did not
+     * @throws SQLException on JDBC errors
+     */
+    SaleResult applyGuarded(PooledConnection c, List<Map.Entry<Product,Integer>> ordered) throws SQLException {
+        PreparedStatement ps = c.prepareCached(SQL_APPLY_SALE);
+        for (Map.Entry<Product,Integer> e : ordered) {
+            ps.setInt(1, e.getValue());
+            ps.setInt(2, e.getValue());
+            ps.setInt(3, e.getKey().getId());
+            ps.setInt(4, e.getValue());
+            ps.addBatch();
+        }
+        int[] counts = ps.executeBatch();
+        List<Product> failed = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) failed.add(ordered.get(i).getKey());
+        }
+        return failed.isEmpty() ? SaleResult.OK : SaleResult.rejected(failed);
+    }
+
+    /**
+     * Inserts the order header and its lines on a connection with an open transaction, so the
+     * order commits or rolls back together with the stock decrements. Does not commit.
+     *
+     * @param c       connection inside a transaction
+     * @param ordered sale lines
+     * @param at      order time (kiosk wall clock, as in {@code orders.csv})
+     * @return the new order id
+     * @throws SQLException on JDBC errors
+     */
+    static long recordOrder(PooledConnection c, List<Map.Entry<Product,Integer>> ordered, LocalDateTime at)
+            throws SQLException {
+        long total = 0;
+        int items = 0;
+        for (Map.Entry<Product,Integer> e : ordered) {
+            total += e.getKey().getPriceCents() * e.getValue();
+            items += e.getValue();
+        }
+        PreparedStatement order = c.prepareCachedWithKeys(SQL_ORDER);
+        order.setObject(1, at);
+        order.setBigDecimal(2, Money.toDecimal(total));
+        order.setInt(3, items);
+        order.executeUpdate();
+        long orderId;
+        try (ResultSet keys = order.getGeneratedKeys()) {
+            if (!keys.next()) throw new SQLException("No id generated for order");
+            orderId = keys.getLong(1);
+        }
+        PreparedStatement lines = c.prepareCached(SQL_ORDER_LINE);
+        int lineNo = 1;
+        for (Map.Entry<Product,Integer> e : ordered) {
+            Product p = e.getKey();
+            long unit = p.getPriceCents();
+            lines.setLong(1, orderId);
+            lines.setInt(2, lineNo++);
+            lines.setInt(3, p.getId());
+            lines.setString(4, p.getName());
+            lines.setInt(5, e.getValue());
+            lines.setBigDecimal(6, Money.toDecimal(unit));
+            lines.setBigDecimal(7, Money.toDecimal(unit * e.getValue()));
+            lines.addBatch();
+        }
+        lines.executeBatch();
+        return orderId;
+    }
+
+    /**
+     * @param ordered sale lines
+     * @return their product ids
+     */
+    static List<Integer> productIds(List<Map.Entry<Product,Integer>> ordered) {
+        List<Integer> ids = new ArrayList<>(ordered.size());
+        for (Map.Entry<Product,Integer> e : ordered) ids.add(e.getKey().getId());
+        return ids;
+    }
+
+    /**
+     * @param lines sale lines
+     * @return the lines sorted by product id (the global lock order)
+     */
+    static List<Map.Entry<Product,Integer>> orderById(Map<Product,Integer> lines) {
+        List<Map.Entry<Product,Integer>> ordered = new ArrayList<>(lines.entrySet());
+        ordered.sort(Comparator.comparingInt(e -> e.getKey().getId()));
+        return ordered;
+    }
+
+    /**
+     * @param e failure from a write transaction
+     * @return {@code true} for deadlocks (1213 / SQLState 40001) and lock-wait timeouts (1205)
+     */
+    static boolean isRetryable(SQLException e) {
+        return e.getErrorCode() == 1213 || e.getErrorCode() == 1205 || "40001".equals(e.getSQLState());
+    }
+
+    /**
+     * Sleeps a short, jittered, growing delay before retrying a transaction.
+     *
+     * @param attempt attempt number that just failed (1-based)
+     */
+    static void backOff(int attempt) {
+        try {
+            Thread.sleep(5L * attempt + (long) (Math.random() * 10));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -246,14 +584,15 @@ public class Inventory {
      * @return list of top-selling products
      * @throws RuntimeException on JDBC errors
      */
+    @Override
     public List<Product> topSelling(int n) {
         List<Product> out = new ArrayList<>();
-        String sql = "SELECT id,category,name,price,stock,sold FROM products ORDER BY sold DESC, id ASC LIMIT ?";
-        try (Connection c = DriverManager.getConnection(URL, USER, PASS);
-             PreparedStatement ps = c.prepareStatement(sql)) {
+        try (PooledConnection c = pool.borrow()) {
+            PreparedStatement ps = c.prepareCached(SQL_TOP_SELLING);
             ps.setInt(1, Math.max(0, n));
             try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) out.add(map(rs));
+                ProductRowMapper m = ProductRowMapper.of(rs);
+                while (rs.next()) out.add(m.map(rs));
             }
             return out;
         } catch (SQLException e) {
@@ -262,39 +601,91 @@ public class Inventory {
     }
 
     /**
-     * No-op because persistence is fully handled by MySQL in this implementation.
+     * Returns the rows written after catalog version {@code version}.
      * <p>
-     * Kept for API compatibility with the file-based version used by the console app.
+     * Pass {@code -1} for a full snapshot. Keep the returned {@link InventoryDelta#version()} and
+     * pass it on the next call to receive only rows changed since then; the work is proportional
+     * to the number of changed rows thanks to the index on {@code version}.
+     * <p>
+     * Rows and tombstones are read in one read-only transaction at {@code REPEATABLE READ}, so both
+     * queries see the same snapshot: a row stamped with a lower version but committed between the
+     * two reads can never be skipped by a tombstone raising the returned version past it.
+     *
+     * @param version last version the caller has applied
+     * @return changed rows in version order and the version to resume from
+     * @throws RuntimeException on JDBC errors
      */
-    public void saveToFile() {
-        // no-op; persistence is now MySQL
+    @Override
+    public InventoryDelta changesSince(long version) {
+        List<Product> changed = new ArrayList<>();
+        long latest = version;
+        try (PooledConnection c = pool.borrow()) {
+            c.setAutoCommit(false);
+            try (Statement st = c.createStatement()) {
+                st.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY"); // the next transaction only
+            }
+            PreparedStatement ps = c.prepareCached(SQL_CHANGES);
+            ps.setLong(1, version);
+            try (ResultSet rs = ps.executeQuery()) {
+                ProductRowMapper m = ProductRowMapper.of(rs);
+                int versionCol = rs.findColumn("version");
+                while (rs.next()) {
+                    changed.add(m.map(rs));
+                    latest = Math.max(latest, rs.getLong(versionCol));
+                }
+            }
+            List<Integer> removed = new ArrayList<>();
+            if (version >= 0) { // a full load has nothing to remove
+                PreparedStatement rm = c.prepareCached(SQL_REMOVED);
+                rm.setLong(1, version);
+                try (ResultSet rs = rm.executeQuery()) {
+                    while (rs.next()) {
+                        removed.add(rs.getInt(1));
+                        latest = Math.max(latest, rs.getLong(2));
+                    }
+                }
+            }
+            c.commit();
+            return new InventoryDelta(Math.max(latest, 0), changed, removed);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
-     * Maps a JDBC {@link ResultSet} row to a {@link Product} instance.
-     * <p>
-     * Note: this uses reflection to populate the {@code sold} field to avoid exposing a public mutator.
+     * Makes the catalog match a products feed with the fewest writes, unlike
+     * {@link #importFromFileIfEmpty(String)} which does nothing once the table has rows.
+     * Stock and sold counters of existing products are kept. See {@link CatalogSync}.
      *
-     * @param rs positioned result set
-     * @return product corresponding to the current row
-     * @throws SQLException on JDBC access errors
+     * @param file          products feed, e.g. {@code products.txt}; malformed lines go to {@code <file>.rejects}
+     * @param deleteMissing whether products absent from the feed are deleted
+     * @return counts of inserted, updated, deleted and unchanged products
+     * @throws RuntimeException if the feed cannot be read or the sync transaction fails
      */
-    private static Product map(ResultSet rs) throws SQLException {
-        // Ensure constructor argument order matches your Product class:
-        // Product(int id, String category, String name, double price, int stock)
-        Product p = new Product(
-                rs.getInt("id"),
-                rs.getString("category"),
-                rs.getString("name"),
-                rs.getDouble("price"),
-                rs.getInt("stock")
-        );
-        // set sold via reflection to keep Product API simple
-        try {
-            var f = Product.class.getDeclaredField("sold");
-            f.setAccessible(true);
-            f.setInt(p, rs.getInt("sold"));
-        } catch (Exception ignore) {}
-        return p;
+    public CatalogSync.SyncReport syncFromFile(String file, boolean deleteMissing) {
+        return new CatalogSync(pool).sync(Path.of(file), Path.of(file + ".rejects"), deleteMissing);
+    }
+
+    /**
+     * @return the most recently issued catalog version
+     * @throws RuntimeException on JDBC errors
+     */
+    public long currentVersion() {
+        try (PooledConnection c = pool.borrow();
+             ResultSet rs = c.prepareCached(SQL_CURRENT_VERSION).executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * No-op because persistence is fully handled by MySQL in this implementation.
+     * <p>
+     * Kept for API compatibility with the file-based version used by the console app.
+     */
+    @Override
+    public void saveToFile() {
+        // no-op; persistence is now MySQL
     }
 }
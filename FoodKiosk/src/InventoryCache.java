@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through, in-memory product cache in front of an {@link InventoryStore}.
+ * <p>
+ * The Swing UI filters the catalog on every keystroke; serving those reads from memory keeps
+ * MySQL off the typing path entirely.
+ * <ul>
+ *   <li>{@link #all()}, {@link #find(int)} and {@link #filter(String, String)} are answered from the
+ *       cached catalog, which is (re)loaded from the database when it is older than the TTL</li>
+ *   <li>Writes made through this cache ({@link #restock(int, int)}, {@link #applySale(Map)}) go to the
+ *       database first and are then applied to the cached rows directly, so no reload is needed.
+ *       The cache therefore keeps its own rows: everything it takes from the store is
+ *       {@linkplain Product#copy() copied} on insert, so an in-memory store that hands out its live
+ *       products never sees a sale twice</li>
+ *   <li>Refreshes after the first load are incremental: only rows changed since the cached catalog
+ *       version are fetched ({@link InventoryStore#changesSince(long)}), so an expired TTL or the optional
+ *       background refresh costs O(changed rows) rather than a full table read</li>
+ *   <li>The cache can be {@linkplain #seed(CatalogSnapshotFile.Snapshot) seeded} from a saved snapshot so the
+ *       first reads never wait for the database, and re-saves that snapshot in the background after
+ *       every refresh that changed something ({@link #setSnapshotFile(Path)})</li>
+ *   <li>{@link #topSelling(int)} is answered from a {@link TopSellers} ranking seeded by the first
+ *       load and updated by every sale and refresh, so it never queries the database</li>
+ *   <li>The cached catalog is an immutable {@link CatalogSnapshot} swapped in whole by each load,
+ *       so readers never lock and never see a refresh half applied; {@link #snapshot()} hands it out</li>
+ *   <li>{@link #stats()} reports hits, misses and loads</li>
+ * </ul>
+ *
+ * @author Joseph Guarriello
+ */
+public class InventoryCache implements AutoCloseable {
+    /** Backing repository. */
+    private final InventoryStore inventory;
+    /** Maximum age of the cached catalog before a read reloads it; {@code <= 0} means never expire. */
+    private final long ttlMillis;
+    /** Background refresher, or {@code null} when disabled. */
+    private final ScheduledExecutorService refresher;
+
+    /** Current cached catalog; replaced wholesale (copy-on-write) on every load. */
+    private volatile State state;
+    /** Best sellers over the cached products. */
+    private final TopSellers topSellers = new TopSellers();
+    /** Where to save the catalog after refreshes, or {@code null} to not save. */
+    private volatile Path snapshotFile;
+    /** Set while a snapshot write is queued, so bursts of refreshes write once. */
+    private final AtomicBoolean snapshotPending = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    /**
+     * One catalog load.
+     *
+     * @param catalog  the products, in id order, and the catalog version they reflect
+     * @param loadedAt {@link System#currentTimeMillis()} when loaded or last refreshed
+     */
+    private record State(CatalogSnapshot catalog, long loadedAt) { }
+
+    /**
+     * Creates a cache using the {@code kiosk.cache.ttlMs} (default 30 s) and
+     * {@code kiosk.cache.refreshMs} (default 10 s) system properties.
+     *
+     * @param inventory backing repository
+     */
+    public InventoryCache(InventoryStore inventory) {
+        this(inventory, Long.getLong("kiosk.cache.ttlMs", 30_000L), Long.getLong("kiosk.cache.refreshMs", 10_000L));
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param inventory     backing repository
+     * @param ttlMillis     reload on read once the catalog is older than this; {@code <= 0} disables expiry
+     * @param refreshMillis reload in the background at this interval; {@code <= 0} disables the refresher
+     */
+    public InventoryCache(InventoryStore inventory, long ttlMillis, long refreshMillis) {
+        this.inventory = inventory;
+        this.ttlMillis = ttlMillis;
+        if (refreshMillis > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "inventory-cache-refresh");
+                t.setDaemon(true);
+                return t;
+            });
+            refresher.scheduleWithFixedDelay(this::refreshQuietly, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        } else {
+            refresher = null;
+        }
+    }
+
+    // ---------- Reads ----------
+
+    /**
+     * @return every product ordered by id (unmodifiable)
+     */
+    public List<Product> all() {
+        return current(true).catalog().products();
+    }
+
+    /**
+     * Returns the cached catalog as one consistent snapshot, for callers that read it more than
+     * once (rendering, searching) and must not see a refresh half way through.
+     *
+     * @return the current catalog
+     */
+    public CatalogSnapshot snapshot() {
+        return current(true).catalog();
+    }
+
+    /**
+     * Looks up a product by id, falling back to the database for ids not in the cache
+     * (e.g. products added by another kiosk since the last load).
+     *
+     * @param id product identifier
+     * @return the product if it exists
+     */
+    public Optional<Product> find(int id) {
+        Product p = current(false).catalog().get(id);
+        if (p != null) { hits.increment(); return Optional.of(p); }
+        misses.increment();
+        return inventory.find(id).map(this::put);
+    }
+
+    /**
+     * Returns products matching a category and a case-insensitive search over name/category,
+     * ordered by id. Served entirely from memory.
+     *
+     * @param query    search text ({@code ""} matches everything)
+     * @param category category name, or {@code "All"}
+     * @return matching products
+     */
+    public List<Product> filter(String query, String category) {
+        return filter(current(true).catalog().products(), query, category);
+    }
+
+    /**
+     * Filters a product list the same way as {@link #filter(String, String)}, preserving its order.
+     * Used to search a snapshot-painted catalog before a cache exists.
+     *
+     * @param products products to search
+     * @param query    search text ({@code ""} matches everything)
+     * @param category category name, or {@code "All"}
+     * @return matching products
+     */
+    public static List<Product> filter(List<Product> products, String query, String category) {
+        String q = query.toLowerCase(Locale.ROOT);
+        boolean anyCategory = "All".equals(category);
+        List<Product> out = new ArrayList<>();
+        for (Product p : products) {
+            if (!anyCategory && !p.getCategory().equalsIgnoreCase(category)) continue;
+            if (!q.isEmpty()
+                    && !p.getName().toLowerCase(Locale.ROOT).contains(q)
+                    && !p.getCategory().toLowerCase(Locale.ROOT).contains(q)) continue;
+            out.add(p);
+        }
+        return out;
+    }
+
+    /**
+     * Returns the best sellers from the in-memory ranking. Sales from other kiosks are included
+     * as of the last refresh. Only the very first call on an empty cache loads anything.
+     *
+     * @param n maximum number of rows
+     * @return top-selling products
+     */
+    public List<Product> topSelling(int n) {
+        if (state == null) current(false);
+        return topSellers.top(n);
+    }
+
+    // ---------- Writes ----------
+
+    /**
+     * Restocks in the database, then applies the change to the cached row. If the cache was
+     * reloaded or refreshed while the restock ran (its rows may already include it), a delta
+     * refresh is done instead, as for {@link #applySale}.
+     *
+     * @param productId product identifier
+     * @param qty       quantity to add
+     */
+    public void restock(int productId, int qty) {
+        State before = current(false);
+        inventory.restock(productId, qty);
+        synchronized (this) {
+            Product cached = before.catalog().get(productId);
+            if (state == before && cached != null && qty > 0) {
+                cached.restock(qty);
+                return;
+            }
+        }
+        refreshQuietly();
+    }
+
+    /**
+     * Applies a sale in the database, then decrements the cached rows if it committed.
+     * If a cached row disagrees with the sale (e.g. it is stale), or the cache was reloaded while the
+     * sale ran, a delta refresh is done instead.
+     *
+     * @param lines products and quantities sold
+     * @return the database outcome
+     */
+    public SaleResult applySale(Map<Product, Integer> lines) {
+        State before = current(false);
+        SaleResult result = inventory.applySale(lines);
+        if (!result.committed()) { refreshQuietly(); return result; }
+        synchronized (this) {
+            if (state != before) { refreshQuietly(); return result; }
+            for (Map.Entry<Product, Integer> e : lines.entrySet()) {
+                Product cached = before.catalog().get(e.getKey().getId());
+                if (cached == null || cached.getStock() < e.getValue()) { refreshQuietly(); return result; }
+                cached.consume(e.getValue());
+                topSellers.update(cached);
+            }
+        }
+        return result;
+    }
+
+    // ---------- Maintenance ----------
+
+    /**
+     * Installs a previously saved catalog as the cached state. The next {@link #refresh()} then
+     * fetches only the rows changed since the snapshot's version.
+     *
+     * @param snapshot catalog read with {@link CatalogSnapshotFile#read(Path)}
+     */
+    public synchronized void seed(CatalogSnapshotFile.Snapshot snapshot) {
+        CatalogSnapshot catalog = CatalogSnapshot.of(snapshot.products(), snapshot.version());
+        state = new State(catalog, System.currentTimeMillis());
+        topSellers.seed(catalog.products());
+    }
+
+    /**
+     * Saves the catalog to {@code file} after each refresh that changed it.
+     *
+     * @param file snapshot destination, or {@code null} to stop saving
+     */
+    public void setSnapshotFile(Path file) {
+        this.snapshotFile = file;
+    }
+
+    /**
+     * Brings the cache up to date: a full load the first time (or after {@link #invalidate()}),
+     * otherwise a delta fetch of rows changed since the cached version. If the store reports a
+     * version older than the cached one (e.g. the database was recreated under a seeded
+     * snapshot), the catalog is reloaded in full.
+     */
+    public synchronized void refresh() {
+        State s = state;
+        loads.increment();
+        InventoryDelta delta = inventory.changesSince(s == null ? -1 : s.catalog().version());
+        if (s != null && delta.version() < s.catalog().version()) {
+            s = null;
+            delta = inventory.changesSince(-1);
+        }
+        if (s != null && delta.isEmpty()) {
+            state = new State(s.catalog(), System.currentTimeMillis());
+            return;
+        }
+        CatalogSnapshot base = s == null ? CatalogSnapshot.EMPTY : s.catalog();
+        CatalogSnapshot.Edit edit = base.edit();
+        for (int id : delta.removed()) edit.remove(id);
+        for (Product p : delta.changed()) edit.put(p.copy());
+        CatalogSnapshot catalog = base.apply(edit, delta.version());
+        state = new State(catalog, System.currentTimeMillis());
+        if (s == null) {
+            topSellers.seed(catalog.products());
+        } else {
+            for (int id : delta.removed()) topSellers.remove(id);
+            for (Product p : delta.changed()) topSellers.update(catalog.get(p.getId()));
+        }
+        saveSnapshotAsync();
+    }
+
+    /**
+     * @return catalog version the cache currently reflects, or {@code -1} if nothing is loaded
+     */
+    public long version() {
+        State s = state;
+        return s == null ? -1 : s.catalog().version();
+    }
+
+    /**
+     * Drops the cached catalog; the next read reloads it. Takes the cache's monitor, so a reader
+     * that is loading under it never sees its fresh state dropped half way.
+     */
+    public synchronized void invalidate() {
+        state = null;
+    }
+
+    /**
+     * @return hit/miss/load counters
+     */
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), loads.sum());
+    }
+
+    /**
+     * Stops the background refresher, if any.
+     */
+    @Override
+    public void close() {
+        if (refresher != null) refresher.shutdownNow();
+    }
+
+    /**
+     * Returns the cached catalog, loading it on first use or after expiry.
+     *
+     * @param count whether to record this access as a hit or miss
+     * @return a loaded state
+     */
+    private State current(boolean count) {
+        State s = state;
+        if (s != null && (ttlMillis <= 0 || System.currentTimeMillis() - s.loadedAt() < ttlMillis)) {
+            if (count) hits.increment();
+            return s;
+        }
+        if (count) misses.increment();
+        synchronized (this) {
+            State now = state;
+            if (now == null || now == s) {
+                refresh();
+                now = state;
+            }
+            return now;
+        }
+    }
+
+    /**
+     * Adds a copy of a product to the cached catalog (copy-on-write).
+     *
+     * @param p product to add or replace, as read from the store
+     * @return the cached copy
+     */
+    private synchronized Product put(Product p) {
+        Product own = p.copy();
+        State s = current(false);
+        CatalogSnapshot catalog = s.catalog();
+        state = new State(catalog.apply(catalog.edit().put(own), catalog.version()), s.loadedAt());
+        topSellers.update(own);
+        return own;
+    }
+
+    /**
+     * Queues a snapshot write off the caller's thread; a write already queued picks up this state too.
+     */
+    private void saveSnapshotAsync() {
+        if (snapshotFile == null || !snapshotPending.compareAndSet(false, true)) return;
+        CompletableFuture.runAsync(() -> {
+            snapshotPending.set(false);
+            Path file = snapshotFile;
+            State s = state;
+            if (file == null || s == null) return;
+            try {
+                CatalogSnapshotFile.write(file, s.catalog().version(), s.catalog().products());
+            } catch (IOException e) {
+                System.out.println("Could not save catalog snapshot: " + e.getMessage());
+            }
+        });
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            System.out.println("Inventory cache refresh failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cache counters.
+     *
+     * @param hits   reads answered from memory
+     * @param misses reads that had to go to the database
+     * @param loads  catalog loads and incremental refreshes
+     */
+    public record CacheStats(long hits, long misses, long loads) {
+        /** @return fraction of reads answered from memory, 0 when there were no reads */
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+import java.util.List;
+
+/**
+ * Result of {@link Inventory#changesSince(long)}: the rows written and deleted after a client's
+ * last known catalog version, plus the version to ask from next time.
+ * Apply {@code removed} before {@code changed}: an id deleted and later re-added appears in both.
+ *
+ * @param version highest catalog version contained in (or covered by) this delta
+ * @param changed products whose row changed, in version order
+ * @param removed ids of products deleted since the requested version
+ * @author Joseph Guarriello
+ */
+public record InventoryDelta(long version, List<Product> changed, List<Integer> removed) {
+    /**
+     * Creates a delta without deletions.
+     *
+     * @param version highest catalog version covered
+     * @param changed products whose row changed
+     */
+    public InventoryDelta(long version, List<Product> changed) {
+        this(version, changed, List.of());
+    }
+
+    /** @return {@code true} if nothing changed */
+    public boolean isEmpty() {
+        return changed.isEmpty() && removed.isEmpty();
+    }
+}
@@ -0,0 +1,130 @@
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Common contract for inventory backends used by {@link App} and {@link KioskSwing}.
+ * <p>
+ * Implementations:
+ * <ul>
+ *   <li>{@link Inventory} &ndash; MySQL via the shared {@link ConnectionPool} ({@code jdbc}, the default)</li>
+ *   <li>{@link MemoryInventoryStore} &ndash; process-local maps, nothing persisted ({@code memory})</li>
+ *   <li>{@link FileInventoryStore} &ndash; in-memory maps persisted to a products text file ({@code file})</li>
+ *   <li>{@link MappedInventoryStore} &ndash; in-memory maps persisted to a memory-mapped file of fixed-size
+ *       records, updated in place ({@code mapped})</li>
+ * </ul>
+ * The backend is picked at startup with {@link #fromSystemProperty()}, e.g.
+ * {@code java -Dkiosk.store=memory KioskSwing}, so the kiosk and its benchmarks run without MySQL.
+ *
+ * @author Joseph Guarriello
+ */
+public interface InventoryStore extends AutoCloseable {
+
+    /**
+     * Looks up a product by id.
+     *
+     * @param id product identifier
+     * @return the product if present
+     */
+    Optional<Product> find(int id);
+
+    /**
+     * Returns every product. Ordering is backend-specific: MySQL orders by id, the in-memory
+     * stores by category then name.
+     *
+     * @return all products
+     */
+    List<Product> all();
+
+    /**
+     * Visits every product in {@link #all()} order. Backends that can stream override this
+     * to avoid materializing the catalog.
+     *
+     * @param action callback invoked once per product
+     */
+    default void forEach(Consumer<? super Product> action) {
+        all().forEach(action);
+    }
+
+    /**
+     * Adds stock to a product.
+     *
+     * @param productId product identifier
+     * @param qty       quantity to add
+     * @throws RuntimeException if the product does not exist
+     */
+    void restock(int productId, int qty);
+
+    /**
+     * Applies a sale all-or-nothing: either every line is decremented or none is.
+     *
+     * @param lines products and quantities sold
+     * @return whether the sale committed and which lines were short if not
+     */
+    SaleResult applySale(Map<Product, Integer> lines);
+
+    /**
+     * Returns the best sellers by units sold (descending), ties broken by id.
+     *
+     * @param n maximum number of products (negative treated as 0)
+     * @return top-selling products
+     */
+    List<Product> topSelling(int n);
+
+    /**
+     * Loads the seed file if the store holds no products yet.
+     *
+     * @param file path to a {@code products.txt}-style file
+     */
+    void importFromFileIfEmpty(String file);
+
+    /**
+     * Returns the products written after catalog version {@code version} ({@code -1} = everything).
+     *
+     * @param version last version the caller has applied
+     * @return changed products and the version to resume from
+     */
+    InventoryDelta changesSince(long version);
+
+    /**
+     * Persists pending changes, for backends that do not write through. No-op by default.
+     */
+    default void saveToFile() { }
+
+    /**
+     * Releases what the store holds (threads, files). The store must not be used afterwards.
+     * No-op by default.
+     */
+    @Override
+    default void close() { }
+
+    // -------------------- Backend selection --------------------
+
+    /**
+     * Opens the backend named by the {@code kiosk.store} system property ({@code jdbc} if unset).
+     *
+     * @return a ready-to-use store
+     */
+    static InventoryStore fromSystemProperty() {
+        return open(System.getProperty("kiosk.store", "jdbc"));
+    }
+
+    /**
+     * Opens a backend by name.
+     *
+     * @param kind {@code jdbc}, {@code memory}, {@code file} or {@code mapped}
+     * @return a ready-to-use store
+     * @throws IllegalArgumentException for an unknown name
+     */
+    static InventoryStore open(String kind) {
+        return switch (kind.trim().toLowerCase()) {
+            case "jdbc", "mysql" -> new Inventory();
+            case "memory" -> new MemoryInventoryStore();
+            case "file" -> new FileInventoryStore(System.getProperty("kiosk.store.file", "products.txt"));
+            case "mapped" -> new MappedInventoryStore(Path.of(System.getProperty("kiosk.store.mapped", "products.dat")));
+            default -> throw new IllegalArgumentException("Unknown inventory store: " + kind);
+        };
+    }
+}
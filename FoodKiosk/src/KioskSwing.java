@@ -3,17 +3,19 @@ import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.io.FileWriter;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.text.NumberFormat;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 
@@ -24,15 +26,23 @@ import java.util.stream.Collectors;
  * Features:
  * <ul>
  *   <li>Inventory browsing with search and category filtering</li>
- *   <li>Cart with quantity adjustments and line removal</li>
+ *   <li>Cart with quantity adjustments and line removal; quantities in the cart are held
+ *       against stock ({@link StockReservations}) until checkout or an idle timeout</li>
  *   <li>Checkout with stock validation against the latest database snapshot</li>
- *   <li>Admin login with restocking and viewing top sellers</li>
+ *   <li>Admin login with restocking, viewing top sellers, and a sales analytics panel
+ *       ({@link SalesAnalytics} over the order journal)</li>
  *   <li>Optional dark mode theme</li>
- *   <li>CSV order logging to {@code orders.csv} for proof of transactions</li>
+ *   <li>CSV order logging to {@code orders.csv} for proof of transactions, through an
+ *       asynchronous {@link OrderJournal} so checkout never waits for the disk</li>
  * </ul>
  * <p>
- * This UI relies on {@link Inventory} (MySQL-backed) and {@link Cart} to manage
+ * This UI relies on an {@link InventoryStore} (MySQL-backed {@link Inventory} unless
+ * {@code -Dkiosk.store} says otherwise) and {@link Cart} to manage
  * product data and cart contents.
+ * <p>
+ * Startup never waits for the database: the window paints from the last saved catalog snapshot
+ * ({@code -Dkiosk.snapshot}, default {@code catalog.snapshot}) while the store is opened and
+ * reconciled in the background. Checkout and admin actions are enabled once the store is live.
  * @author Joseph Guarriello
  */
 
@@ -43,14 +53,32 @@ public class KioskSwing extends JFrame {
     private static final String ORDERS_FILE = "orders.csv";
     /** Simple demo admin PIN. Do not use in production. */
     private static final String ADMIN_PIN = "1234";
-
-    /** Currency formatter for U.S. dollars. */
-    private final NumberFormat money = NumberFormat.getCurrencyInstance(Locale.US);
-
-    /** Inventory repository (MySQL-backed). */
-    private final Inventory inventory = new Inventory();
+    /** Binary catalog snapshot painted at startup and re-saved after each sync. */
+    private static final Path SNAPSHOT_FILE = Path.of(System.getProperty("kiosk.snapshot", "catalog.snapshot"));
+    /** Delay before retrying a failed connection at startup. */
+    private static final int RECONNECT_DELAY_MS = 10_000;
+
+    /** Inventory repository; backend selected by {@code kiosk.store} (MySQL by default). Null until connected. */
+    private InventoryStore inventory;
+    /** In-memory catalog in front of {@link #inventory}; serves browsing and search. Null until connected. */
+    private InventoryCache catalog;
+    /** Asynchronous, group-fsynced writer for {@link #ORDERS_FILE}. */
+    private final OrderJournal journal = openJournal();
     /** In-memory shopping cart for the current session. */
     private final Cart cart = new Cart();
+    /**
+     * Soft holds on the stock in carts: in this process against the startup snapshot, then, once
+     * connected, wherever {@link StockReservations#forStore} keeps them for the store.
+     */
+    private StockReservations reservations = new StockReservations(this::currentStock);
+    /** The stock held by {@link #cart}. */
+    private StockReservations.Hold hold = reservations.open();
+    /** Hold changes running off the EDT ({@link #changeHold}); cart edits wait for them. */
+    private int holdChanges;
+    /** Reservations to move the cart to once {@link #holdChanges} drops to zero, or null. */
+    private StockReservations nextReservations;
+    /** Sales reports over {@link #ORDERS_FILE}; keeps closed days cached between reports. */
+    private final SalesAnalytics analytics = new SalesAnalytics();
 
     // --- Inventory UI ---
     private final InventoryTableModel inventoryModel = new InventoryTableModel();
@@ -78,14 +106,16 @@ public class KioskSwing extends JFrame {
     private final JButton adminBtn = new JButton("Admin Login");
     private final JButton logoutBtn = new JButton("Logout");
     private final JButton topSellersBtn = new JButton("Top Sellers");
+    private final JButton salesBtn = new JButton("Sales");
     private final JLabel adminStatus = new JLabel("User: Customer");
+    private final JLabel connectionStatus = new JLabel("Connecting…");
 
     // --- Appearance ---
     private final JCheckBox darkModeToggle = new JCheckBox("Dark mode");
 
     /**
-     * Constructs the kiosk Swing UI, initializes the database-backed inventory,
-     * wires all listeners, and builds the component layout.
+     * Constructs the kiosk Swing UI from the saved catalog snapshot, wires all listeners,
+     * builds the component layout, and starts connecting to the inventory in the background.
      */
     public KioskSwing() {
         super("Food Kiosk (MySQL)");
@@ -93,11 +123,9 @@ public class KioskSwing extends JFrame {
         setSize(1100, 620);
         setLocationRelativeTo(null);
 
-        // One-time import from products.txt if DB is empty
-        inventory.importFromFileIfEmpty(INVENTORY_FILE);
-
-        // Load inventory from DB
-        inventoryModel.setRows(inventory.all());
+        // Paint from the last snapshot; the database is reconciled in the background
+        Optional<CatalogSnapshotFile.Snapshot> saved = CatalogSnapshotFile.read(SNAPSHOT_FILE);
+        saved.ifPresent(s -> inventoryModel.setRows(s.products()));
         inventoryTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         inventoryTable.setFillsViewportHeight(true);
         inventoryTable.setRowHeight(26);
@@ -150,15 +178,19 @@ public class KioskSwing extends JFrame {
         // Bottom controls
         logoutBtn.setVisible(false);
         topSellersBtn.setVisible(false);
+        salesBtn.setVisible(false);
         JPanel bottomBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
         bottomBar.add(checkoutBtn);
         bottomBar.add(Box.createHorizontalStrut(20));
         bottomBar.add(adminBtn);
         bottomBar.add(logoutBtn);
         bottomBar.add(topSellersBtn);
+        bottomBar.add(salesBtn);
         bottomBar.add(Box.createHorizontalStrut(12));
         adminStatus.setFont(adminStatus.getFont().deriveFont(Font.BOLD));
         bottomBar.add(adminStatus);
+        bottomBar.add(Box.createHorizontalStrut(12));
+        bottomBar.add(connectionStatus);
 
         // Layout
         JPanel leftPanel = new JPanel(new BorderLayout());
@@ -178,7 +210,145 @@ public class KioskSwing extends JFrame {
         wireActions();
 
         refreshCartView();
-        ensureOrdersHeader();
+
+        setStoreReady(false);
+        connect(saved.orElse(null));
+    }
+
+    /**
+     * Opens the inventory store off the EDT, imports the seed file if the store is empty,
+     * and reconciles the catalog with the database. A snapshot is only used as the cache's starting
+     * point for the MySQL store, whose catalog versions survive restarts; the in-memory stores are
+     * loaded in full. On failure the snapshot stays on screen and the connection is retried.
+     *
+     * @param saved snapshot painted at startup, or {@code null}
+     */
+    private void connect(CatalogSnapshotFile.Snapshot saved) {
+        connectionStatus.setText("Connecting…");
+        new SwingWorker<InventoryCache, Void>() {
+            private InventoryStore store;
+
+            @Override protected InventoryCache doInBackground() {
+                store = InventoryStore.fromSystemProperty();
+                InventoryCache cache = null;
+                try {
+                    store.importFromFileIfEmpty(INVENTORY_FILE); // one-time import if DB is empty
+                    cache = new InventoryCache(store);
+                    if (saved != null && store instanceof Inventory) cache.seed(saved);
+                    cache.setSnapshotFile(SNAPSHOT_FILE);
+                    cache.refresh(); // delta since the snapshot, or a full load
+                    return cache;
+                } catch (RuntimeException e) {
+                    if (cache != null) cache.close(); // stop its refresher before the retry opens another
+                    store.close();
+                    throw e;
+                }
+            }
+
+            @Override protected void done() {
+                try {
+                    InventoryCache cache = get();
+                    inventory = store;
+                    catalog = cache;
+                    useReservations(StockReservations.forStore(store, KioskSwing.this::currentStock));
+                    inventoryModel.setRows(catalog.all());
+                    setStoreReady(true);
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.out.println("Inventory unavailable: " + cause.getMessage());
+                    connectionStatus.setText(saved != null ? "Offline – showing saved catalog" : "Offline");
+                    javax.swing.Timer retry = new javax.swing.Timer(RECONNECT_DELAY_MS, ev -> connect(saved));
+                    retry.setRepeats(false);
+                    retry.start();
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Moves the cart's hold over to {@code next}, so carts filled while offline are held where
+     * the connected store's other kiosks see them. Lines that cannot be held stay in the cart and
+     * are reported; checkout still checks their stock. Waits for hold changes in flight, so the
+     * cart it copies is the one they leave behind.
+     *
+     * @param next reservations for the connected store
+     */
+    private void useReservations(StockReservations next) {
+        if (holdChanges > 0) {
+            if (nextReservations != null) nextReservations.close();
+            nextReservations = next;
+            return;
+        }
+        StockReservations prev = reservations;
+        StockReservations.Hold prevHold = hold;
+        StockReservations.Hold nextHold = next.open();
+        Map<Product, Integer> lines = new LinkedHashMap<>(cart.lines());
+        changeHold(() -> {
+            List<String> unheld = new ArrayList<>();
+            lines.forEach((p, q) -> { if (!nextHold.reserve(p, q)) unheld.add(p.getName()); });
+            prevHold.releaseAll();
+            prev.close();
+            return unheld;
+        }, unheld -> {
+            reservations = next;
+            hold = nextHold;
+            if (!unheld.isEmpty()) info("Stock is no longer held for: " + String.join(", ", unheld) + ".");
+        });
+    }
+
+    /**
+     * Runs a change to the cart's hold off the EDT, since with the MySQL store each one is a
+     * database transaction, then passes its result to {@code then} on the EDT. The cart buttons
+     * stay disabled until every change has finished, so the cart and its hold move in step.
+     *
+     * @param change hold calls to run in the background
+     * @param then   cart update to make with their result
+     * @param <T>    result type
+     */
+    private <T> void changeHold(Supplier<T> change, Consumer<T> then) {
+        if (holdChanges++ == 0) setCartEditable(false);
+        new SwingWorker<T, Void>() {
+            @Override protected T doInBackground() {
+                return change.get();
+            }
+
+            @Override protected void done() {
+                try {
+                    then.accept(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.out.println("Stock hold not changed: " + cause.getMessage());
+                } finally {
+                    if (--holdChanges == 0) {
+                        setCartEditable(true);
+                        StockReservations next = nextReservations;
+                        nextReservations = null;
+                        if (next != null) useReservations(next);
+                    }
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * @param editable {@code false} while a hold change is in flight
+     */
+    private void setCartEditable(boolean editable) {
+        addBtn.setEnabled(editable);
+        plusBtn.setEnabled(editable);
+        minusBtn.setEnabled(editable);
+        removeBtn.setEnabled(editable);
+    }
+
+    /**
+     * Enables the actions that need a live inventory store.
+     *
+     * @param ready {@code true} once {@link #catalog} is connected
+     */
+    private void setStoreReady(boolean ready) {
+        checkoutBtn.setEnabled(ready);
+        adminBtn.setEnabled(ready);
+        if (ready) connectionStatus.setText("Live");
     }
 
     /**
@@ -214,6 +384,7 @@ public class KioskSwing extends JFrame {
         adminBtn.addActionListener(e -> onAdmin());
         logoutBtn.addActionListener(e -> doLogout());
         topSellersBtn.addActionListener(e -> showTopSellersDialog());
+        salesBtn.addActionListener(e -> showSalesPanel());
     }
 
     /**
@@ -226,9 +397,13 @@ public class KioskSwing extends JFrame {
         Product p = inventoryModel.getAt(row);
         int qty = ((Number) qtySpinner.getValue()).intValue();
         if (qty <= 0) { info("Quantity must be greater than 0."); return; }
-        if (qty > p.getStock()) { info("Not enough stock. Available: " + p.getStock()); return; }
-        cart.add(p, qty);
-        refreshCartView();
+        StockReservations r = reservations;
+        StockReservations.Hold h = hold;
+        changeHold(() -> h.reserve(p, qty) ? null : r.available(p), available -> {
+            if (available != null) { info("Not enough stock. Available: " + available); return; }
+            cart.add(p, qty);
+            refreshCartView();
+        });
     }
 
     /**
@@ -240,11 +415,7 @@ public class KioskSwing extends JFrame {
     private void onAdjustCart(int delta) {
         int row = cartTable.getSelectedRow();
         if (row < 0) { info("Select a cart line first."); return; }
-        CartLine cl = cartModel.getAt(row);
-        int newQty = cl.qty + delta;
-        if (newQty <= 0) cart.lines().remove(cl.product);
-        else cart.lines().put(cl.product, newQty);
-        refreshCartView();
+        setCartQty(cart.product(row), cart.quantity(row) + delta);
     }
 
     /**
@@ -253,55 +424,93 @@ public class KioskSwing extends JFrame {
     private void onRemoveLine() {
         int row = cartTable.getSelectedRow();
         if (row < 0) { info("Select a cart line first."); return; }
-        CartLine cl = cartModel.getAt(row);
-        cart.lines().remove(cl.product);
-        refreshCartView();
+        setCartQty(cart.product(row), 0);
+    }
+
+    /**
+     * Sets a cart line's quantity, removing the line at zero, and holds or releases the
+     * difference in stock (off the EDT). An increase that is not available is refused.
+     *
+     * @param p   product on the line
+     * @param qty new quantity
+     */
+    private void setCartQty(Product p, int qty) {
+        int target = Math.max(0, qty);
+        StockReservations r = reservations;
+        StockReservations.Hold h = hold;
+        changeHold(() -> h.set(p, target) ? null : r.available(p) + h.held(p.getId()), available -> {
+            if (available != null) info("Not enough stock. Available: " + available);
+            else if (target == 0) cart.remove(p);
+            else cart.set(p, target);
+            refreshCartView();
+        });
+    }
+
+    /**
+     * @param p product
+     * @return its stock in the connected catalog, or in the startup snapshot while offline
+     */
+    private int currentStock(Product p) {
+        InventoryCache c = catalog;
+        return c == null ? p.getStock() : c.find(p.getId()).map(Product::getStock).orElse(0);
     }
 
     /**
      * Performs the checkout operation:
      * <ul>
-     *   <li>Revalidates stock against the latest database state</li>
      *   <li>Shows a confirmation dialog with cart summary and total</li>
-     *   <li>Applies the sale to the database</li>
-     *   <li>Logs the order to CSV</li>
+     *   <li>Applies the sale to the database with guarded decrements; if any line lacks stock
+     *       nothing is sold and the short items are reported</li>
+     *   <li>Queues the order, with its database order id, for the CSV journal; a failed write is
+     *       reported when it happens</li>
      *   <li>Clears the cart and refreshes inventory view</li>
      * </ul>
      */
     private void onCheckout() {
+        if (catalog == null) { info("Still connecting to inventory. Please try again shortly."); return; }
         if (cart.isEmpty()) { info("Cart is empty."); return; }
-
-        // Re-validate stock against latest DB snapshot
-        Map<Integer, Product> latest = inventory.all().stream()
-                .collect(Collectors.toMap(Product::getId, p -> p));
-        for (Map.Entry<Product,Integer> e : cart.lines().entrySet()) {
-            Product live = latest.get(e.getKey().getId());
-            if (live == null || e.getValue() > live.getStock()) {
-                info("Insufficient stock for " + e.getKey().getName() + ".");
-                return;
-            }
+        if (holdChanges > 0) { info("Still updating the cart. Please try again shortly."); return; }
+        List<Product> lost = hold.renew(cart.lines()); // only if the hold timed out
+        if (!lost.isEmpty()) {
+            info("Your cart was idle and these items are no longer available in that quantity: "
+                    + lost.stream().map(Product::getName).collect(Collectors.joining(", ")) + ".");
+            return;
         }
 
+        long total = cart.subtotalCents();
         StringBuilder sb = new StringBuilder("Items:\n");
-        cart.lines().forEach((p, q) -> sb.append(q).append(" x ").append(p.getName())
-                .append(" — ").append(money.format(p.getPrice() * q)).append("\n"));
-        sb.append("\nTotal: ").append(money.format(cart.subtotal()));
+        for (int i = 0; i < cart.size(); i++) {
+            sb.append(cart.quantity(i)).append(" x ").append(cart.product(i).getName())
+                    .append(" — ").append(Money.format(cart.lineCents(i))).append("\n");
+        }
+        sb.append("\nTotal: ").append(Money.format(total));
 
         int res = JOptionPane.showConfirmDialog(this, sb.toString(),
                 "Confirm Checkout", JOptionPane.OK_CANCEL_OPTION);
         if (res != JOptionPane.OK_OPTION) return;
 
-        // snapshot, apply to DB, log CSV, refresh
+        // snapshot, apply to DB (stock is checked by the guarded update), log CSV, refresh
         Map<Product,Integer> snapshot = new LinkedHashMap<>(cart.lines());
-        inventory.applySale(snapshot);
-        writeOrder(snapshot, cart.subtotal());
+        SaleResult result = catalog.applySale(snapshot);
+        if (!result.committed()) {
+            inventoryModel.setRows(catalog.all());
+            info("Insufficient stock for " + result.outOfStock().stream()
+                    .map(Product::getName).collect(Collectors.joining(", ")) + ".");
+            return;
+        }
+        journal.append(snapshot, total, result.orderId()).whenComplete((ok, err) -> {
+            if (err != null) SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                    "The sale was recorded, but the order could not be written to " + ORDERS_FILE + ":\n"
+                            + err.getMessage(), "Order log error", JOptionPane.ERROR_MESSAGE));
+        });
 
+        StockReservations.Hold sold = hold;
+        changeHold(() -> { sold.releaseAll(); return null; }, none -> { }); // the sale now owns the units
         cart.clear();
-        inventoryModel.setRows(inventory.all());
+        catalog.refresh(); // delta: only rows changed since our last version
+        inventoryModel.setRows(catalog.all());
         refreshCartView();
-        info("Checkout complete! Total: " + money.format(
-                snapshot.entrySet().stream().mapToDouble(e -> e.getKey().getPrice() * e.getValue()).sum()
-        ));
+        info("Checkout complete! Total: " + Money.format(total));
     }
 
     /**
@@ -312,6 +521,7 @@ public class KioskSwing extends JFrame {
      * the currently selected inventory row.
      */
     private void onAdmin() {
+        if (catalog == null) { info("Still connecting to inventory. Please try again shortly."); return; }
         if (!adminLoggedIn) {
             String pin = JOptionPane.showInputDialog(this, "Enter admin PIN:");
             if (pin == null || !ADMIN_PIN.equals(pin.trim())) { info("Access denied."); return; }
@@ -328,8 +538,9 @@ public class KioskSwing extends JFrame {
         try {
             int addQty = Integer.parseInt(qtyStr.trim());
             if (addQty <= 0) { info("Quantity must be > 0."); return; }
-            inventory.restock(selected.getId(), addQty);
-            inventoryModel.setRows(inventory.all());
+            catalog.restock(selected.getId(), addQty);
+            catalog.refresh();
+            inventoryModel.setRows(catalog.all());
             info("Restocked " + addQty + " units of " + selected.getName() + ".");
         } catch (NumberFormatException nfe) {
             info("Enter a whole number.");
@@ -356,6 +567,7 @@ public class KioskSwing extends JFrame {
         adminBtn.setText(loggedIn ? "Restock" : "Admin Login");
         logoutBtn.setVisible(loggedIn);
         topSellersBtn.setVisible(loggedIn);
+        salesBtn.setVisible(loggedIn);
         adminStatus.setText(loggedIn ? "User: ADMIN" : "User: Customer");
     }
 
@@ -363,7 +575,7 @@ public class KioskSwing extends JFrame {
      * Displays the top 5 selling products in a modal dialog with a small table view.
      */
     private void showTopSellersDialog() {
-        List<Product> top = inventory.topSelling(5);
+        List<Product> top = catalog.topSelling(5);
         if (top.isEmpty()) { info("No products."); return; }
         String[] cols = {"Rank", "Name", "Sold", "Stock", "Price"};
         String[][] data = new String[top.size()][cols.length];
@@ -374,7 +586,7 @@ public class KioskSwing extends JFrame {
                     p.getName(),
                     String.valueOf(p.getSold()),
                     String.valueOf(p.getStock()),
-                    money.format(p.getPrice())
+                    Money.format(p.getPriceCents())
             };
         }
         JTable table = new JTable(data, cols);
@@ -388,49 +600,118 @@ public class KioskSwing extends JFrame {
         JOptionPane.showMessageDialog(this, sp, "Top Sellers", JOptionPane.PLAIN_MESSAGE);
     }
 
-    // --- CSV order log (for proof) ---
-
     /**
-     * Ensures the orders CSV file exists and has a header row. If the file
-     * does not exist, it is created with a CSV header.
+     * Opens the sales analytics panel: pick a date range and see order count, revenue, average
+     * order value, basket size, and revenue by hour, product and category. Reports are computed
+     * from the order journal off the EDT.
      */
-    private void ensureOrdersHeader() {
-        try {
-            if (!Files.exists(Paths.get(ORDERS_FILE))) {
-                try (FileWriter fw = new FileWriter(ORDERS_FILE, true)) {
-                    fw.write("timestamp,product,qty,unit_price,line_total,order_total\n");
-                }
+    private void showSalesPanel() {
+        JTextField fromField = new JTextField(LocalDate.now().minusDays(6).toString(), 10);
+        JTextField toField = new JTextField(LocalDate.now().toString(), 10);
+        JButton runBtn = new JButton("Run");
+        JLabel summary = new JLabel(" ");
+        DefaultTableModel byHour = new DefaultTableModel(new String[] {"Hour", "Orders", "Revenue"}, 0);
+        DefaultTableModel byProduct = new DefaultTableModel(new String[] {"Product", "Category", "Units", "Revenue"}, 0);
+        DefaultTableModel byCategory = new DefaultTableModel(new String[] {"Category", "Revenue"}, 0);
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("By hour", reportTable(byHour, 1, 2));
+        tabs.addTab("By product", reportTable(byProduct, 2, 3));
+        tabs.addTab("By category", reportTable(byCategory, 1));
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 8));
+        controls.add(new JLabel("From:"));
+        controls.add(fromField);
+        controls.add(new JLabel("To:"));
+        controls.add(toField);
+        controls.add(runBtn);
+        summary.setBorder(BorderFactory.createEmptyBorder(0, 10, 8, 10));
+        JPanel north = new JPanel(new BorderLayout());
+        north.add(controls, BorderLayout.NORTH);
+        north.add(summary, BorderLayout.SOUTH);
+
+        JDialog dialog = new JDialog(this, "Sales", false);
+        dialog.getContentPane().add(north, BorderLayout.NORTH);
+        dialog.getContentPane().add(tabs, BorderLayout.CENTER);
+        dialog.setSize(640, 480);
+        dialog.setLocationRelativeTo(this);
+
+        runBtn.addActionListener(e -> {
+            LocalDate from, to;
+            try {
+                from = LocalDate.parse(fromField.getText().trim());
+                to = LocalDate.parse(toField.getText().trim());
+            } catch (DateTimeParseException ex) {
+                JOptionPane.showMessageDialog(dialog, "Dates must look like 2025-01-31.", "Sales", JOptionPane.WARNING_MESSAGE);
+                return;
             }
-        } catch (Exception ignored) {}
+            List<Product> products = catalog.all();
+            runBtn.setEnabled(false);
+            summary.setText("Scanning " + ORDERS_FILE + "…");
+            new SwingWorker<SalesAnalytics.SalesReport, Void>() {
+                @Override protected SalesAnalytics.SalesReport doInBackground() {
+                    return analytics.report(SalesAnalytics.journalFiles(Path.of(ORDERS_FILE)), from, to,
+                            SalesAnalytics.categories(products));
+                }
+
+                @Override protected void done() {
+                    runBtn.setEnabled(true);
+                    try {
+                        SalesAnalytics.SalesReport r = get();
+                        summary.setText(String.format("%d orders, %d units, revenue %s, average order %s, basket %.2f items",
+                                r.orders(), r.units(), Money.format(r.revenueCents()), Money.format(r.averageOrderCents()), r.basketSize()));
+                        byHour.setRowCount(0);
+                        for (int h = 0; h < 24; h++) {
+                            if (r.ordersByHour()[h] == 0 && r.revenueByHour()[h] == 0) continue;
+                            byHour.addRow(new Object[] {String.format("%02d:00", h), r.ordersByHour()[h], Money.format(r.revenueByHour()[h])});
+                        }
+                        byProduct.setRowCount(0);
+                        for (SalesAnalytics.ProductSales p : r.products()) {
+                            byProduct.addRow(new Object[] {p.product(), p.category(), p.units(), Money.format(p.revenueCents())});
+                        }
+                        byCategory.setRowCount(0);
+                        r.revenueByCategory().forEach((c, v) -> byCategory.addRow(new Object[] {c, Money.format(v)}));
+                    } catch (InterruptedException | ExecutionException ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        summary.setText("Report failed: " + cause.getMessage());
+                    }
+                }
+            }.execute();
+        });
+        dialog.setVisible(true);
+        runBtn.doClick();
     }
 
     /**
-     * Appends order lines to the CSV log for a completed order.
+     * Wraps a read-only report table in a scroll pane.
      *
-     * @param lines      map of products to quantities purchased
-     * @param orderTotal total cost of the entire order
-     */
-    private void writeOrder(Map<Product,Integer> lines, double orderTotal) {
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        String ts = LocalDateTime.now().format(fmt);
-        try (FileWriter fw = new FileWriter(ORDERS_FILE, true)) {
-            for (Map.Entry<Product,Integer> e : lines.entrySet()) {
-                Product p = e.getKey();
-                int q = e.getValue();
-                double line = p.getPrice() * q;
-                fw.write(String.format("%s,%s,%d,%.2f,%.2f,%.2f%n",
-                        ts, sanitize(p.getName()), q, p.getPrice(), line, orderTotal));
-            }
-        } catch (Exception ignored) {}
+     * @param model      table contents
+     * @param rightAlign numeric columns
+     * @return the scroll pane
+     */
+    private static JScrollPane reportTable(DefaultTableModel model, int... rightAlign) {
+        JTable table = new JTable(model);
+        table.setDefaultEditor(Object.class, null);
+        table.setRowHeight(24);
+        for (int col : rightAlign) rightAlignColumn(table, col);
+        return new JScrollPane(table);
     }
 
+    // --- CSV order log (for proof) ---
+
     /**
-     * Sanitizes product names to be CSV-safe by removing commas.
+     * Opens the order journal on {@link #ORDERS_FILE}.
      *
-     * @param s original product name
-     * @return name with commas replaced by spaces
+     * @return the journal
+     * @throws IllegalStateException if the file cannot be opened; the kiosk must not sell without it
      */
-    private String sanitize(String s) { return s.replace(",", " "); }
+    private static OrderJournal openJournal() {
+        try {
+            return OrderJournal.open(Path.of(ORDERS_FILE));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open order log " + ORDERS_FILE + ": " + e.getMessage(), e);
+        }
+    }
 
     // --- UI helpers ---
 
@@ -439,8 +720,8 @@ public class KioskSwing extends JFrame {
      * contents of {@link #cart}.
      */
     private void refreshCartView() {
-        cartModel.setLines(cart.lines());
-        subtotalLabel.setText("Subtotal: " + money.format(cart.subtotal()));
+        cartModel.fireTableDataChanged();
+        subtotalLabel.setText("Subtotal: " + Money.format(cart.subtotalCents()));
     }
 
     /**
@@ -536,51 +817,25 @@ public class KioskSwing extends JFrame {
 
     // ---------- Table models ----------
 
-    /**
-     * Simple data holder representing a line item in the cart table.
-     */
-    private static class CartLine {
-        final Product product;
-        final int qty;
-        final double price;
-
-        CartLine(Product p, int q) { this.product = p; this.qty = q; this.price = p.getPrice(); }
-
-        double lineTotal() { return price * qty; }
-    }
-
     /**
      * Table model backing the cart table, showing item, quantity, price, and line total.
+     * Rows are read straight from {@link #cart} by position, so repainting allocates nothing.
      */
     private class CartTableModel extends AbstractTableModel {
         private final String[] cols = {"Item", "Qty", "Price", "Line Total"};
-        private List<CartLine> rows = new ArrayList<>();
-
-        /**
-         * Rebuilds the internal list of cart lines from the given product-to-quantity map.
-         *
-         * @param map map of products to quantities
-         */
-        void setLines(Map<Product,Integer> map) {
-            rows = map.entrySet().stream().map(e -> new CartLine(e.getKey(), e.getValue())).collect(Collectors.toList());
-            fireTableDataChanged();
-        }
-
-        CartLine getAt(int r) { return rows.get(r); }
 
-        @Override public int getRowCount() { return rows.size(); }
+        @Override public int getRowCount() { return cart.size(); }
 
         @Override public int getColumnCount() { return cols.length; }
 
         @Override public String getColumnName(int c) { return cols[c]; }
 
         @Override public Object getValueAt(int r, int c) {
-            CartLine cl = rows.get(r);
             return switch (c) {
-                case 0 -> cl.product.getName();
-                case 1 -> cl.qty;
-                case 2 -> money.format(cl.price);
-                case 3 -> money.format(cl.lineTotal());
+                case 0 -> cart.product(r).getName();
+                case 1 -> cart.quantity(r);
+                case 2 -> Money.format(cart.unitCents(r));
+                case 3 -> Money.format(cart.lineCents(r));
                 default -> "";
             };
         }
@@ -590,15 +845,12 @@ public class KioskSwing extends JFrame {
         @Override public boolean isCellEditable(int r, int c) { return c == 1; }
 
         /**
-         * Allows editing of the quantity column; updates the underlying cart map accordingly.
+         * Allows editing of the quantity column; updates the cart accordingly.
          */
         @Override public void setValueAt(Object aValue, int r, int c) {
             if (c != 1) return;
             try {
-                int newQty = Integer.parseInt(aValue.toString().trim());
-                if (newQty <= 0) cart.lines().remove(rows.get(r).product);
-                else cart.lines().put(rows.get(r).product, newQty);
-                refreshCartView();
+                setCartQty(cart.product(r), Integer.parseInt(aValue.toString().trim()));
             } catch (NumberFormatException ignored) {}
         }
     }
@@ -608,6 +860,8 @@ public class KioskSwing extends JFrame {
      */
     private class InventoryTableModel extends AbstractTableModel {
         private final String[] cols = {"ID", "Category", "Name", "Price", "Stock"};
+        /** Rows to filter while no cache is connected (the startup snapshot). */
+        private List<Product> source = new ArrayList<>();
         private List<Product> filtered = new ArrayList<>();
 
         /**
@@ -616,7 +870,7 @@ public class KioskSwing extends JFrame {
          *
          * @param products product list to display
          */
-        void setRows(List<Product> products) { this.filtered = new ArrayList<>(products); applyFilter("", "All"); }
+        void setRows(List<Product> products) { this.source = new ArrayList<>(products); applyFilter("", "All"); }
 
         /**
          * Applies text and category filters to rebuild the visible inventory list.
@@ -625,14 +879,9 @@ public class KioskSwing extends JFrame {
          * @param category category filter, or {@code "All"} to show all
          */
         void applyFilter(String query, String category) {
-            String q = query.toLowerCase(Locale.ROOT);
-            filtered = inventory.all().stream()
-                    .filter(p -> "All".equals(category) || p.getCategory().equalsIgnoreCase(category))
-                    .filter(p -> q.isEmpty()
-                            || p.getName().toLowerCase(Locale.ROOT).contains(q)
-                            || p.getCategory().toLowerCase(Locale.ROOT).contains(q))
-                    .sorted(Comparator.comparing(Product::getId))
-                    .collect(Collectors.toList());
+            filtered = catalog != null
+                    ? catalog.filter(query, category) // in-memory, already ordered by id
+                    : InventoryCache.filter(source, query, category);
             fireTableDataChanged();
         }
 
@@ -650,7 +899,7 @@ public class KioskSwing extends JFrame {
                 case 0 -> p.getId();
                 case 1 -> p.getCategory();
                 case 2 -> p.getName();
-                case 3 -> money.format(p.getPrice());
+                case 3 -> Money.format(p.getPriceCents());
                 case 4 -> p.getStock();
                 default -> "";
             };
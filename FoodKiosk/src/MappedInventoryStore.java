@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MemoryInventoryStore} persisted to a memory-mapped file of fixed-size product records.
+ * <p>
+ * {@link FileInventoryStore} rewrites the whole text file on every save, so a sale costs I/O
+ * proportional to the catalog. Here every product owns a {@value #RECORD_SIZE}-byte slot, and a
+ * sale or restock only overwrites the product's stock and sold counters in place (8 bytes at a
+ * known offset), without taking the store's lock. The OS writes dirty pages back on its own; {@link MappedByteBuffer#force()} is
+ * additionally called every {@code kiosk.mapped.forceMs} milliseconds (default 1000) when something
+ * changed, after every write if that is {@code 0}, and once more at exit.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *   header, {@value #HEADER_SIZE} bytes: int magic 'FKM1', int format, int record size, int record count
+ *   record, {@value #RECORD_SIZE} bytes each:
+ *     int id, int stock, int sold, int reserved, double price,
+ *     category: 1 length byte + {@value #CATEGORY_BYTES} UTF-8 bytes,
+ *     name:     1 length byte + {@value #NAME_BYTES} UTF-8 bytes
+ * </pre>
+ * The text seed file is only read when the mapped file holds no products
+ * ({@link #importFromFileIfEmpty(String)}). Catalog edits rewrite the edited products' records;
+ * records are never deleted, so edits that remove products are refused.
+ *
+ * @author Joseph Guarriello
+ */
+public class MappedInventoryStore extends MemoryInventoryStore {
+    /** File magic: "FKM1". */
+    private static final int MAGIC = 0x464B4D31;
+    private static final int FORMAT = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 192;
+    static final int CATEGORY_BYTES = 39;
+    static final int NAME_BYTES = 127;
+
+    // Offsets within a record
+    private static final int OFF_ID = 0;
+    private static final int OFF_STOCK = 4;
+    private static final int OFF_SOLD = 8;
+    private static final int OFF_PRICE = 16;
+    private static final int OFF_CATEGORY = 24;
+    private static final int OFF_NAME = OFF_CATEGORY + 1 + CATEGORY_BYTES;
+    /** Header offset of the record count. */
+    private static final int OFF_COUNT = 12;
+    /** Slots reserved when the file is created or grown for the first time. */
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final FileChannel channel;
+    /** Mapping of the header and all allocated slots; replaced when the file grows. */
+    private volatile MappedByteBuffer buffer;
+    /** Record slot of each product. */
+    private final Map<Integer, Integer> slots = new ConcurrentHashMap<>();
+    /** Products currently stored in the file. */
+    private int count;
+    /** Slots the current mapping can hold. */
+    private int capacity;
+    /** Set while existing records are read back, which must not be rewritten. */
+    private boolean loading;
+    /** Whether writes happened since the last force. */
+    private volatile boolean dirty;
+    /** Flushes {@link #buffer} on a cadence, or {@code null} when every write is forced. */
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Opens the store using the {@code kiosk.mapped.forceMs} system property (default 1000 ms).
+     *
+     * @param file data file; created if missing
+     */
+    public MappedInventoryStore(Path file) {
+        this(file, Long.getLong("kiosk.mapped.forceMs", 1_000L));
+    }
+
+    /**
+     * Opens (or creates) the data file and loads every record into memory.
+     *
+     * @param file        data file; created if missing
+     * @param forceMillis how often dirty pages are forced to disk; {@code <= 0} forces after every write
+     * @throws UncheckedIOException  if the file cannot be opened or mapped
+     * @throws IllegalStateException if the file is not a product data file
+     */
+    public MappedInventoryStore(Path file, long forceMillis) {
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() == 0) {
+                map(INITIAL_CAPACITY);
+                buffer.putInt(0, MAGIC).putInt(4, FORMAT).putInt(8, RECORD_SIZE).putInt(OFF_COUNT, 0);
+            } else {
+                load(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + file, e);
+        }
+        if (forceMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "mapped-store-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushIfDirty, forceMillis, forceMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushIfDirty, "mapped-store-exit-flush"));
+    }
+
+    /**
+     * Writes go straight to the mapped file, so there is nothing to rewrite; this only requests
+     * a flush if writes are pending. {@link App} calls it after every sale.
+     */
+    @Override
+    public void saveToFile() {
+        if (flusher == null) flushIfDirty();
+    }
+
+    /**
+     * Forces pending writes to disk and stops the flusher. The store must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (flusher != null) flusher.shutdownNow();
+        flushIfDirty();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Error closing product data file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Commits a catalog edit and rewrites the records of the products it changed. Names and
+     * categories are checked against the record widths before anything is published.
+     *
+     * @throws UnsupportedOperationException if the edit removes products
+     * @throws IllegalArgumentException      if a name or category does not fit its field
+     */
+    @Override
+    public synchronized CatalogSnapshot commit(CatalogSnapshot.Edit edit) {
+        if (!edit.removals().isEmpty())
+            throw new UnsupportedOperationException("Products cannot be removed from a product data file");
+        List<Product> puts = edit.puts();
+        for (Product p : puts) {
+            encode(p.getCategory(), CATEGORY_BYTES, "Category");
+            encode(p.getName(), NAME_BYTES, "Name");
+        }
+        CatalogSnapshot next = super.commit(edit); // appends new products via touch
+        if (!loading) {
+            for (Product p : puts) {
+                Integer slot = slots.get(p.getId());
+                if (slot != null) writeRecord(offset(slot), next.get(p.getId()));
+            }
+            if (flusher == null) flushIfDirty();
+        }
+        return next;
+    }
+
+    /**
+     * Persists the product behind a write: its counters are overwritten in place, or a new record
+     * is appended the first time the product is seen. Only the append takes the store's lock;
+     * each product's counters are its own 8 bytes, so concurrent sales write them side by side.
+     */
+    @Override
+    protected void touch(int productId) {
+        super.touch(productId);
+        if (loading) return;
+        Product p = snapshot().get(productId);
+        if (p == null) return;
+        if (slots.get(productId) == null) {
+            synchronized (this) {
+                if (slots.get(productId) == null) append(p); // else appended by the commit we waited for
+            }
+        }
+        writeCounts(offset(slots.get(productId)), p);
+        dirty = true;
+        if (flusher == null) flushIfDirty();
+    }
+
+    // ---------- File layout ----------
+
+    /**
+     * Reads the header and every record of an existing file.
+     *
+     * @param file data file, for error messages
+     * @throws IOException if the file cannot be mapped
+     */
+    private void load(Path file) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) throw new IllegalStateException("Truncated product data file: " + file);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT || buffer.getInt(8) != RECORD_SIZE)
+            throw new IllegalStateException("Not a product data file: " + file);
+        int n = buffer.getInt(OFF_COUNT);
+        if (size < HEADER_SIZE + (long) n * RECORD_SIZE)
+            throw new IllegalStateException("Truncated product data file: " + file);
+        map(Math.max(n, (int) ((size - HEADER_SIZE) / RECORD_SIZE)));
+        loading = true;
+        List<Product> stored = new ArrayList<>(n);
+        for (int slot = 0; slot < n; slot++) {
+            int at = offset(slot);
+            Product p = new Product(
+                    buffer.getInt(at + OFF_ID),
+                    readString(at + OFF_NAME),
+                    readString(at + OFF_CATEGORY),
+                    buffer.getDouble(at + OFF_PRICE),
+                    buffer.getInt(at + OFF_STOCK),
+                    buffer.getInt(at + OFF_SOLD));
+            slots.put(p.getId(), slot);
+            stored.add(p);
+        }
+        addAll(stored);
+        loading = false;
+        count = n;
+    }
+
+    /**
+     * Writes a full record for a new product into the next free slot, growing the file if needed.
+     *
+     * @param p product to store
+     * @throws IllegalArgumentException if its name or category does not fit the fixed-width fields
+     */
+    private void append(Product p) {
+        if (count == capacity) map(capacity * 2);
+        int slot = count;
+        writeRecord(offset(slot), p);
+        count++;
+        buffer.putInt(OFF_COUNT, count); // publish the record only after it is complete
+        slots.put(p.getId(), slot);
+    }
+
+    /**
+     * Writes every field of a product's record.
+     *
+     * @param at record offset
+     * @param p  product to store
+     * @throws IllegalArgumentException if its name or category does not fit the fixed-width fields
+     */
+    private void writeRecord(int at, Product live) {
+        Product p = live.copy();
+        byte[] category = encode(p.getCategory(), CATEGORY_BYTES, "Category");
+        byte[] name = encode(p.getName(), NAME_BYTES, "Name");
+        buffer.putInt(at + OFF_ID, p.getId())
+                .putDouble(at + OFF_PRICE, p.getPrice());
+        buffer.put(at + OFF_CATEGORY, (byte) category.length).put(at + OFF_CATEGORY + 1, category);
+        buffer.put(at + OFF_NAME, (byte) name.length).put(at + OFF_NAME + 1, name);
+        writeCounts(at, live);
+        dirty = true;
+    }
+
+    /**
+     * Writes a product's stock and sold counters into its record, then reads them back from the
+     * product and writes again until they agree. Writers of the same record do not lock, so one
+     * holding older counters may write after another; checking afterwards means the last writer
+     * always leaves the current counters behind.
+     *
+     * @param at record offset
+     * @param p  live product
+     */
+    private void writeCounts(int at, Product p) {
+        Product written = p.copy();
+        while (true) {
+            buffer.putInt(at + OFF_STOCK, written.getStock()).putInt(at + OFF_SOLD, written.getSold());
+            Product now = p.copy();
+            if (now.getStock() == written.getStock() && now.getSold() == written.getSold()) return;
+            written = now;
+        }
+    }
+
+    /**
+     * (Re)maps the file so it holds {@code slots} records, extending the file if necessary.
+     *
+     * @param slots record capacity of the new mapping
+     */
+    private void map(int slots) {
+        try {
+            MappedByteBuffer old = buffer;
+            if (old != null && dirty) old.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * RECORD_SIZE);
+            capacity = slots;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map product data file", e);
+        }
+    }
+
+    /**
+     * Forces the mapping if anything was written since the last force. Only the check and reset
+     * of {@link #dirty} hold the store's lock, so sales and appends go on while the OS flushes;
+     * a write that lands during the force sets {@code dirty} again for the next one.
+     */
+    private void flushIfDirty() {
+        MappedByteBuffer toForce;
+        synchronized (this) {
+            if (!dirty || !channel.isOpen()) return;
+            dirty = false;
+            toForce = buffer;
+        }
+        toForce.force();
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private String readString(int at) {
+        byte[] bytes = new byte[buffer.get(at) & 0xFF];
+        buffer.get(at + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(String s, int max, String field) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > max)
+            throw new IllegalArgumentException(field + " longer than " + max + " bytes: " + s);
+        return bytes;
+    }
+}
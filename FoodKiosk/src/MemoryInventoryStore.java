@@ -0,0 +1,289 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-local {@link InventoryStore} backed by a copy-on-write {@link CatalogSnapshot}.
+ * <p>
+ * This is the console app's original file-less inventory: nothing is persisted, which makes it
+ * handy for demos, tests and benchmarks on machines without MySQL. {@link #all()} orders by
+ * category then name (then id) straight from the snapshot's display-order index, with no sort per
+ * call; {@link #inCategory(String)} lists one category the same way. {@link #changesSince(long)}
+ * works the same way as for {@link Inventory}, and best sellers come from a {@link TopSellers}
+ * ranking, so {@link #topSelling(int)} is O(n) in the rows returned.
+ * <p>
+ * Sales and restocks take no store lock: each product's stock and sold counters change by
+ * compare-and-set ({@link Product#tryConsume}), so concurrent checkouts scale with cores and
+ * never oversell. Nor do they touch shared bookkeeping: {@link #touch(int)} only adds the product
+ * to two concurrent sets, and skips even that while it is already there. Versions are handed out
+ * by {@link #changesSince} (one new version for everything written since the last call) and the
+ * ranking is brought up to date by {@link #topSelling}, each draining its own set.
+ * <p>
+ * The catalog itself is an immutable snapshot behind a {@code volatile} reference: reads take it
+ * without locking and always see a whole catalog. Adds and catalog edits are staged in a
+ * {@link CatalogSnapshot.Edit} and {@linkplain #commit committed} as one swap (writers serialize
+ * on the store), so a bulk change is never seen half applied.
+ *
+ * @author Joseph Guarriello
+ */
+public class MemoryInventoryStore implements InventoryStore {
+    /** Current catalog; replaced, never modified. */
+    private volatile CatalogSnapshot catalog = CatalogSnapshot.EMPTY;
+    /** Version of the last write to each product; guarded by the store monitor. */
+    private final Map<Integer, Long> versions = new HashMap<>();
+    /** Version at which each removed product was removed; guarded by the store monitor. */
+    private final Map<Integer, Long> removedAt = new HashMap<>();
+    /** Last issued version; guarded by the store monitor. */
+    private long version;
+    /** Products written since {@link #changesSince} last gave out a version. */
+    private final Set<Integer> unversioned = ConcurrentHashMap.newKeySet();
+    /** Products written since {@link #topSelling} last re-ranked them. */
+    private final Set<Integer> unranked = ConcurrentHashMap.newKeySet();
+    /** Products ranked by units sold. */
+    private final TopSellers topSellers = new TopSellers();
+
+    /**
+     * Adds a new product.
+     *
+     * @param p product to add
+     * @throws IllegalArgumentException if a product with the same id exists
+     */
+    public void add(Product p) {
+        addAll(List.of(p));
+    }
+
+    /**
+     * Adds new products in one catalog swap.
+     *
+     * @param products products to add
+     * @throws IllegalArgumentException if an id is already in the catalog or repeats in {@code products};
+     *                                  nothing is added then
+     */
+    public synchronized void addAll(Collection<Product> products) {
+        CatalogSnapshot current = catalog;
+        CatalogSnapshot.Edit edit = current.edit();
+        Set<Integer> ids = new HashSet<>();
+        for (Product p : products) {
+            if (current.get(p.getId()) != null || !ids.add(p.getId()))
+                throw new IllegalArgumentException("Duplicate product id: " + p.getId());
+            edit.put(p);
+        }
+        commit(edit);
+    }
+
+    /**
+     * @return the current catalog; wait-free, and unaffected by later edits
+     */
+    public CatalogSnapshot snapshot() {
+        return catalog;
+    }
+
+    /**
+     * Starts staging catalog changes. Stage edits of existing products with
+     * {@link Product#withCatalog} so their stock carries over.
+     *
+     * @return an empty edit
+     */
+    public CatalogSnapshot.Edit edit() {
+        return catalog.edit();
+    }
+
+    /**
+     * Applies staged changes to the current catalog and publishes the result in one swap.
+     * Changes made by other writers since the edit was started are kept.
+     *
+     * @param edit staged changes
+     * @return the new catalog
+     */
+    public synchronized CatalogSnapshot commit(CatalogSnapshot.Edit edit) {
+        if (edit.isEmpty()) return catalog;
+        long v = ++version;
+        for (int id : edit.removals()) {
+            if (catalog.get(id) == null) continue;
+            versions.remove(id);
+            removedAt.put(id, v);
+            topSellers.remove(id);
+        }
+        catalog = catalog.apply(edit, v);
+        for (Product p : edit.puts()) {
+            removedAt.remove(p.getId());
+            touch(p.getId());
+        }
+        return catalog;
+    }
+
+    @Override
+    public Optional<Product> find(int id) {
+        return Optional.ofNullable(catalog.get(id));
+    }
+
+    /**
+     * @return every product by category, then name, then id (unmodifiable view of the current
+     *         snapshot; no copy, no sort)
+     */
+    @Override
+    public List<Product> all() {
+        return catalog.sorted();
+    }
+
+    /**
+     * @param category exact category name
+     * @return the category's products by name, then id (unmodifiable view; empty if none)
+     */
+    public List<Product> inCategory(String category) {
+        return catalog.inCategory(category);
+    }
+
+    /**
+     * @throws NoSuchElementException   if the product does not exist
+     * @throws IllegalArgumentException if {@code qty <= 0}
+     */
+    @Override
+    public void restock(int productId, int qty) {
+        Product p = catalog.get(productId);
+        if (p == null) throw new NoSuchElementException("Product not found: " + productId);
+        p.restock(qty);
+        touch(productId);
+    }
+
+    /**
+     * Consumes every line with a lock-free guarded decrement. If any line is short, the lines
+     * already taken are put back and nothing is sold. While that happens another sale may see
+     * the briefly lower stock and be refused, as it would have been had this sale committed.
+     *
+     * @throws IllegalArgumentException if a quantity is not positive; nothing is consumed then
+     */
+    @Override
+    public SaleResult applySale(Map<Product, Integer> lines) {
+        for (Map.Entry<Product, Integer> e : lines.entrySet()) {
+            if (e.getValue() == null || e.getValue() <= 0)
+                throw new IllegalArgumentException("Quantity must be positive: " + e.getKey().getName());
+        }
+        CatalogSnapshot c = catalog;
+        List<Product> failed = new ArrayList<>();
+        List<Map.Entry<Product, Integer>> taken = new ArrayList<>(lines.size());
+        for (Map.Entry<Product, Integer> e : lines.entrySet()) {
+            Product p = c.get(e.getKey().getId());
+            if (p != null && p.tryConsume(e.getValue())) taken.add(Map.entry(p, e.getValue()));
+            else failed.add(e.getKey());
+        }
+        if (!failed.isEmpty()) {
+            for (Map.Entry<Product, Integer> t : taken) t.getKey().unconsume(t.getValue());
+            return SaleResult.rejected(failed);
+        }
+        for (Map.Entry<Product, Integer> t : taken) touch(t.getKey().getId());
+        return SaleResult.OK;
+    }
+
+    /**
+     * Re-ranks the products sold or restocked since the last call, then reads the ranking.
+     * Holds the store monitor so a product removed by {@link #commit} is not ranked again.
+     */
+    @Override
+    public synchronized List<Product> topSelling(int n) {
+        CatalogSnapshot c = catalog;
+        for (Iterator<Integer> it = unranked.iterator(); it.hasNext(); ) {
+            int id = it.next();
+            it.remove(); // before reading the product, so a later sale marks it again
+            Product p = c.get(id);
+            if (p != null) topSellers.update(p);
+        }
+        return topSellers.top(n);
+    }
+
+    @Override
+    public void importFromFileIfEmpty(String file) {
+        if (catalog.size() == 0) loadFromFile(file);
+    }
+
+    /**
+     * Returns copies of the changed products, like rows read from a database, so a cache that
+     * applies its own sales to them does not also change this store's products.
+     * <p>
+     * Products written since the previous call are given one new version here. Each is taken off
+     * {@link #unversioned} before it is copied, so a write that lands meanwhile is either in the
+     * copy or marks the product again for the next call's version.
+     */
+    @Override
+    public synchronized InventoryDelta changesSince(long since) {
+        CatalogSnapshot c = catalog;
+        if (!unversioned.isEmpty()) {
+            long v = ++version;
+            for (Iterator<Integer> it = unversioned.iterator(); it.hasNext(); ) {
+                int id = it.next();
+                it.remove();
+                if (c.get(id) != null) versions.put(id, v);
+            }
+        }
+        long latest = version;
+        List<Product> changed = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+        removedAt.forEach((id, v) -> { if (v > since) removed.add(id); });
+        for (Map.Entry<Integer, Long> e : versions.entrySet()) {
+            if (e.getValue() > since) {
+                Product p = c.get(e.getKey());
+                if (p != null) changed.add(p.copy());
+            }
+        }
+        return new InventoryDelta(latest, changed, removed);
+    }
+
+    // -------------------- Load --------------------
+
+    /**
+     * Loads products from a text file with lines {@code id,category,name,price,stock[,sold]}.
+     * A header line, blank lines, {@code #} comments, malformed lines and ids already loaded are
+     * skipped. The file's products become visible together, in one catalog swap.
+     *
+     * @param filename file to read
+     */
+    public void loadFromFile(String filename) {
+        Path path = Path.of(filename);
+        if (!Files.exists(path)) {
+            System.out.println("Warning: file not found: " + filename);
+            return;
+        }
+        try (BufferedReader br = Files.newBufferedReader(path)) {
+            Map<Integer, Product> loaded = new LinkedHashMap<>();
+            String line;
+            while ((line = br.readLine()) != null) {
+                Product p = parseLine(line);
+                if (p != null) loaded.putIfAbsent(p.getId(), p);
+            }
+            synchronized (this) {
+                loaded.keySet().removeIf(id -> catalog.get(id) != null);
+                addAll(loaded.values());
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses one seed-file line.
+     *
+     * @param raw line text
+     * @return the product, or {@code null} for headers, comments and malformed lines
+     */
+    static Product parseLine(String raw) {
+        try {
+            return ProductLineParser.parse(raw);
+        } catch (IllegalArgumentException badLine) {
+            return null;
+        }
+    }
+
+    /**
+     * Records a write to {@code productId}: it gets a version at the next {@link #changesSince}
+     * and is re-ranked at the next {@link #topSelling}. A product already marked costs two reads.
+     *
+     * @param productId product that changed
+     */
+    protected void touch(int productId) {
+        if (!unversioned.contains(productId)) unversioned.add(productId);
+        if (!unranked.contains(productId)) unranked.add(productId);
+    }
+}
@@ -0,0 +1,194 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money: amounts are {@code long} cents everywhere prices are stored, summed or
+ * logged, so totals are exact and adding a line costs one multiply.
+ * <p>
+ * {@link #format} renders US currency ({@code $1,234.56}, {@code -$0.50}) like
+ * {@code NumberFormat.getCurrencyInstance(Locale.US)}, but without a formatter: amounts below
+ * {@code kiosk.money.cacheCents} (default 100000, i.e. $1,000) come from a table filled on first
+ * use, so repainting a table of prices and subtotals allocates nothing. {@link #appendTo} and
+ * {@link #appendPlain} write into a caller's {@link StringBuilder} for the same reason.
+ * <p>
+ * Conversions at the edges: {@link #ofDollars} for {@code double} sources (a {@code DECIMAL(10,2)}
+ * read with {@code getDouble}, the binary snapshot files), {@link #parse} for text, and
+ * {@link #toDecimal} for JDBC parameters.
+ *
+ * @author Joseph Guarriello
+ */
+public final class Money {
+    /** Amounts in {@code [0, CACHE_SIZE)} cents have a cached rendering. */
+    private static final int CACHE_SIZE = Math.max(0, Integer.getInteger("kiosk.money.cacheCents", 100_000));
+    private static final String[] CACHE = new String[CACHE_SIZE];
+
+    private Money() { }
+
+    // ---------- Conversions ----------
+
+    /**
+     * @param dollars an amount in dollars
+     * @return the amount rounded to the nearest cent; exact for any value that has at most two
+     *         decimals and fewer than 15 significant digits, such as a {@code DECIMAL(10,2)}
+     */
+    public static long ofDollars(double dollars) {
+        return Math.round(dollars * 100);
+    }
+
+    /**
+     * @param cents an amount in cents
+     * @return the amount in dollars (for display arithmetic only)
+     */
+    public static double toDollars(long cents) {
+        return cents / 100.0;
+    }
+
+    /**
+     * @param cents an amount in cents
+     * @return the amount with scale 2, for {@code DECIMAL} columns
+     */
+    public static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /**
+     * @param amount a decimal amount
+     * @return the amount in cents, rounded half up
+     * @throws ArithmeticException if it does not fit in a {@code long}
+     */
+    public static long ofDecimal(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Parses {@code [-]digits[.digits]}, rounding half up to the cent.
+     *
+     * @param s text
+     * @return the amount in cents
+     * @throws NumberFormatException if the text is not such a number
+     */
+    public static long parse(CharSequence s) {
+        return parse(s, 0, s.length());
+    }
+
+    /**
+     * Parses {@code [-]digits[.digits]} in {@code s[from, to)} (surrounding whitespace allowed)
+     * without allocating, rounding half up to the cent.
+     *
+     * @param s    text
+     * @param from start index
+     * @param to   end index (exclusive)
+     * @return the amount in cents
+     * @throws NumberFormatException if the range is not such a number
+     */
+    public static long parse(CharSequence s, int from, int to) {
+        while (from < to && Character.isWhitespace(s.charAt(from))) from++;
+        while (to > from && Character.isWhitespace(s.charAt(to - 1))) to--;
+        boolean neg = from < to && s.charAt(from) == '-';
+        int i = neg ? from + 1 : from;
+        long whole = 0;
+        int digits = 0;
+        for (; i < to && s.charAt(i) != '.'; i++, digits++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9 || whole > (Long.MAX_VALUE / 100 - 9) / 10) throw bad(s, from, to);
+            whole = whole * 10 + d;
+        }
+        long frac = 0;
+        int places = 0;
+        boolean roundUp = false;
+        for (i++; i < to; i++, places++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) throw bad(s, from, to);
+            if (places < 2) frac = frac * 10 + d;
+            else if (places == 2) roundUp = d >= 5;
+        }
+        if (digits == 0 && places == 0) throw bad(s, from, to);
+        if (places == 1) frac *= 10;
+        long v = whole * 100 + frac + (roundUp ? 1 : 0);
+        return neg ? -v : v;
+    }
+
+    private static NumberFormatException bad(CharSequence s, int from, int to) {
+        return new NumberFormatException("Not an amount: " + s.subSequence(from, to));
+    }
+
+    // ---------- Rendering ----------
+
+    /**
+     * @param cents an amount in cents
+     * @return US currency text, e.g. {@code $1,234.56}; cached for common amounts
+     */
+    public static String format(long cents) {
+        if (cents >= 0 && cents < CACHE_SIZE) {
+            int i = (int) cents;
+            String s = CACHE[i];
+            if (s == null) CACHE[i] = s = render(cents); // racy but benign: Strings are immutable
+            return s;
+        }
+        return render(cents);
+    }
+
+    /**
+     * Appends US currency text without allocating.
+     *
+     * @param sb    destination
+     * @param cents an amount in cents
+     * @return {@code sb}
+     */
+    public static StringBuilder appendTo(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+            cents = -cents;
+        }
+        sb.append('$');
+        appendGrouped(sb, cents / 100);
+        return appendFraction(sb, cents % 100);
+    }
+
+    /**
+     * Appends {@code [-]digits.dd} (no currency sign or grouping, as in CSV files) without allocating.
+     *
+     * @param sb    destination
+     * @param cents an amount in cents
+     * @return {@code sb}
+     */
+    public static StringBuilder appendPlain(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+            cents = -cents;
+        }
+        sb.append(cents / 100);
+        return appendFraction(sb, cents % 100);
+    }
+
+    /**
+     * @param cents an amount in cents
+     * @return {@code [-]digits.dd}, e.g. {@code 1234.56}
+     */
+    public static String plain(long cents) {
+        return appendPlain(new StringBuilder(24), cents).toString();
+    }
+
+    private static String render(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    private static void appendGrouped(StringBuilder sb, long dollars) {
+        if (dollars < 1000) {
+            sb.append(dollars);
+            return;
+        }
+        appendGrouped(sb, dollars / 1000);
+        int rest = (int) (dollars % 1000);
+        sb.append(',');
+        if (rest < 100) sb.append('0');
+        if (rest < 10) sb.append('0');
+        sb.append(rest);
+    }
+
+    private static StringBuilder appendFraction(StringBuilder sb, long frac) {
+        sb.append('.');
+        if (frac < 10) sb.append('0');
+        return sb.append(frac);
+    }
+}
@@ -0,0 +1,622 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Columnar archive of closed days of order history, one file per month
+ * ({@code <dir>/orders-yyyy-MM.fkc}).
+ * <p>
+ * The journal repeats the order total on every line and spells out every product name. The
+ * archive stores the same lines as blocks of up to {@code kiosk.archive.blockRows} rows (default
+ * 8192, never splitting an order), each block holding one column per field:
+ * <ul>
+ *   <li>timestamps: epoch seconds, delta-encoded against the previous row (zig-zag varints)</li>
+ *   <li>product: index into the file's product-name dictionary (varint)</li>
+ *   <li>quantity, unit price and line total: varints, money as fixed-point cents</li>
+ *   <li>orders: a bitmap marking each order's first line, plus one total per order</li>
+ * </ul>
+ * The file header carries a zone map per block &ndash; min/max timestamp and min/max product
+ * code &ndash; and where each column lives. A report reads the header, skips every block whose
+ * zone map rules it out, reads only the columns it needs (blocks wholly inside the range never
+ * read their timestamps), decodes them into primitive arrays and aggregates with plain loops.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *   int    magic 'FKC1'
+ *   int    header length (column offsets are relative to the end of the header)
+ *   int    last archived day (epoch day)
+ *   int    dictionary size, then each product name as modified UTF-8
+ *   int    block count, then per block:
+ *            int rows, int orders, long minTs, long maxTs, int minProduct, int maxProduct,
+ *            6 x (long offset, int length)
+ *   column data
+ * </pre>
+ * Archiving is incremental: days already in a month's file are skipped, and a month's file is
+ * rewritten to a temporary sibling and atomically moved into place. Journals are read in the order
+ * given and are expected to be chronological, as {@link OrderJournal} writes them.
+ *
+ * @author Joseph Guarriello
+ */
+public class OrderArchive {
+    /** File magic: "FKC1". */
+    private static final int MAGIC = 0x464B4331;
+    private static final int TS = 0, PRODUCT = 1, QTY = 2, UNIT = 3, LINE = 4, ORDER = 5, COLUMNS = 6;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Path dir;
+    private final int blockRows;
+
+    /**
+     * Outcome of {@link #archive}.
+     *
+     * @param rows     lines added
+     * @param orders   orders added
+     * @param blocks   blocks written
+     * @param months   month files written
+     * @param rejected malformed journal lines
+     * @param millis   elapsed time
+     */
+    public record ArchiveStats(long rows, long orders, int blocks, int months, long rejected, long millis) {
+        @Override
+        public String toString() {
+            return String.format("%,d lines (%,d orders) in %d blocks across %d month file(s), %,d rejected (%d ms)",
+                    rows, orders, blocks, months, rejected, millis);
+        }
+    }
+
+    /**
+     * Aggregates over the archive.
+     *
+     * @param from            first day (inclusive)
+     * @param to              last day (inclusive)
+     * @param product         product filter, or {@code null} for all
+     * @param orders          orders (with the filter: orders containing the product)
+     * @param units           units sold
+     * @param revenueCents    sum of line totals, in cents
+     * @param orderTotalCents sum of the counted orders' totals, in cents
+     * @param products        per-product sales, highest revenue first
+     * @param blocksRead      blocks decoded
+     * @param blocksSkipped   blocks ruled out by their zone map
+     * @param bytesRead       column bytes read
+     * @param millis          elapsed time
+     */
+    public record ArchiveReport(LocalDate from, LocalDate to, String product, long orders, long units,
+                                long revenueCents, long orderTotalCents, List<SalesAnalytics.ProductSales> products,
+                                int blocksRead, int blocksSkipped, long bytesRead, long millis) {
+        /** @return average order value in cents (0 without orders) */
+        public long averageOrderCents() {
+            return orders == 0 ? 0 : Math.round((double) orderTotalCents / orders);
+        }
+    }
+
+    /** Zone map and column locations of one block. */
+    private record Block(int rows, int orders, long minTs, long maxTs, int minProduct, int maxProduct,
+                         long[] offsets, int[] lengths) { }
+
+    /** A month file's header. */
+    private static final class MonthFile {
+        int lastDay = Integer.MIN_VALUE;
+        final List<String> dict = new ArrayList<>();
+        final Map<String, Integer> codes = new HashMap<>();
+        final List<Block> blocks = new ArrayList<>();
+        /** Column bytes of the existing blocks (loaded only when the file is rewritten). */
+        byte[] data = new byte[0];
+
+        int code(String name) {
+            Integer c = codes.get(name);
+            if (c == null) {
+                c = dict.size();
+                dict.add(name);
+                codes.put(name, c);
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Opens the archive in {@code kiosk.archive.dir} (default {@code archive}), with blocks of
+     * {@code kiosk.archive.blockRows} rows.
+     */
+    public OrderArchive() {
+        this(Path.of(System.getProperty("kiosk.archive.dir", "archive")), Integer.getInteger("kiosk.archive.blockRows", 8192));
+    }
+
+    /**
+     * @param dir       archive directory (created on first write)
+     * @param blockRows target rows per block (&gt; 0)
+     */
+    public OrderArchive(Path dir, int blockRows) {
+        if (blockRows <= 0) throw new IllegalArgumentException("blockRows must be positive");
+        this.dir = dir;
+        this.blockRows = blockRows;
+    }
+
+    /**
+     * Entry point.
+     * <pre>
+     *   java OrderArchive archive [journal.csv]        archive closed days of the journal and its rotations
+     *   java OrderArchive report yyyy-MM [product]     monthly report from the archive
+     * </pre>
+     *
+     * @param args command and arguments
+     */
+    public static void main(String[] args) {
+        OrderArchive archive = new OrderArchive();
+        if (args.length >= 1 && args[0].equals("archive")) {
+            Path journal = Path.of(args.length > 1 ? args[1] : "orders.csv");
+            System.out.println(archive.archive(SalesAnalytics.journalFiles(journal), LocalDate.now()));
+        } else if (args.length >= 2 && args[0].equals("report")) {
+            ArchiveReport r = archive.monthly(YearMonth.parse(args[1]), args.length > 2 ? args[2] : null,
+                    n -> SalesAnalytics.UNKNOWN_CATEGORY);
+            System.out.printf("%s to %s: %,d orders, %,d units, revenue %s, average order %s%n", r.from(), r.to(),
+                    r.orders(), r.units(), Money.format(r.revenueCents()), Money.format(r.averageOrderCents()));
+            for (SalesAnalytics.ProductSales p : r.products())
+                System.out.printf("  %-32s %8d %12s%n", p.product(), p.units(), Money.format(p.revenueCents()));
+            System.out.printf("(%d blocks read, %d skipped, %,d bytes, %d ms)%n",
+                    r.blocksRead(), r.blocksSkipped(), r.bytesRead(), r.millis());
+        } else {
+            System.out.println("Usage: java OrderArchive archive [journal.csv] | report yyyy-MM [product]");
+        }
+    }
+
+    // ---------- Archiving ----------
+
+    /** Pending rows of one month, as parallel primitive arrays. */
+    private static final class Rows {
+        int size;
+        long[] ts = new long[1024];
+        int[] product = new int[1024];
+        long[] qty = new long[1024], unit = new long[1024], line = new long[1024], orderTotal = new long[1024];
+        boolean[] newOrder = new boolean[1024];
+        int maxDay = Integer.MIN_VALUE;
+
+        void add(long t, int p, long q, long u, long l, boolean first, long total, int day) {
+            if (size == ts.length) {
+                int n = size * 2;
+                ts = Arrays.copyOf(ts, n); product = Arrays.copyOf(product, n); qty = Arrays.copyOf(qty, n);
+                unit = Arrays.copyOf(unit, n); line = Arrays.copyOf(line, n);
+                orderTotal = Arrays.copyOf(orderTotal, n); newOrder = Arrays.copyOf(newOrder, n);
+            }
+            ts[size] = t; product[size] = p; qty[size] = q; unit[size] = u; line[size] = l;
+            newOrder[size] = first; orderTotal[size] = total;
+            maxDay = Math.max(maxDay, day);
+            size++;
+        }
+    }
+
+    /**
+     * Moves every day before {@code before} that is not archived yet from the journals into the
+     * archive. Consecutive lines with the same order id are one order; lines without an id are
+     * grouped by timestamp and order total.
+     *
+     * @param journals journal files, oldest first (see {@link SalesAnalytics#journalFiles})
+     * @param before   first day not to archive (normally today, whose orders are still coming in)
+     * @return what was added
+     * @throws RuntimeException if a journal cannot be read or a month file cannot be written
+     */
+    public ArchiveStats archive(List<Path> journals, LocalDate before) {
+        long started = System.nanoTime();
+        long beforeDay = before.toEpochDay();
+        long rowCount = 0, orderCount = 0, rejected = 0;
+        int[] written = new int[2]; // blocks, months
+        YearMonth current = null;
+        MonthFile month = null;
+        Rows rows = new Rows();
+        try {
+            for (Path journal : journals) {
+                String prevTs = null, prevTotal = null;
+                long prevId = 0;
+                boolean withOrderId = false;
+                try (BufferedReader in = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+                    for (String raw = in.readLine(); raw != null; raw = in.readLine()) {
+                        if (raw.isBlank()) continue;
+                        if (raw.startsWith("timestamp,")) {
+                            withOrderId = OrderJournal.logsOrderId(raw);
+                            continue;
+                        }
+                        String[] f = OrderBackfill.split(raw, withOrderId);
+                        LocalDateTime at;
+                        long qty, unit, line, total, id;
+                        try {
+                            if (f == null) throw new IllegalArgumentException();
+                            at = LocalDateTime.parse(f[0], TIMESTAMP);
+                            qty = Long.parseLong(f[2]);
+                            unit = Money.parse(f[3]);
+                            line = Money.parse(f[4]);
+                            total = Money.parse(f[5]);
+                            id = withOrderId && !f[6].isEmpty() ? Long.parseLong(f[6]) : 0;
+                        } catch (IllegalArgumentException | DateTimeParseException e) {
+                            rejected++;
+                            continue;
+                        }
+                        boolean first = id > 0 || prevId > 0 // by order id; by time and total without one
+                                ? id != prevId
+                                : !(f[0].equals(prevTs) && f[5].equals(prevTotal));
+                        prevTs = f[0];
+                        prevTotal = f[5];
+                        prevId = id;
+
+                        int day = (int) at.toLocalDate().toEpochDay();
+                        if (day >= beforeDay) continue;
+                        YearMonth ym = YearMonth.from(at);
+                        if (!ym.equals(current)) {
+                            flush(current, month, rows, written);
+                            current = ym;
+                            month = load(ym);
+                            rows = new Rows();
+                        }
+                        if (day <= month.lastDay) continue;
+                        rows.add(at.toEpochSecond(ZoneOffset.UTC), month.code(f[1]), qty, unit, line, first, total, day);
+                        rowCount++;
+                        if (first) orderCount++;
+                    }
+                }
+            }
+            flush(current, month, rows, written);
+        } catch (IOException e) {
+            throw new RuntimeException("Archiving failed: " + e.getMessage(), e);
+        }
+        return new ArchiveStats(rowCount, orderCount, written[0], written[1], rejected,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Encodes a month's pending rows as new blocks and rewrites the month file.
+     */
+    private void flush(YearMonth ym, MonthFile month, Rows rows, int[] written) throws IOException {
+        if (ym == null || rows.size == 0) return;
+        ByteArrayOutputStream data = new ByteArrayOutputStream(month.data.length + rows.size * 8);
+        data.write(month.data);
+        int start = 0;
+        while (start < rows.size) {
+            int end = Math.min(rows.size, start + blockRows);
+            while (end < rows.size && !rows.newOrder[end]) end++; // never split an order
+            month.blocks.add(encode(rows, start, end, data));
+            written[0]++;
+            start = end;
+        }
+        month.lastDay = Math.max(month.lastDay, rows.maxDay);
+        month.data = data.toByteArray();
+        write(file(ym), month);
+        written[1]++;
+    }
+
+    /**
+     * Appends the columns of rows {@code [from, to)} to {@code data}.
+     *
+     * @return the block's zone map and column locations
+     */
+    private static Block encode(Rows r, int from, int to, ByteArrayOutputStream data) {
+        long minTs = Long.MAX_VALUE, maxTs = Long.MIN_VALUE;
+        int minP = Integer.MAX_VALUE, maxP = Integer.MIN_VALUE, orders = 0;
+        for (int i = from; i < to; i++) {
+            minTs = Math.min(minTs, r.ts[i]);
+            maxTs = Math.max(maxTs, r.ts[i]);
+            minP = Math.min(minP, r.product[i]);
+            maxP = Math.max(maxP, r.product[i]);
+            if (r.newOrder[i]) orders++;
+        }
+        long[] offsets = new long[COLUMNS];
+        int[] lengths = new int[COLUMNS];
+        ByteArrayOutputStream col = new ByteArrayOutputStream((to - from) * 3);
+        for (int c = 0; c < COLUMNS; c++) {
+            col.reset();
+            switch (c) {
+                case TS -> {
+                    long prev = minTs;
+                    for (int i = from; i < to; i++) { putVar(col, zigzag(r.ts[i] - prev)); prev = r.ts[i]; }
+                }
+                case PRODUCT -> { for (int i = from; i < to; i++) putVar(col, r.product[i]); }
+                case QTY -> { for (int i = from; i < to; i++) putVar(col, zigzag(r.qty[i])); }
+                case UNIT -> { for (int i = from; i < to; i++) putVar(col, zigzag(r.unit[i])); }
+                case LINE -> { for (int i = from; i < to; i++) putVar(col, zigzag(r.line[i])); }
+                case ORDER -> {
+                    byte[] bits = new byte[(to - from + 7) / 8];
+                    for (int i = from; i < to; i++) if (r.newOrder[i]) bits[(i - from) >>> 3] |= (byte) (1 << ((i - from) & 7));
+                    col.writeBytes(bits);
+                    for (int i = from; i < to; i++) if (r.newOrder[i]) putVar(col, zigzag(r.orderTotal[i]));
+                }
+                default -> throw new IllegalStateException();
+            }
+            offsets[c] = data.size();
+            lengths[c] = col.size();
+            data.write(col.toByteArray(), 0, col.size());
+        }
+        return new Block(to - from, orders, minTs, maxTs, minP, maxP, offsets, lengths);
+    }
+
+    private void write(Path file, MonthFile m) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(header)) {
+            out.writeInt(MAGIC);
+            out.writeInt(0); // header length, patched below
+            out.writeInt(m.lastDay);
+            out.writeInt(m.dict.size());
+            for (String name : m.dict) out.writeUTF(name);
+            out.writeInt(m.blocks.size());
+            for (Block b : m.blocks) {
+                out.writeInt(b.rows());
+                out.writeInt(b.orders());
+                out.writeLong(b.minTs());
+                out.writeLong(b.maxTs());
+                out.writeInt(b.minProduct());
+                out.writeInt(b.maxProduct());
+                for (int c = 0; c < COLUMNS; c++) {
+                    out.writeLong(b.offsets()[c]);
+                    out.writeInt(b.lengths()[c]);
+                }
+            }
+        }
+        byte[] h = header.toByteArray();
+        ByteBuffer.wrap(h).putInt(4, h.length);
+
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                out.write(h);
+                out.write(m.data);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // ---------- Reading ----------
+
+    /**
+     * Monthly report.
+     *
+     * @param month      month to report
+     * @param product    product filter, or {@code null}
+     * @param categoryOf product name to category
+     * @return the report
+     */
+    public ArchiveReport monthly(YearMonth month, String product, Function<String, String> categoryOf) {
+        return report(month.atDay(1), month.atEndOfMonth(), product, categoryOf);
+    }
+
+    /**
+     * Aggregates archived orders in {@code [from, to]}.
+     *
+     * @param from       first day (inclusive)
+     * @param to         last day (inclusive)
+     * @param product    only lines of this product (and the orders containing it), or {@code null}
+     * @param categoryOf product name to category
+     * @return the report
+     * @throws RuntimeException if a month file cannot be read
+     */
+    public ArchiveReport report(LocalDate from, LocalDate to, String product, Function<String, String> categoryOf) {
+        long started = System.nanoTime();
+        long lo = from.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        long hi = to.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        Aggregate agg = new Aggregate();
+        Map<String, long[]> byName = new HashMap<>();
+        try {
+            for (YearMonth m = YearMonth.from(from); !m.isAfter(YearMonth.from(to)); m = m.plusMonths(1)) {
+                Path file = file(m);
+                if (!Files.isRegularFile(file)) continue;
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                    scan(ch, lo, hi, product, agg, byName);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read order archive: " + e.getMessage(), e);
+        }
+        List<SalesAnalytics.ProductSales> ps = new ArrayList<>(byName.size());
+        byName.forEach((n, t) -> ps.add(new SalesAnalytics.ProductSales(n, categoryOf.apply(n), t[0], t[1])));
+        ps.sort((a, b) -> a.revenueCents() != b.revenueCents()
+                ? Long.compare(b.revenueCents(), a.revenueCents()) : a.product().compareTo(b.product()));
+        return new ArchiveReport(from, to, product, agg.orders, agg.units, agg.revenue, agg.orderTotal, List.copyOf(ps),
+                agg.blocksRead, agg.blocksSkipped, agg.bytesRead, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /** Running totals and the column buffers reused across blocks. */
+    private static final class Aggregate {
+        long orders, units, revenue, orderTotal, bytesRead;
+        int blocksRead, blocksSkipped;
+        long[] ts = new long[0], qty = new long[0], line = new long[0], totals = new long[0];
+        int[] product = new int[0];
+        byte[] bits = new byte[0], raw = new byte[0];
+    }
+
+    /**
+     * Aggregates one month file's blocks that pass the zone maps.
+     */
+    private static void scan(FileChannel ch, long lo, long hi, String product, Aggregate a,
+                             Map<String, long[]> byName) throws IOException {
+        MonthFile m = readHeader(ch);
+        long dataStart = ch.position();
+        int code = -1;
+        if (product != null) {
+            Integer c = m.codes.get(product);
+            if (c == null) { a.blocksSkipped += m.blocks.size(); return; }
+            code = c;
+        }
+        long[] pUnits = new long[m.dict.size()], pCents = new long[m.dict.size()];
+        for (Block b : m.blocks) {
+            if (b.maxTs() < lo || b.minTs() >= hi || code >= 0 && (code < b.minProduct() || code > b.maxProduct())) {
+                a.blocksSkipped++;
+                continue;
+            }
+            a.blocksRead++;
+            int n = b.rows();
+            boolean whole = b.minTs() >= lo && b.maxTs() < hi;
+            if (a.ts.length < n) {
+                a.ts = new long[n]; a.qty = new long[n]; a.line = new long[n]; a.product = new int[n]; a.totals = new long[n];
+            }
+            decodeInts(read(ch, dataStart, b, PRODUCT, a), a.product, n);
+            decodeLongs(read(ch, dataStart, b, QTY, a), a.qty, n, 0, false);
+            decodeLongs(read(ch, dataStart, b, LINE, a), a.line, n, 0, false);
+            int bitBytes = (n + 7) / 8;
+            ByteBuffer orderCol = read(ch, dataStart, b, ORDER, a);
+            if (a.bits.length < bitBytes) a.bits = new byte[bitBytes];
+            orderCol.get(a.bits, 0, bitBytes);
+            decodeLongs(orderCol, a.totals, b.orders(), 0, false);
+
+            if (whole && code < 0) {
+                // Every row counts: straight reductions and histogram loops over the arrays
+                long[] line = a.line, qty = a.qty, totals = a.totals;
+                int[] prod = a.product;
+                long rev = 0, units = 0, orderTotal = 0;
+                for (int i = 0; i < n; i++) rev += line[i];
+                for (int i = 0; i < n; i++) units += qty[i];
+                for (int i = 0; i < b.orders(); i++) orderTotal += totals[i];
+                for (int i = 0; i < n; i++) { pCents[prod[i]] += line[i]; pUnits[prod[i]] += qty[i]; }
+                a.revenue += rev;
+                a.units += units;
+                a.orders += b.orders();
+                a.orderTotal += orderTotal;
+                continue;
+            }
+            if (!whole) decodeLongs(read(ch, dataStart, b, TS, a), a.ts, n, b.minTs(), true);
+            int order = -1, counted = -1;
+            for (int i = 0; i < n; i++) {
+                if ((a.bits[i >>> 3] & (1 << (i & 7))) != 0) order++;
+                if (!whole && (a.ts[i] < lo || a.ts[i] >= hi)) continue;
+                if (code >= 0 && a.product[i] != code) continue;
+                a.revenue += a.line[i];
+                a.units += a.qty[i];
+                pCents[a.product[i]] += a.line[i];
+                pUnits[a.product[i]] += a.qty[i];
+                if (order >= 0 && order != counted) {
+                    a.orders++;
+                    a.orderTotal += a.totals[order];
+                    counted = order;
+                }
+            }
+        }
+        for (int c = 0; c < pUnits.length; c++) {
+            if (pUnits[c] == 0 && pCents[c] == 0) continue;
+            long[] t = byName.computeIfAbsent(m.dict.get(c), k -> new long[2]);
+            t[0] += pUnits[c];
+            t[1] += pCents[c];
+        }
+    }
+
+    /** Reads one column of a block into the shared buffer. */
+    private static ByteBuffer read(FileChannel ch, long dataStart, Block b, int column, Aggregate a) throws IOException {
+        int len = b.lengths()[column];
+        if (a.raw.length < len) a.raw = new byte[Math.max(len, a.raw.length * 2)];
+        ByteBuffer buf = ByteBuffer.wrap(a.raw, 0, len);
+        long pos = dataStart + b.offsets()[column];
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) throw new IOException("Truncated archive column");
+        }
+        a.bytesRead += len;
+        return buf.flip();
+    }
+
+    /**
+     * Loads a month file's header and column bytes (to append to it), or an empty month if there is none.
+     */
+    private MonthFile load(YearMonth ym) throws IOException {
+        Path file = file(ym);
+        if (!Files.isRegularFile(file)) return new MonthFile();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MonthFile m = readHeader(ch);
+            ByteBuffer data = ByteBuffer.allocate((int) (ch.size() - ch.position()));
+            while (data.hasRemaining()) if (ch.read(data) < 0) throw new IOException("Truncated archive " + file);
+            m.data = data.array();
+            return m;
+        }
+    }
+
+    /**
+     * Reads the header and leaves the channel positioned at the start of the column data.
+     */
+    private static MonthFile readHeader(FileChannel ch) throws IOException {
+        ByteBuffer fixed = ByteBuffer.allocate(8);
+        while (fixed.hasRemaining()) if (ch.read(fixed, fixed.position()) < 0) throw new IOException("Truncated archive");
+        fixed.flip();
+        if (fixed.getInt() != MAGIC) throw new IOException("Not an order archive");
+        int headerLength = fixed.getInt();
+        ByteBuffer h = ByteBuffer.allocate(headerLength);
+        while (h.hasRemaining()) if (ch.read(h, h.position()) < 0) throw new IOException("Truncated archive header");
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(h.array(), 8, headerLength - 8));
+        MonthFile m = new MonthFile();
+        m.lastDay = in.readInt();
+        int dictSize = in.readInt();
+        for (int i = 0; i < dictSize; i++) m.code(in.readUTF());
+        int blocks = in.readInt();
+        for (int i = 0; i < blocks; i++) {
+            int rows = in.readInt(), orders = in.readInt();
+            long minTs = in.readLong(), maxTs = in.readLong();
+            int minP = in.readInt(), maxP = in.readInt();
+            long[] offsets = new long[COLUMNS];
+            int[] lengths = new int[COLUMNS];
+            for (int c = 0; c < COLUMNS; c++) { offsets[c] = in.readLong(); lengths[c] = in.readInt(); }
+            m.blocks.add(new Block(rows, orders, minTs, maxTs, minP, maxP, offsets, lengths));
+        }
+        ch.position(headerLength);
+        return m;
+    }
+
+    private Path file(YearMonth ym) {
+        return dir.resolve("orders-" + ym + ".fkc");
+    }
+
+    // ---------- Encoding helpers ----------
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static void putVar(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long getVar(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    private static void decodeInts(ByteBuffer in, int[] out, int n) {
+        for (int i = 0; i < n; i++) out[i] = (int) getVar(in);
+    }
+
+    /**
+     * Decodes {@code n} zig-zag varints; with {@code delta}, each value is added to the previous
+     * one, starting from {@code base}.
+     */
+    private static void decodeLongs(ByteBuffer in, long[] out, int n, long base, boolean delta) {
+        long prev = base;
+        for (int i = 0; i < n; i++) {
+            long raw = getVar(in);
+            long v = (raw >>> 1) ^ -(raw & 1);
+            out[i] = delta ? (prev += v) : v;
+        }
+    }
+}
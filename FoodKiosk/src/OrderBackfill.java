@@ -0,0 +1,434 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk-loads order journals ({@code orders.csv} and its rotated files) into the {@code orders}
+ * and {@code order_lines} tables.
+ * <p>
+ * The journal is streamed line by line, so memory stays constant whatever its size. An order is
+ * identified by the {@code order_id} column {@link OrderJournal} writes: the id of its row in
+ * {@code orders}, shared by all of its consecutive lines. Orders are written in chunks of
+ * {@code kiosk.backfill.batchOrders} (default 1000): one batched insert for the chunk's orders,
+ * one batched insert for all their lines &ndash; both rewritten into multi-row {@code INSERT}s by
+ * the driver &ndash; and one commit.
+ * <p>
+ * Re-running is safe, and so is a journal that overlaps orders recorded live by
+ * {@link Inventory#applySale}: an order whose id is already in the table, or already seen in this
+ * run, is skipped; a missing one is inserted under its own id. Lines without an id (journals
+ * written before the id was logged, or by a kiosk that keeps no order table) were never recorded
+ * live; consecutive ones with the same timestamp and order total are one order, identified by a
+ * {@code journal_key} &ndash; a SHA-1 of its timestamp, total and lines, numbered when identical
+ * orders share a second &ndash; so a rerun finds it too. Product ids are looked up by name; lines
+ * whose product no longer exists keep their name with a {@code NULL} product id. Malformed lines
+ * are counted and skipped.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java OrderBackfill [journal.csv ...]     (default: orders.csv)
+ * </pre>
+ *
+ * @author Joseph Guarriello
+ */
+public class OrderBackfill {
+    private static final String SQL_ORDER_WITH_ID =
+            "INSERT INTO orders(id, created_at, total, item_count) VALUES (?,?,?,?)";
+    private static final String SQL_ORDER_WITH_KEY =
+            "INSERT INTO orders(created_at, total, item_count, journal_key) VALUES (?,?,?,?)";
+    private static final String SQL_EXISTING_IDS = "SELECT id FROM orders WHERE id BETWEEN ? AND ?";
+    private static final String SQL_EXISTING_KEYS =
+            "SELECT journal_key FROM orders WHERE created_at >= ? AND created_at < ? AND journal_key IS NOT NULL";
+    private static final String SQL_PRODUCTS = "SELECT id, name FROM products";
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    /** How often progress is reported. */
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final ConnectionPool pool;
+    private final int batchOrders;
+
+    /**
+     * Backfill counters.
+     *
+     * @param lines    journal lines read
+     * @param orders   orders found in the journal
+     * @param inserted orders written
+     * @param skipped  orders already in the table (or repeated in the journal)
+     * @param rejected malformed lines
+     * @param millis   elapsed time
+     */
+    public record BackfillReport(long lines, long orders, long inserted, long skipped, long rejected, long millis) {
+        /** @return journal lines processed per second */
+        public double linesPerSecond() {
+            return millis == 0 ? lines : lines * 1000.0 / millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d lines, %,d orders: %,d inserted, %,d already present, %,d rejected lines, %,.0f lines/s",
+                    lines, orders, inserted, skipped, rejected, linesPerSecond());
+        }
+    }
+
+    /** One journal line. */
+    private record Line(String product, int qty, BigDecimal unitPrice, BigDecimal lineTotal) { }
+
+    /**
+     * One order assembled from consecutive journal lines.
+     *
+     * @param id  its id in {@code orders}, or 0 if the journal has none
+     * @param key its {@code journal_key} when {@code id} is 0, set once the order is complete
+     */
+    private record Order(long id, LocalDateTime at, BigDecimal total, List<Line> lines, String key) {
+        int items() {
+            int n = 0;
+            for (Line l : lines) n += l.qty();
+            return n;
+        }
+
+        /** @return {@code true} if a line with these fields continues this order */
+        boolean continuedBy(long lineId, LocalDateTime lineAt, BigDecimal lineOrderTotal) {
+            if (id > 0 || lineId > 0) return id == lineId;
+            return at.equals(lineAt) && total.compareTo(lineOrderTotal) == 0;
+        }
+    }
+
+    /**
+     * Creates a backfill sized by {@code kiosk.backfill.batchOrders} (default 1000).
+     *
+     * @param pool connection pool to write through
+     */
+    public OrderBackfill(ConnectionPool pool) {
+        this(pool, Integer.getInteger("kiosk.backfill.batchOrders", 1_000));
+    }
+
+    /**
+     * @param pool        connection pool to write through
+     * @param batchOrders orders per committed chunk (&gt; 0)
+     */
+    public OrderBackfill(ConnectionPool pool, int batchOrders) {
+        if (batchOrders <= 0) throw new IllegalArgumentException("batchOrders must be positive");
+        this.pool = pool;
+        this.batchOrders = batchOrders;
+    }
+
+    /**
+     * Entry point.
+     *
+     * @param args journal files (default {@code orders.csv})
+     */
+    public static void main(String[] args) {
+        ConnectionPool pool = ConnectionPool.shared();
+        SchemaMigrator.migrate(pool);
+        OrderBackfill backfill = new OrderBackfill(pool);
+        for (String f : args.length == 0 ? new String[] { "orders.csv" } : args) {
+            System.out.println(f + ": " + backfill.load(Path.of(f)));
+        }
+        pool.close();
+    }
+
+    /**
+     * Loads one journal file.
+     *
+     * @param journal journal file
+     * @return final counters
+     * @throws RuntimeException if the file cannot be read or a chunk cannot be written
+     */
+    public BackfillReport load(Path journal) {
+        long started = System.nanoTime();
+        long nextReport = started + PROGRESS_INTERVAL_NANOS;
+        long lines = 0, orders = 0, inserted = 0, skipped = 0, rejected = 0;
+        try (BufferedReader in = Files.newBufferedReader(journal, StandardCharsets.UTF_8);
+             PooledConnection c = pool.borrow()) {
+            Map<String, Integer> ids = productIds(c);
+            c.setAutoCommit(false);
+            JournalKeys keys = new JournalKeys();
+            boolean withOrderId = false;
+            List<Order> chunk = new ArrayList<>(batchOrders);
+            Order open = null;
+            for (String raw = in.readLine(); raw != null; raw = in.readLine()) {
+                lines++;
+                if (raw.isBlank()) continue;
+                if (raw.startsWith("timestamp,")) {
+                    withOrderId = OrderJournal.logsOrderId(raw);
+                    continue;
+                }
+                String[] f = split(raw, withOrderId);
+                long id;
+                LocalDateTime at;
+                Line line;
+                BigDecimal total;
+                try {
+                    if (f == null) throw new IllegalArgumentException();
+                    at = LocalDateTime.parse(f[0], TIMESTAMP);
+                    line = new Line(f[1], Integer.parseInt(f[2]), new BigDecimal(f[3]), new BigDecimal(f[4]));
+                    total = new BigDecimal(f[5]);
+                    id = withOrderId && !f[6].isEmpty() ? Long.parseLong(f[6]) : 0;
+                    if (id < 0) throw new IllegalArgumentException();
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    rejected++;
+                    continue;
+                }
+                if (open != null && open.continuedBy(id, at, total)) {
+                    open.lines().add(line);
+                    continue;
+                }
+                if (open != null) {
+                    chunk.add(keys.complete(open));
+                    orders++;
+                    if (chunk.size() == batchOrders) {
+                        int n = write(c, chunk, ids);
+                        inserted += n;
+                        skipped += chunk.size() - n;
+                        chunk.clear();
+                    }
+                }
+                open = new Order(id, at, total, new ArrayList<>(List.of(line)), null);
+
+                long now = System.nanoTime();
+                if (now >= nextReport) {
+                    System.out.println("Backfill: " + report(lines, orders, inserted, skipped, rejected, started));
+                    nextReport = now + PROGRESS_INTERVAL_NANOS;
+                }
+            }
+            if (open != null) {
+                chunk.add(keys.complete(open));
+                orders++;
+            }
+            if (!chunk.isEmpty()) {
+                int n = write(c, chunk, ids);
+                inserted += n;
+                skipped += chunk.size() - n;
+            }
+        } catch (IOException | SQLException e) {
+            throw new RuntimeException("Backfill failed after " + inserted + " orders: " + e.getMessage(), e);
+        }
+        return report(lines, orders, inserted, skipped, rejected, started);
+    }
+
+    /**
+     * Writes one chunk of orders, minus those already present or repeated within the chunk, and
+     * commits it.
+     *
+     * @return orders inserted
+     */
+    private static int write(PooledConnection c, List<Order> chunk, Map<String, Integer> ids) throws SQLException {
+        Set<Long> presentIds = existingIds(c, chunk);
+        Set<String> presentKeys = existingKeys(c, chunk);
+        List<Order> withId = new ArrayList<>(), withKey = new ArrayList<>();
+        for (Order o : chunk) { // adding to the stored set also drops repeats within the chunk
+            if (o.id() > 0 ? presentIds.add(o.id()) : presentKeys.add(o.key())) {
+                (o.id() > 0 ? withId : withKey).add(o);
+            }
+        }
+        if (withId.isEmpty() && withKey.isEmpty()) return 0;
+
+        List<Order> fresh = new ArrayList<>(withId.size() + withKey.size());
+        long[] orderIds = new long[withId.size() + withKey.size()];
+        if (!withId.isEmpty()) {
+            PreparedStatement ps = c.prepareCached(SQL_ORDER_WITH_ID);
+            for (Order o : withId) {
+                ps.setLong(1, o.id());
+                ps.setObject(2, o.at());
+                ps.setBigDecimal(3, o.total());
+                ps.setInt(4, o.items());
+                ps.addBatch();
+                orderIds[fresh.size()] = o.id();
+                fresh.add(o);
+            }
+            ps.executeBatch();
+        }
+        if (!withKey.isEmpty()) {
+            PreparedStatement ps = c.prepareCachedWithKeys(SQL_ORDER_WITH_KEY);
+            for (Order o : withKey) {
+                ps.setObject(1, o.at());
+                ps.setBigDecimal(2, o.total());
+                ps.setInt(3, o.items());
+                ps.setString(4, o.key());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                for (Order o : withKey) {
+                    if (!keys.next()) throw new SQLException("Missing generated id for order " + (fresh.size() + 1));
+                    orderIds[fresh.size()] = keys.getLong(1);
+                    fresh.add(o);
+                }
+            }
+        }
+
+        PreparedStatement lines = c.prepareCached(Inventory.SQL_ORDER_LINE);
+        for (int i = 0; i < orderIds.length; i++) {
+            int lineNo = 1;
+            for (Line l : fresh.get(i).lines()) {
+                Integer productId = ids.get(l.product());
+                lines.setLong(1, orderIds[i]);
+                lines.setInt(2, lineNo++);
+                if (productId == null) lines.setNull(3, Types.INTEGER);
+                else lines.setInt(3, productId);
+                lines.setString(4, l.product());
+                lines.setInt(5, l.qty());
+                lines.setBigDecimal(6, l.unitPrice());
+                lines.setBigDecimal(7, l.lineTotal());
+                lines.addBatch();
+            }
+        }
+        lines.executeBatch();
+        c.commit();
+        return fresh.size();
+    }
+
+    /**
+     * Reads which of the chunk's order ids are already stored (one primary-key range scan).
+     *
+     * @return the stored ids between the chunk's smallest and largest id
+     */
+    private static Set<Long> existingIds(PooledConnection c, List<Order> chunk) throws SQLException {
+        long from = Long.MAX_VALUE, to = 0;
+        for (Order o : chunk) {
+            if (o.id() == 0) continue;
+            from = Math.min(from, o.id());
+            to = Math.max(to, o.id());
+        }
+        Set<Long> out = new HashSet<>();
+        if (to == 0) return out;
+        PreparedStatement ps = c.prepareCached(SQL_EXISTING_IDS);
+        ps.setLong(1, from);
+        ps.setLong(2, to);
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) out.add(rs.getLong(1));
+        }
+        return out;
+    }
+
+    /**
+     * Reads the journal keys stored for the time range of the chunk's orders without an id (one
+     * index range scan on {@code created_at}).
+     *
+     * @return the stored keys
+     */
+    private static Set<String> existingKeys(PooledConnection c, List<Order> chunk) throws SQLException {
+        LocalDateTime from = null, to = null;
+        for (Order o : chunk) {
+            if (o.id() > 0) continue;
+            if (from == null || o.at().isBefore(from)) from = o.at();
+            if (to == null || o.at().isAfter(to)) to = o.at();
+        }
+        Set<String> out = new HashSet<>();
+        if (from == null) return out;
+        PreparedStatement ps = c.prepareCached(SQL_EXISTING_KEYS);
+        ps.setObject(1, from);
+        ps.setObject(2, to.plusSeconds(1));
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) out.add(rs.getString(1));
+        }
+        return out;
+    }
+
+    /**
+     * Assigns {@code journal_key}s to orders without an id. Identical orders in the same second
+     * are numbered in journal order, so each gets its own key and a rerun assigns the same ones.
+     */
+    private static final class JournalKeys {
+        private final Map<String, Integer> sameSecond = new HashMap<>();
+        private LocalDateTime second;
+
+        /** @return {@code o} with its key set if it has no id; otherwise {@code o} itself */
+        Order complete(Order o) {
+            if (o.id() > 0) return o;
+            StringBuilder sb = new StringBuilder(64 * o.lines().size());
+            sb.append(TIMESTAMP.format(o.at())).append('|').append(o.total().setScale(2, RoundingMode.HALF_UP).toPlainString());
+            for (Line l : o.lines()) {
+                sb.append('|').append(l.product()).append('|').append(l.qty())
+                        .append('|').append(l.unitPrice().setScale(2, RoundingMode.HALF_UP).toPlainString())
+                        .append('|').append(l.lineTotal().setScale(2, RoundingMode.HALF_UP).toPlainString());
+            }
+            if (!o.at().equals(second)) {
+                second = o.at();
+                sameSecond.clear();
+            }
+            int n = sameSecond.merge(sb.toString(), 1, Integer::sum);
+            if (n > 1) sb.append('#').append(n);
+            return new Order(0, o.at(), o.total(), o.lines(), sha1(sb.toString()));
+        }
+
+        private static String sha1(String s) {
+            try {
+                return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // every JRE ships SHA-1
+            }
+        }
+    }
+
+    /**
+     * Maps product names to ids. The journal replaces commas in names with spaces, so that
+     * spelling is registered too.
+     */
+    private static Map<String, Integer> productIds(PooledConnection c) throws SQLException {
+        Map<String, Integer> out = new HashMap<>();
+        try (PreparedStatement ps = c.prepareStatement(SQL_PRODUCTS)) {
+            ps.setFetchSize(Inventory.DEFAULT_FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(2);
+                    out.putIfAbsent(name, rs.getInt(1));
+                    out.putIfAbsent(name.replace(',', ' '), rs.getInt(1));
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Splits {@code timestamp,product,qty,unit_price,line_total,order_total[,order_id]}. The
+     * product is everything between the first comma and the numeric columns at the end, so a stray
+     * comma in a name from an older journal does not shift them.
+     *
+     * @param withOrderId whether the line ends with an {@code order_id} column (which may be empty)
+     * @return the six fields, then the order id if {@code withOrderId}; or {@code null} if there are fewer
+     */
+    static String[] split(String line, boolean withOrderId) {
+        int first = line.indexOf(',');
+        if (first < 0) return null;
+        int numeric = withOrderId ? 5 : 4;
+        int[] cut = new int[numeric];
+        int end = line.length();
+        for (int i = numeric - 1; i >= 0; i--) {
+            end = line.lastIndexOf(',', end - 1);
+            if (end <= first) return null;
+            cut[i] = end;
+        }
+        String[] f = new String[numeric + 2];
+        f[0] = line.substring(0, first).trim();
+        f[1] = line.substring(first + 1, cut[0]).trim();
+        for (int i = 0; i < numeric; i++) {
+            f[i + 2] = line.substring(cut[i] + 1, i + 1 < numeric ? cut[i + 1] : line.length()).trim();
+        }
+        return f;
+    }
+
+    private static BackfillReport report(long lines, long orders, long inserted, long skipped, long rejected,
+                                         long startedNanos) {
+        return new BackfillReport(lines, orders, inserted, skipped, rejected, (System.nanoTime() - startedNanos) / 1_000_000);
+    }
+}
@@ -0,0 +1,347 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only CSV journal of completed orders ({@code orders.csv}), written off the caller's thread.
+ * <p>
+ * {@link #append} copies the order into a lock-free queue and returns at once with a future that
+ * completes when the order is durable on disk. A single writer thread owns one long-lived
+ * {@link FileChannel}:
+ * <ul>
+ *   <li>it drains everything queued and writes it with one {@code write} call</li>
+ *   <li>it calls {@link FileChannel#force(boolean)} once every {@code syncEveryOrders} orders or
+ *       {@code syncEveryMillis} after the oldest unsynced order, whichever comes first, and then
+ *       completes the futures of every order the fsync covered (group fsync)</li>
+ *   <li>it rotates the file to {@code orders-yyyyMMdd-HHmmss.csv} once it exceeds
+ *       {@code rotateBytes} or is older than {@code rotateMillis}; each file starts with the CSV header</li>
+ * </ul>
+ * A failed write or fsync completes the affected futures exceptionally, so callers always learn
+ * about an order that did not reach the disk.
+ * <p>
+ * Lines are {@code timestamp,product,qty,unit_price,line_total,order_total,order_id}, where
+ * {@code order_id} is the sale's row in the {@code orders} table (empty if the store keeps no
+ * order table), so every line of an order carries the same id. Journals written before the id was
+ * logged lack that column; such a file is moved aside like a rotation when the journal opens, so
+ * each file holds one format, named by its header ({@link #logsOrderId(String)}).
+ *
+ * @author Joseph Guarriello
+ */
+public class OrderJournal implements AutoCloseable {
+    /** CSV header written at the top of every journal file. */
+    static final String HEADER = "timestamp,product,qty,unit_price,line_total,order_total,order_id\n";
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter ROTATED = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    /** How long {@link #close()} waits for the final write and fsync. */
+    private static final long CLOSE_TIMEOUT_MILLIS = Long.getLong("kiosk.journal.closeMs", 5_000L);
+
+    private final Path file;
+    private final int syncEveryOrders;
+    private final long syncEveryNanos;
+    private final long rotateBytes;
+    private final long rotateMillis;
+
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    /** Cleared by {@link #close()}; read and cleared under the monitor with the enqueue. */
+    private volatile boolean running = true;
+    /** Orders appended whose future has not completed yet. */
+    private final AtomicLong outstanding = new AtomicLong();
+
+    // Writer-thread state
+    private FileChannel channel;
+    private long openedAt;
+    private ByteBuffer buf = ByteBuffer.allocate(16 * 1024);
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * One order line as logged.
+     *
+     * @param product   product name (commas are replaced, keeping the CSV parseable)
+     * @param qty       quantity
+     * @param unitCents price per unit, in cents
+     */
+    public record Line(String product, int qty, long unitCents) { }
+
+    /** A queued order and the future its caller holds. */
+    private record Pending(LocalDateTime at, List<Line> lines, long totalCents, long orderId,
+                           CompletableFuture<Void> durable) { }
+
+    /**
+     * Opens a journal tuned by {@code kiosk.journal.syncOrders} (default 32),
+     * {@code kiosk.journal.syncMs} (default 200), {@code kiosk.journal.rotateBytes} (default 64 MiB)
+     * and {@code kiosk.journal.rotateHours} (default 24).
+     *
+     * @param file journal file, e.g. {@code orders.csv}
+     * @return a running journal
+     * @throws IOException if the file cannot be opened
+     */
+    public static OrderJournal open(Path file) throws IOException {
+        return new OrderJournal(file,
+                Integer.getInteger("kiosk.journal.syncOrders", 32),
+                Long.getLong("kiosk.journal.syncMs", 200L),
+                Long.getLong("kiosk.journal.rotateBytes", 64L << 20),
+                TimeUnit.HOURS.toMillis(Long.getLong("kiosk.journal.rotateHours", 24L)));
+    }
+
+    /**
+     * Opens the journal file and starts the writer thread.
+     *
+     * @param file            journal file
+     * @param syncEveryOrders fsync after this many unsynced orders (&gt; 0)
+     * @param syncEveryMillis fsync at most this long after an order is written
+     * @param rotateBytes     rotate once the file is this large; {@code <= 0} disables size rotation
+     * @param rotateMillis    rotate once the file is this old; {@code <= 0} disables time rotation
+     * @throws IOException if the file cannot be opened
+     */
+    public OrderJournal(Path file, int syncEveryOrders, long syncEveryMillis, long rotateBytes, long rotateMillis)
+            throws IOException {
+        if (syncEveryOrders <= 0) throw new IllegalArgumentException("syncEveryOrders must be positive");
+        this.file = file;
+        this.syncEveryOrders = syncEveryOrders;
+        this.syncEveryNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, syncEveryMillis));
+        this.rotateBytes = rotateBytes;
+        this.rotateMillis = rotateMillis;
+        openChannel();
+        writer = new Thread(this::run, "order-journal");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "order-journal-close"));
+    }
+
+    /**
+     * Queues an order. Never blocks on disk.
+     *
+     * @param lines      products and quantities sold
+     * @param totalCents order total, in cents
+     * @param orderId    the order's id in the {@code orders} table ({@link SaleResult#orderId()}),
+     *                   or 0 if it has none
+     * @return completes once the order has been fsynced, or exceptionally if it could not be written
+     */
+    public CompletableFuture<Void> append(Map<Product, Integer> lines, long totalCents, long orderId) {
+        List<Line> copy = new ArrayList<>(lines.size());
+        lines.forEach((p, q) -> copy.add(new Line(p.getName(), q, p.getPriceCents())));
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        Pending order = new Pending(LocalDateTime.now(), copy, totalCents, orderId, durable);
+        synchronized (this) { // so close() cannot stop the writer between the check and the enqueue
+            if (running) {
+                outstanding.incrementAndGet();
+                queue.add(order);
+                LockSupport.unpark(writer);
+                return durable;
+            }
+        }
+        durable.completeExceptionally(new IllegalStateException("Order journal is closed"));
+        return durable;
+    }
+
+    /**
+     * Writes and fsyncs everything queued, then stops the writer thread. Waits up to
+     * {@code kiosk.journal.closeMs} (default 5000) and reports any orders still not on disk then.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!running) return;
+            running = false;
+        }
+        LockSupport.unpark(writer);
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long left = outstanding.get();
+        if (left > 0) System.out.println("Order journal closed with " + left + " order(s) not yet synced to disk");
+    }
+
+    // ---------- Writer thread ----------
+
+    private void run() {
+        List<Pending> unsynced = new ArrayList<>();
+        long oldestUnsynced = 0;
+        while (true) {
+            boolean stopping = !running;
+            List<Pending> batch = drain();
+            if (!batch.isEmpty()) {
+                if (write(batch)) {
+                    if (unsynced.isEmpty()) oldestUnsynced = System.nanoTime();
+                    unsynced.addAll(batch);
+                }
+            }
+            boolean due = !unsynced.isEmpty() && (stopping || unsynced.size() >= syncEveryOrders
+                    || System.nanoTime() - oldestUnsynced >= syncEveryNanos);
+            if (due) {
+                sync(unsynced);
+                unsynced.clear();
+            }
+            if (stopping && queue.isEmpty()) break;
+            if (queue.isEmpty()) {
+                if (unsynced.isEmpty()) LockSupport.park(this);
+                else LockSupport.parkNanos(this, Math.max(1, oldestUnsynced + syncEveryNanos - System.nanoTime()));
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Error closing order journal: " + e.getMessage());
+        }
+    }
+
+    private List<Pending> drain() {
+        List<Pending> batch = new ArrayList<>();
+        for (Pending p = queue.poll(); p != null; p = queue.poll()) batch.add(p);
+        return batch;
+    }
+
+    /**
+     * Encodes and writes a batch with a single channel write, rotating first if due.
+     *
+     * @return {@code true} if written; otherwise every future in the batch has failed
+     */
+    private boolean write(List<Pending> batch) {
+        try {
+            rotateIfDue();
+            buf.clear();
+            for (Pending p : batch) encode(p);
+            buf.flip();
+            while (buf.hasRemaining()) channel.write(buf);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            fail(batch, e);
+            reopenQuietly();
+            return false;
+        }
+    }
+
+    private void sync(List<Pending> unsynced) {
+        try {
+            channel.force(false);
+            for (Pending p : unsynced) p.durable().complete(null);
+            outstanding.addAndGet(-unsynced.size());
+        } catch (IOException | RuntimeException e) {
+            fail(unsynced, e);
+            reopenQuietly();
+        }
+    }
+
+    private void fail(List<Pending> orders, Exception e) {
+        System.out.println("Order journal write failed (" + orders.size() + " order(s)): " + e.getMessage());
+        for (Pending p : orders) p.durable().completeExceptionally(e);
+        outstanding.addAndGet(-orders.size());
+    }
+
+    // ---------- Encoding ----------
+
+    /**
+     * Appends one order's CSV lines to {@link #buf}, growing it if needed.
+     */
+    private void encode(Pending p) {
+        String ts = TIMESTAMP.format(p.at());
+        for (Line l : p.lines()) {
+            line.setLength(0);
+            line.append(ts).append(',').append(l.product().replace(',', ' ')).append(',').append(l.qty()).append(',');
+            Money.appendPlain(line, l.unitCents());
+            line.append(',');
+            Money.appendPlain(line, l.unitCents() * l.qty());
+            line.append(',');
+            Money.appendPlain(line, p.totalCents());
+            line.append(',');
+            if (p.orderId() > 0) line.append(p.orderId());
+            line.append('\n');
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+            if (buf.remaining() < bytes.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes.length));
+                buf.flip();
+                bigger.put(buf);
+                buf = bigger;
+            }
+            buf.put(bytes);
+        }
+    }
+
+    /**
+     * @param header first line of a journal file
+     * @return {@code true} if its lines end with an {@code order_id} column
+     */
+    static boolean logsOrderId(String header) {
+        return header.strip().endsWith(",order_id");
+    }
+
+    // ---------- File management ----------
+
+    /**
+     * Opens the journal for appending, writing the header into a new file. A file in an older
+     * format (another header) is moved aside first.
+     */
+    private void openChannel() throws IOException {
+        if (Files.exists(file) && Files.size(file) > 0 && !sameHeader()) moveAside();
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (channel.size() == 0) {
+            channel.write(ByteBuffer.wrap(HEADER.getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        openedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Moves the current file aside and starts a new one when it is too large or too old.
+     * The old file is forced first, so orders still waiting for their fsync stay covered.
+     */
+    private void rotateIfDue() throws IOException {
+        boolean tooBig = rotateBytes > 0 && channel.size() >= rotateBytes;
+        boolean tooOld = rotateMillis > 0 && System.currentTimeMillis() - openedAt >= rotateMillis;
+        if (!tooBig && !tooOld) return;
+        if (channel.size() <= HEADER.length()) { openedAt = System.currentTimeMillis(); return; }
+        channel.force(false);
+        channel.close();
+        moveAside();
+        openChannel();
+    }
+
+    /** @return {@code true} if the existing file starts with {@link #HEADER} */
+    private boolean sameHeader() throws IOException {
+        byte[] header = HEADER.getBytes(StandardCharsets.UTF_8);
+        try (InputStream in = Files.newInputStream(file)) {
+            return Arrays.equals(in.readNBytes(header.length), header);
+        }
+    }
+
+    /** Renames the file to {@code orders-yyyyMMdd-HHmmss.csv} (or {@code -1}, {@code -2}, ... if taken). */
+    private void moveAside() throws IOException {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot < 0 ? name : name.substring(0, dot);
+        String ext = dot < 0 ? "" : name.substring(dot);
+        String stamp = base + "-" + ROTATED.format(LocalDateTime.now());
+        Path rotated = file.resolveSibling(stamp + ext);
+        for (int n = 1; Files.exists(rotated); n++) rotated = file.resolveSibling(stamp + "-" + n + ext);
+        Files.move(file, rotated, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void reopenQuietly() {
+        try {
+            if (channel != null) channel.close();
+            openChannel();
+        } catch (IOException e) {
+            System.out.println("Cannot reopen order journal: " + e.getMessage());
+        }
+    }
+}
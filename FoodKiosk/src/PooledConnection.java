@@ -0,0 +1,149 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A connection leased from a {@link ConnectionPool}.
+ * <p>
+ * Use it with try-with-resources exactly like a plain {@link Connection}; {@link #close()}
+ * hands the physical connection back to the pool instead of closing it. Any transaction left
+ * open by the borrower is rolled back and auto-commit is restored before reuse.
+ * <p>
+ * Hot queries should go through {@link #prepareCached(String)}, which reuses the statement
+ * from this connection's {@link StatementCache} rather than preparing it again.
+ *
+ * @author Joseph Guarriello
+ */
+public class PooledConnection implements AutoCloseable {
+    private final ConnectionPool pool;
+    private final Connection raw;
+    private final StatementCache statements;
+    private int preloadedCount;
+    private final long createdAt = System.currentTimeMillis();
+    private long lastUsedAt = createdAt;
+    private boolean leased;
+    private boolean broken;
+
+    /**
+     * @param pool       owning pool
+     * @param raw        physical driver connection
+     * @param statements statement cache bound to {@code raw}
+     */
+    PooledConnection(ConnectionPool pool, Connection raw, StatementCache statements) {
+        this.pool = pool;
+        this.raw = raw;
+        this.statements = statements;
+    }
+
+    /**
+     * @return the underlying driver connection; never close it directly
+     */
+    public Connection connection() {
+        return raw;
+    }
+
+    /**
+     * Prepares a statement on this connection. The caller closes it as usual.
+     *
+     * @param sql SQL text
+     * @return a prepared statement
+     * @throws SQLException on JDBC errors
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return raw.prepareStatement(sql);
+    }
+
+    /**
+     * Returns a cached prepared statement for {@code sql}, preparing it only on the first use
+     * on this connection. The statement belongs to the cache: do <em>not</em> close it
+     * (closing its {@code ResultSet}s is still required).
+     *
+     * @param sql SQL text
+     * @return an open prepared statement with cleared parameters
+     * @throws SQLException on JDBC errors
+     */
+    public PreparedStatement prepareCached(String sql) throws SQLException {
+        return statements.get(sql);
+    }
+
+    /**
+     * Like {@link #prepareCached(String)}, but the statement reports generated keys
+     * (including MySQL's {@code LAST_INSERT_ID(expr)} value).
+     *
+     * @param sql SQL text
+     * @return an open prepared statement with cleared parameters
+     * @throws SQLException on JDBC errors
+     */
+    public PreparedStatement prepareCachedWithKeys(String sql) throws SQLException {
+        return statements.get(sql, true);
+    }
+
+    /**
+     * @return a plain statement; the caller closes it as usual
+     * @throws SQLException on JDBC errors
+     */
+    public Statement createStatement() throws SQLException {
+        return raw.createStatement();
+    }
+
+    /** @see Connection#setAutoCommit(boolean) */
+    public void setAutoCommit(boolean autoCommit) throws SQLException { raw.setAutoCommit(autoCommit); }
+
+    /** @see Connection#commit() */
+    public void commit() throws SQLException { raw.commit(); }
+
+    /** @see Connection#rollback() */
+    public void rollback() throws SQLException { raw.rollback(); }
+
+    /**
+     * Flags the connection so it is closed rather than reused when returned
+     * (e.g. after a network error left it in an unknown state).
+     */
+    public void markBroken() {
+        broken = true;
+    }
+
+    /**
+     * Returns the connection to its pool after resetting any open transaction.
+     */
+    @Override
+    public void close() {
+        if (!leased) return;
+        leased = false;
+        lastUsedAt = System.currentTimeMillis();
+        try {
+            if (!broken && !raw.getAutoCommit()) {
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            broken = true;
+        }
+        pool.release(this, broken);
+    }
+
+    // ---------- Pool bookkeeping ----------
+
+    void lease() {
+        leased = true;
+        broken = false;
+    }
+
+    Connection raw() { return raw; }
+
+    StatementCache statements() { return statements; }
+
+    int preloadedCount() { return preloadedCount; }
+
+    void setPreloadedCount(int n) { preloadedCount = n; }
+
+    long createdAt() { return createdAt; }
+
+    long lastUsedAt() { return lastUsedAt; }
+
+    void closePhysical() {
+        statements.clear();
+        try { raw.close(); } catch (SQLException ignored) {}
+    }
+}
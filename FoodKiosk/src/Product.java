@@ -1,4 +1,5 @@
-import java.util.Objects;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 /**
  * Represents a product in the Food-Type Kiosk system.
@@ -7,22 +8,46 @@ import java.util.Objects;
  * pricing data, and simple stock/sales counters.
  * Instances are primarily read from or written to the database
  * through the {@link Inventory} class.
+ * <p>
+ * Stock and sold share one {@code long} (stock in the high 32 bits, sold in the low 32) updated
+ * by compare-and-set, so {@link #consume} and {@link #restock} are lock-free and linearizable:
+ * concurrent sales never oversell, and no reader sees units that left stock but were not yet
+ * counted as sold.
+ * <p>
+ * Name, category and price are immutable. A catalog edit makes a new instance with
+ * {@link #withCatalog}, which shares the counters of the one it replaces, so sales made against
+ * either instance while a {@link CatalogSnapshot} is swapped are never lost.
  *
  * @author Joseph Guarriello
  */
 public class Product {
+    private static final VarHandle PACKED;
+
+    static {
+        try {
+            PACKED = MethodHandles.lookup().findVarHandle(Counters.class, "packed", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** Stock (high 32 bits) and cumulative sold (low 32 bits); shared across catalog edits. */
+    private static final class Counters {
+        volatile long packed;
+
+        Counters(long packed) { this.packed = packed; }
+    }
+
     /** Unique numeric identifier for the product. */
     private final int id;
     /** Display name of the product. */
     private final String name;
     /** Product category, e.g., "Boba Drink", "Dessert". */
     private final String category;
-    /** Price in U.S. dollars. */
-    private final double price;
-    /** Current quantity in stock. */
-    private int stock;
-    /** Cumulative quantity sold. */
-    private int sold;
+    /** Price in U.S. cents. */
+    private final long priceCents;
+    /** Current quantity in stock and cumulative quantity sold. */
+    private final Counters counters;
 
     /**
      * Constructs a product with the specified properties.
@@ -30,19 +55,81 @@ public class Product {
      * @param id        unique identifier
      * @param name      product name
      * @param category  category name
-     * @param price     product price (must be non-negative)
+     * @param price     product price in dollars, rounded to the cent (must be non-negative)
      * @param stock     current stock count (must be non-negative)
      * @throws IllegalArgumentException if {@code price < 0} or {@code stock < 0}
      */
     public Product(int id, String name, String category, double price, int stock) {
-        if (price < 0 || stock < 0)
+        this(id, name, category, Money.ofDollars(price), stock, 0, true);
+    }
+
+    /**
+     * Constructs a product with known sales history (e.g. when loading a row from the database).
+     *
+     * @param id        unique identifier
+     * @param name      product name
+     * @param category  category name
+     * @param price     product price (must be non-negative)
+     * @param stock     current stock count (must be non-negative)
+     * @param sold      cumulative units sold (must be non-negative)
+     * @throws IllegalArgumentException if any of {@code price}, {@code stock} or {@code sold} is negative
+     */
+    public Product(int id, String name, String category, double price, int stock, int sold) {
+        this(id, name, category, Money.ofDollars(price), stock, sold, true);
+    }
+
+    /**
+     * Constructs a product priced in cents, the form every store and mapper reads prices in.
+     *
+     * @param id         unique identifier
+     * @param name       product name
+     * @param category   category name
+     * @param priceCents product price in cents (must be non-negative)
+     * @param stock      current stock count (must be non-negative)
+     * @param sold       cumulative units sold (must be non-negative)
+     * @return the product
+     * @throws IllegalArgumentException if any of {@code priceCents}, {@code stock} or {@code sold} is negative
+     */
+    public static Product ofCents(int id, String name, String category, long priceCents, int stock, int sold) {
+        return new Product(id, name, category, priceCents, stock, sold, true);
+    }
+
+    /** Common constructor; the flag only keeps the signature apart from the public ones. */
+    private Product(int id, String name, String category, long priceCents, int stock, int sold, boolean cents) {
+        if (priceCents < 0 || stock < 0)
             throw new IllegalArgumentException("Price/stock cannot be negative");
+        if (sold < 0)
+            throw new IllegalArgumentException("Sold cannot be negative");
         this.id = id;
         this.name = name;
         this.category = category;
-        this.price = price;
-        this.stock = stock;
-        this.sold = 0;
+        this.priceCents = priceCents;
+        this.counters = new Counters(pack(stock, sold));
+    }
+
+    /** Catalog edit of {@code base}: new descriptive fields, same counters. */
+    private Product(Product base, String name, String category, long priceCents) {
+        if (priceCents < 0)
+            throw new IllegalArgumentException("Price/stock cannot be negative");
+        this.id = base.id;
+        this.name = name;
+        this.category = category;
+        this.priceCents = priceCents;
+        this.counters = base.counters;
+    }
+
+    /**
+     * Returns this product with a new name, category and price. The copy shares this product's
+     * stock and sold counters: a sale through either instance is seen by both.
+     *
+     * @param name       new name
+     * @param category   new category
+     * @param priceCents new price in cents (must be non-negative)
+     * @return the edited product
+     * @throws IllegalArgumentException if {@code priceCents} is negative
+     */
+    public Product withCatalog(String name, String category, long priceCents) {
+        return new Product(this, name, category, priceCents);
     }
 
     /** @return product ID */
@@ -54,14 +141,29 @@ public class Product {
     /** @return product category */
     public String getCategory() { return category; }
 
-    /** @return product price */
-    public double getPrice() { return price; }
+    /** @return product price in dollars (for display; sums use {@link #getPriceCents()}) */
+    public double getPrice() { return Money.toDollars(priceCents); }
+
+    /** @return product price in cents */
+    public long getPriceCents() { return priceCents; }
 
     /** @return number of items currently in stock */
-    public int getStock() { return stock; }
+    public int getStock() { return stockOf(counters.packed); }
 
     /** @return total number of units sold (local counter) */
-    public int getSold() { return sold; }
+    public int getSold() { return soldOf(counters.packed); }
+
+    /**
+     * Returns a detached copy with its own counters. Stock and sold are taken in one read, so
+     * the copy holds a pair that existed together; use it wherever both are recorded (a delta
+     * row, a saved file), rather than calling {@link #getStock()} and {@link #getSold()} apart.
+     *
+     * @return a copy whose later sales and restocks do not affect this product
+     */
+    public Product copy() {
+        long c = counters.packed;
+        return new Product(id, name, category, priceCents, stockOf(c), soldOf(c), true);
+    }
 
     // -------------------- Local Stock Operations --------------------
 
@@ -75,7 +177,11 @@ public class Product {
     public void restock(int qty) {
         if (qty <= 0)
             throw new IllegalArgumentException("Restock must be positive");
-        stock += qty;
+        for (long c = counters.packed; ; c = counters.packed) {
+            if (stockOf(c) > Integer.MAX_VALUE - qty)
+                throw new IllegalStateException("Stock would overflow");
+            if (PACKED.compareAndSet(counters, c, pack(stockOf(c) + qty, soldOf(c)))) return;
+        }
     }
 
     /**
@@ -87,12 +193,52 @@ public class Product {
      * @throws IllegalStateException    if {@code qty > stock}
      */
     public void consume(int qty) {
+        if (!tryConsume(qty))
+            throw new IllegalStateException("Not enough stock");
+    }
+
+    /**
+     * Decreases stock and increments sold count if enough stock is left.
+     *
+     * @param qty amount sold (must be positive)
+     * @return {@code false} (and nothing changed) if {@code qty > stock}
+     * @throws IllegalArgumentException if {@code qty <= 0}
+     * @throws IllegalStateException    if the sold counter would overflow
+     */
+    public boolean tryConsume(int qty) {
         if (qty <= 0)
             throw new IllegalArgumentException("Quantity must be positive");
-        if (qty > stock)
-            throw new IllegalStateException("Not enough stock");
-        stock -= qty;
-        sold += qty;
+        for (long c = counters.packed; ; c = counters.packed) {
+            int stock = stockOf(c), sold = soldOf(c);
+            if (qty > stock) return false;
+            if (sold > Integer.MAX_VALUE - qty)
+                throw new IllegalStateException("Sold counter would overflow");
+            if (PACKED.compareAndSet(counters, c, pack(stock - qty, sold + qty))) return true;
+        }
+    }
+
+    /**
+     * Undoes a {@link #tryConsume} of the same quantity (a multi-line sale that failed on a
+     * later line): the units go back to stock and leave the sold count.
+     *
+     * @param qty amount previously consumed
+     */
+    void unconsume(int qty) {
+        for (long c = counters.packed; ; c = counters.packed) {
+            if (PACKED.compareAndSet(counters, c, pack(stockOf(c) + qty, soldOf(c) - qty))) return;
+        }
+    }
+
+    private static long pack(int stock, int sold) {
+        return (long) stock << 32 | (sold & 0xFFFF_FFFFL);
+    }
+
+    private static int stockOf(long counters) {
+        return (int) (counters >>> 32);
+    }
+
+    private static int soldOf(long counters) {
+        return (int) counters;
     }
 
     // -------------------- Equality / Hashing --------------------
@@ -113,6 +259,6 @@ public class Product {
     /** @return hash code based on product ID */
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return Integer.hashCode(id);
     }
 }
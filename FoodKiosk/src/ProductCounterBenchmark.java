@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Multi-threaded throughput benchmark for {@link Product}'s lock-free stock and sold counters.
+ * <p>
+ * Each thread sells one unit at a time and restocks a product when it runs dry, for a fixed time,
+ * at 1, 2, 4, ... threads up to the core count. Sales go either straight to
+ * {@link Product#tryConsume} ({@code counter}) or through {@link MemoryInventoryStore#applySale}
+ * ({@code store}), the kiosk's real path, which adds the store's change and ranking bookkeeping.
+ * Two workloads:
+ * <ul>
+ *   <li><b>hot</b>: every thread hits the same product, the worst case for compare-and-set
+ *       (all threads contend for one cache line);</li>
+ *   <li><b>uniform</b>: each sale picks a random product from a catalog, the usual kiosk mix.</li>
+ * </ul>
+ * After every run the units are counted back ({@code stock + sold} must equal what was stocked)
+ * to show no sale was lost or oversold.
+ * <p>
+ * Usage:
+ * <pre>
+ *   javac *.java
+ *   java ProductCounterBenchmark [maxThreads] [seconds] [products]
+ * </pre>
+ * Defaults: all cores, 2 seconds per point, 1024 products. Keep runs short: a product's sold
+ * counter is an {@code int}.
+ *
+ * @author Joseph Guarriello
+ */
+public class ProductCounterBenchmark {
+    /** Units a product starts with and gets on each restock. */
+    private static final int STOCK = 1_000_000;
+
+    /** Result of one run. */
+    private record Run(int threads, double opsPerSecond, boolean conserved) { }
+
+    /**
+     * Entry point.
+     *
+     * @param args optional max threads, seconds per run, and product count for the uniform mix
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+        int products = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+
+        for (boolean viaStore : new boolean[] {false, true}) { // warm-up
+            run(1, 1, 0.5, viaStore);
+            run(products, maxThreads, 0.5, viaStore);
+        }
+        for (boolean viaStore : new boolean[] {false, true}) {
+            for (int catalog : new int[] {1, products}) {
+                System.out.printf("%n%s, %s (%d product%s), %.1f s per point%n", viaStore ? "store" : "counter",
+                        catalog == 1 ? "hot" : "uniform", catalog, catalog == 1 ? "" : "s", seconds);
+                System.out.println("threads         ops/sec   speedup   units conserved");
+                double base = 0;
+                for (int t : threadCounts(maxThreads)) {
+                    Run r = run(catalog, t, seconds, viaStore);
+                    if (t == 1) base = r.opsPerSecond();
+                    System.out.printf("%7d %,15.0f %8.2fx   %s%n", t, r.opsPerSecond(), r.opsPerSecond() / base,
+                            r.conserved() ? "yes" : "NO");
+                }
+            }
+        }
+    }
+
+    /** @return 1, 2, 4, ... and {@code max} itself */
+    private static List<Integer> threadCounts(int max) {
+        List<Integer> out = new ArrayList<>();
+        for (int t = 1; t < max; t *= 2) out.add(t);
+        out.add(max);
+        return out;
+    }
+
+    /**
+     * Runs {@code threads} workers over a fresh catalog for {@code seconds}, selling through a
+     * {@link MemoryInventoryStore} if {@code viaStore}.
+     */
+    private static Run run(int catalog, int threads, double seconds, boolean viaStore) throws InterruptedException {
+        Product[] ps = new Product[catalog];
+        for (int i = 0; i < catalog; i++) ps[i] = new Product(i + 1, "Product " + i, "Bench", 1.0, STOCK);
+        MemoryInventoryStore store = new MemoryInventoryStore();
+        store.addAll(List.of(ps));
+        LongAdder ops = new LongAdder();
+        LongAdder restocked = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] stopAt = new long[1];
+
+        for (int t = 0; t < threads; t++) {
+            Thread w = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long n = 0, units = 0;
+                try {
+                    start.await();
+                    long stop = stopAt[0];
+                    while (true) {
+                        for (int i = 0; i < 1024; i++) { // check the clock every 1024 operations
+                            Product p = catalog == 1 ? ps[0] : ps[rnd.nextInt(catalog)];
+                            if (viaStore) {
+                                if (!store.applySale(Map.of(p, 1)).committed()) {
+                                    store.restock(p.getId(), STOCK);
+                                    units += STOCK;
+                                }
+                            } else if (!p.tryConsume(1)) {
+                                p.restock(STOCK);
+                                units += STOCK;
+                            }
+                        }
+                        n += 1024;
+                        if (System.nanoTime() >= stop) break;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    ops.add(n);
+                    restocked.add(units);
+                    done.countDown();
+                }
+            }, "bench-" + t);
+            w.setDaemon(true);
+            w.start();
+        }
+        long t0 = System.nanoTime();
+        stopAt[0] = t0 + (long) (seconds * 1e9);
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - t0;
+
+        long units = 0;
+        for (Product p : ps) units += (long) p.getStock() + p.getSold();
+        boolean conserved = units == (long) catalog * STOCK + restocked.sum();
+        return new Run(threads, ops.sum() / (elapsed / 1e9), conserved);
+    }
+}
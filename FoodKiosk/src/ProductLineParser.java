@@ -0,0 +1,99 @@
+/**
+ * Parses seed-file lines of the form {@code id,category,name,price,stock[,sold]}. Fields after
+ * {@code sold} are ignored, as the original importer did, so seed files with extra trailing
+ * columns still load.
+ * <p>
+ * Shared by the in-memory stores and {@link CatalogImporter}. Fields are located with a single
+ * left-to-right scan and integers are parsed in place, so a line costs no regex, no
+ * {@code String.split} array and no exception unless it is actually malformed.
+ *
+ * @author Joseph Guarriello
+ */
+public final class ProductLineParser {
+
+    private ProductLineParser() { }
+
+    /**
+     * Parses one line.
+     *
+     * @param line raw line text
+     * @return the product, or {@code null} for blank lines, {@code #} comments and the {@code id,...} header
+     * @throws IllegalArgumentException if the line is malformed; the message says why
+     */
+    public static Product parse(String line) {
+        int from = 0, to = line.length();
+        if (from < to && line.charAt(0) == '\uFEFF') from++;
+        while (from < to && Character.isWhitespace(line.charAt(from))) from++;
+        while (to > from && Character.isWhitespace(line.charAt(to - 1))) to--;
+        if (from == to || line.charAt(from) == '#') return null;
+
+        // start offsets of the first 6 fields; ends are the following comma (or the line end)
+        int[] starts = new int[7];
+        int fields = 1;
+        starts[0] = from;
+        for (int i = from; i < to && fields < 7; i++) {
+            if (line.charAt(i) == ',') starts[fields++] = i + 1;
+        }
+        if (fields < 5) throw new IllegalArgumentException("expected at least 5 fields, found " + fields);
+        if (fields == 7) fields = 6; // starts[6] already marks the end of sold; the rest is ignored
+        else starts[fields] = to + 1;
+
+        if (isHeader(line, starts[0], starts[1] - 1)) return null;
+        int id = parseInt(line, starts[0], starts[1] - 1, "id");
+        String category = text(line, starts[1], starts[2] - 1, "category");
+        String name = text(line, starts[2], starts[3] - 1, "name");
+        long price = parsePrice(line, starts[3], starts[4] - 1);
+        int stock = parseInt(line, starts[4], starts[5] - 1, "stock");
+        int sold = fields > 5 && !isBlank(line, starts[5], starts[6] - 1)
+                ? parseInt(line, starts[5], starts[6] - 1, "sold") : 0;
+        return Product.ofCents(id, name, category, price, stock, sold);
+    }
+
+    /**
+     * @return whether the first field is the literal {@code id} of a header row
+     */
+    private static boolean isHeader(String line, int from, int to) {
+        while (to > from && Character.isWhitespace(line.charAt(to - 1))) to--;
+        return to - from == 2 && line.regionMatches(true, from, "id", 0, 2);
+    }
+
+    private static boolean isBlank(String line, int from, int to) {
+        for (int i = from; i < to; i++) if (!Character.isWhitespace(line.charAt(i))) return false;
+        return true;
+    }
+
+    private static String text(String line, int from, int to, String field) {
+        String s = line.substring(from, to).trim();
+        if (s.isEmpty()) throw new IllegalArgumentException("empty " + field);
+        return s;
+    }
+
+    /**
+     * Parses a non-negative decimal int without allocating.
+     */
+    private static int parseInt(String line, int from, int to, String field) {
+        while (from < to && Character.isWhitespace(line.charAt(from))) from++;
+        while (to > from && Character.isWhitespace(line.charAt(to - 1))) to--;
+        if (from == to) throw new IllegalArgumentException("empty " + field);
+        long v = 0;
+        for (int i = from; i < to; i++) {
+            char ch = line.charAt(i);
+            if (ch < '0' || ch > '9' || (v = v * 10 + (ch - '0')) > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("bad " + field + ": " + line.substring(from, to));
+        }
+        return (int) v;
+    }
+
+    /**
+     * Parses a non-negative price to cents without allocating.
+     */
+    private static long parsePrice(String line, int from, int to) {
+        try {
+            long price = Money.parse(line, from, to);
+            if (price < 0) throw new NumberFormatException();
+            return price;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad price: " + line.substring(from, to).trim());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps {@code products} rows to {@link Product} instances.
+ * <p>
+ * Column positions are resolved once per {@link ResultSet} with {@link ResultSet#findColumn(String)}
+ * and every row is then read by index, so the driver does not repeat a name lookup for each of the
+ * six columns on every row. {@code sold} is passed to the full {@link Product} constructor instead
+ * of being poked in through reflection.
+ * <p>
+ * Usage:
+ * <pre>
+ *   ProductRowMapper m = ProductRowMapper.of(rs);
+ *   while (rs.next()) out.add(m.map(rs));
+ * </pre>
+ *
+ * @author Joseph Guarriello
+ */
+public final class ProductRowMapper {
+    private final int id;
+    private final int category;
+    private final int name;
+    private final int price;
+    private final int stock;
+    private final int sold;
+
+    private ProductRowMapper(int id, int category, int name, int price, int stock, int sold) {
+        this.id = id;
+        this.category = category;
+        this.name = name;
+        this.price = price;
+        this.stock = stock;
+        this.sold = sold;
+    }
+
+    /**
+     * Resolves column positions for a result set that selects
+     * {@code id, category, name, price, stock, sold} (in any order, extra columns allowed).
+     *
+     * @param rs result set to map
+     * @return a mapper bound to that result set's column layout
+     * @throws SQLException if a required column is missing
+     */
+    public static ProductRowMapper of(ResultSet rs) throws SQLException {
+        return new ProductRowMapper(
+                rs.findColumn("id"),
+                rs.findColumn("category"),
+                rs.findColumn("name"),
+                rs.findColumn("price"),
+                rs.findColumn("stock"),
+                rs.findColumn("sold"));
+    }
+
+    /**
+     * Maps the current row.
+     *
+     * @param rs result set positioned on a row (the one passed to {@link #of(ResultSet)})
+     * @return product for the current row
+     * @throws SQLException on JDBC access errors
+     */
+    public Product map(ResultSet rs) throws SQLException {
+        return Product.ofCents(
+                rs.getInt(id),
+                rs.getString(name),
+                rs.getString(category),
+                Money.ofDollars(rs.getDouble(price)), // exact for DECIMAL(10,2), no BigDecimal per row
+                rs.getInt(stock),
+                rs.getInt(sold));
+    }
+}
@@ -0,0 +1,112 @@
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Micro-benchmark for {@code products} row mapping: the old by-name + reflection mapper versus
+ * {@link ProductRowMapper}.
+ * <p>
+ * Rows come from an in-memory {@link ResultSet} over a synthetic 100k-row table, so the numbers
+ * isolate mapping cost from network and server time (both mappers pay the same fetch cost against
+ * a real MySQL server).
+ * <p>
+ * Usage:
+ * <pre>
+ *   javac *.java
+ *   java RowMapperBenchmark [rows] [rounds]
+ * </pre>
+ *
+ * @author Joseph Guarriello
+ */
+public class RowMapperBenchmark {
+    /** Column labels in {@code SELECT id,category,name,price,stock,sold} order. */
+    private static final Map<String, Integer> COLUMNS =
+            Map.of("id", 1, "category", 2, "name", 3, "price", 4, "stock", 5, "sold", 6);
+
+    /**
+     * Entry point.
+     *
+     * @param args optional row count (default 100000) and measured rounds (default 10)
+     * @throws SQLException never in practice (in-memory rows)
+     */
+    public static void main(String[] args) throws SQLException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Object[][] table = table(rows);
+
+        for (int i = 0; i < 5; i++) { runLegacy(table); runMapper(table); } // warm-up
+        long legacy = 0, mapper = 0, sink = 0;
+        for (int i = 0; i < rounds; i++) {
+            long t0 = System.nanoTime();
+            sink += runLegacy(table);
+            long t1 = System.nanoTime();
+            sink += runMapper(table);
+            long t2 = System.nanoTime();
+            legacy += t1 - t0;
+            mapper += t2 - t1;
+        }
+        System.out.printf("rows=%d rounds=%d (checksum %d)%n", rows, rounds, sink);
+        System.out.printf("legacy (by name + reflection): %,12.0f rows/sec%n", rows * (double) rounds / (legacy / 1e9));
+        System.out.printf("ProductRowMapper (by index):   %,12.0f rows/sec%n", rows * (double) rounds / (mapper / 1e9));
+    }
+
+    /** Maps every row the way {@code Inventory.map} used to. */
+    private static long runLegacy(Object[][] table) throws SQLException {
+        ResultSet rs = resultSet(table);
+        long sum = 0;
+        while (rs.next()) {
+            Product p = new Product(rs.getInt("id"), rs.getString("category"), rs.getString("name"),
+                    rs.getDouble("price"), rs.getInt("stock"));
+            try {
+                var f = Product.class.getDeclaredField("counters");
+                f.setAccessible(true);
+                Object counters = f.get(p);
+                var packed = counters.getClass().getDeclaredField("packed"); // stock and sold
+                packed.setAccessible(true);
+                packed.setLong(counters, (long) rs.getInt("stock") << 32 | rs.getInt("sold"));
+            } catch (Exception ignore) {}
+            sum += p.getSold();
+        }
+        return sum;
+    }
+
+    /** Maps every row with a {@link ProductRowMapper}. */
+    private static long runMapper(Object[][] table) throws SQLException {
+        ResultSet rs = resultSet(table);
+        ProductRowMapper m = ProductRowMapper.of(rs);
+        long sum = 0;
+        while (rs.next()) sum += m.map(rs).getSold();
+        return sum;
+    }
+
+    /** Builds the synthetic table. */
+    private static Object[][] table(int rows) {
+        String[] cats = {"Italian Drink", "Food", "Dessert", "Add-on", "Seasonal Special"};
+        Object[][] t = new Object[rows][];
+        for (int i = 0; i < rows; i++) {
+            t[i] = new Object[] {i + 1, cats[i % cats.length], "Product " + i, 1.0 + (i % 900) / 100.0, i % 500, i % 37};
+        }
+        return t;
+    }
+
+    /**
+     * Minimal forward-only {@link ResultSet} over {@code table}, supporting just what the mappers call.
+     * Label lookups do a map lookup like a driver's column-name index does.
+     */
+    private static ResultSet resultSet(Object[][] table) {
+        int[] row = {-1};
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                (proxy, method, a) -> switch (method.getName()) {
+                    case "next" -> ++row[0] < table.length;
+                    case "findColumn" -> COLUMNS.get((String) a[0]);
+                    case "getInt", "getString", "getDouble" -> table[row[0]][index(a[0]) - 1];
+                    case "close" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static int index(Object columnOrLabel) {
+        return columnOrLabel instanceof Integer i ? i : COLUMNS.get(((String) columnOrLabel).toLowerCase());
+    }
+}
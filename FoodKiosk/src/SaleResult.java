@@ -0,0 +1,42 @@
+import java.util.List;
+
+/**
+ * Outcome of {@link Inventory#applySale(java.util.Map)}.
+ * <p>
+ * A sale is all-or-nothing: it is either committed for every line, or rolled back and
+ * {@link #outOfStock()} lists the lines whose guarded decrement found too little stock.
+ *
+ * @param committed  {@code true} if every line was applied and the transaction committed
+ * @param outOfStock products that could not be decremented (empty when committed)
+ * @param orderId    id of the order row the sale wrote to the {@code orders} table, or 0 if it
+ *                   was not committed or the store keeps no order table
+ * @author Joseph Guarriello
+ */
+public record SaleResult(boolean committed, List<Product> outOfStock, long orderId) {
+    /** Shared result for a successful sale that recorded no order row. */
+    static final SaleResult OK = new SaleResult(true, List.of(), 0);
+
+    /**
+     * @param orderId id of the order row written with the sale
+     * @return a committed result carrying {@code orderId}
+     */
+    static SaleResult recorded(long orderId) {
+        return new SaleResult(true, List.of(), orderId);
+    }
+
+    /**
+     * @param failed products that lacked stock
+     * @return a rolled-back result listing {@code failed}
+     */
+    static SaleResult rejected(List<Product> failed) {
+        return new SaleResult(false, List.copyOf(failed), 0);
+    }
+
+    /**
+     * @param p a product from the sale
+     * @return {@code true} if that line had enough stock
+     */
+    public boolean isOk(Product p) {
+        return !outOfStock.contains(p);
+    }
+}
@@ -0,0 +1,674 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Sales reports computed from the order journal ({@code orders.csv}, its rotated files, and the
+ * journals of other kiosks).
+ * <p>
+ * A scan splits every file into chunks of {@code kiosk.analytics.chunkBytes} (default 32 MiB) and
+ * parses the chunks in parallel on {@code kiosk.analytics.workers} threads (default: available
+ * processors). Each chunk is memory-mapped and parsed straight from the mapped bytes: timestamps,
+ * quantities and money (as cents) are decoded in place and product names are interned in a
+ * per-chunk byte dictionary, so a line costs no allocation. Per-day partial results are then
+ * merged by product name.
+ * <p>
+ * Journals are append-only, so the totals of a <em>closed</em> day (before today) never change.
+ * They are cached per file together with the offset where the open days start; the next report
+ * only parses what was appended since. A report over months of history therefore pays the full
+ * scan once, and afterwards reads just today's tail.
+ * <p>
+ * Journal lines are {@code timestamp,product,qty,unit_price,line_total,order_total}, followed by
+ * {@code order_id} in files whose header names it ({@link OrderJournal#logsOrderId(String)}).
+ * Consecutive lines with the same order id form one order; lines without an id (older journals,
+ * stores without an order table) fall back to grouping consecutive lines with the same timestamp
+ * and order total. The journal has no category, so categories are looked up by product name when
+ * a report is built. A line that is not yet
+ * terminated by a newline (an order being written) is left for the next scan.
+ *
+ * @author Joseph Guarriello
+ */
+public class SalesAnalytics {
+    /** Bytes a line may extend past the end of its chunk. */
+    private static final int MAX_LINE = 64 * 1024;
+    /** Category of products not found in the catalog. */
+    static final String UNKNOWN_CATEGORY = "(unknown)";
+
+    private final int workers;
+    private final int chunkBytes;
+    /** Closed-day results per journal file. */
+    private final Map<Path, FileCache> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Sales of one product over a report's range.
+     *
+     * @param product      product name as journaled
+     * @param category     category from the catalog, or {@link #UNKNOWN_CATEGORY}
+     * @param units        units sold
+     * @param revenueCents line totals, in cents
+     */
+    public record ProductSales(String product, String category, long units, long revenueCents) { }
+
+    /**
+     * Sales over a date range.
+     *
+     * @param from              first day (inclusive)
+     * @param to                last day (inclusive)
+     * @param orders            orders placed
+     * @param lines             order lines
+     * @param units             units sold
+     * @param revenueCents      sum of line totals, in cents
+     * @param orderTotalCents   sum of order totals, in cents
+     * @param revenueByHour     line totals per hour of day (24 entries), in cents
+     * @param ordersByHour      orders per hour of day (24 entries)
+     * @param products          per-product sales, highest revenue first
+     * @param revenueByCategory revenue per category in cents, highest first
+     * @param bytesScanned      journal bytes parsed for this report (0 if fully cached)
+     * @param rejectedLines     malformed lines among those parsed
+     * @param millis            elapsed time
+     */
+    public record SalesReport(LocalDate from, LocalDate to, long orders, long lines, long units,
+                              long revenueCents, long orderTotalCents, long[] revenueByHour, long[] ordersByHour,
+                              List<ProductSales> products, Map<String, Long> revenueByCategory,
+                              long bytesScanned, long rejectedLines, long millis) {
+        /** @return average order value in cents (0 without orders) */
+        public long averageOrderCents() {
+            return orders == 0 ? 0 : Math.round((double) orderTotalCents / orders);
+        }
+
+        /** @return average units per order (0 without orders) */
+        public double basketSize() {
+            return orders == 0 ? 0 : (double) units / orders;
+        }
+    }
+
+    /**
+     * Creates an engine sized by {@code kiosk.analytics.workers} and {@code kiosk.analytics.chunkBytes}.
+     */
+    public SalesAnalytics() {
+        this(Integer.getInteger("kiosk.analytics.workers", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("kiosk.analytics.chunkBytes", 32 << 20));
+    }
+
+    /**
+     * @param workers    parse threads (&gt; 0)
+     * @param chunkBytes bytes per parse task (&gt; 0)
+     */
+    public SalesAnalytics(int workers, int chunkBytes) {
+        if (workers <= 0 || chunkBytes <= 0) throw new IllegalArgumentException("workers and chunkBytes must be positive");
+        this.workers = workers;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Lists a journal and its rotated files ({@code orders.csv}, {@code orders-20250101-000000.csv}, ...).
+     *
+     * @param journal live journal file
+     * @return existing files, oldest rotation first, the live file last
+     */
+    public static List<Path> journalFiles(Path journal) {
+        String name = journal.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot < 0 ? name : name.substring(0, dot);
+        String ext = dot < 0 ? "" : name.substring(dot);
+        Path dir = journal.toAbsolutePath().getParent();
+        List<Path> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, base + "-*" + ext)) {
+            ds.forEach(out::add);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot list journals in " + dir + ": " + e.getMessage(), e);
+        }
+        out.sort(null);
+        if (Files.exists(journal)) out.add(journal.toAbsolutePath());
+        return out;
+    }
+
+    /**
+     * Builds a category lookup from catalog products. Names are also registered with commas
+     * replaced by spaces, the way the journal writes them.
+     *
+     * @param products catalog
+     * @return product name to category
+     */
+    public static Function<String, String> categories(Collection<Product> products) {
+        Map<String, String> byName = new HashMap<>();
+        for (Product p : products) {
+            byName.putIfAbsent(p.getName(), p.getCategory());
+            byName.putIfAbsent(p.getName().replace(',', ' '), p.getCategory());
+        }
+        return name -> byName.getOrDefault(name, UNKNOWN_CATEGORY);
+    }
+
+    /**
+     * Computes sales for {@code [from, to]} over the given journals.
+     *
+     * @param files      journal files (one kiosk's rotations, several kiosks' logs, ...)
+     * @param from       first day (inclusive)
+     * @param to         last day (inclusive)
+     * @param categoryOf product name to category
+     * @return the report
+     * @throws RuntimeException if a file cannot be read
+     */
+    public SalesReport report(List<Path> files, LocalDate from, LocalDate to, Function<String, String> categoryOf) {
+        long started = System.nanoTime();
+        int today = (int) LocalDate.now().toEpochDay();
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "analytics-parse");
+            t.setDaemon(true);
+            return t;
+        });
+        DayStats total = new DayStats();
+        long[] scanned = new long[2]; // bytes, rejected lines
+        try {
+            // Plan and submit every chunk of every file first, so all files parse in parallel
+            List<FileScan> scans = new ArrayList<>(files.size());
+            for (Path f : files) scans.add(submit(f.toAbsolutePath(), today, pool));
+            long lo = from.toEpochDay(), hi = to.toEpochDay();
+            for (FileScan s : scans) {
+                scanned[0] += s.bytes();
+                for (Map.Entry<Integer, DayStats> e : merge(s, scanned).entrySet()) {
+                    if (e.getKey() >= lo && e.getKey() <= hi) total.add(e.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read order journal: " + e.getMessage(), e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return total.toReport(from, to, categoryOf, scanned[0], scanned[1], (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /** Drops every cached day (e.g. after a journal was edited by hand). */
+    public void invalidate() {
+        cache.clear();
+    }
+
+    // ---------- Scanning ----------
+
+    /** One file's pending chunk parses and the cache entry they extend. */
+    private record FileScan(Path file, Object fileKey, FileCache cached, long start, long size,
+                            List<Future<Partial>> chunks) {
+        long bytes() {
+            return size - start;
+        }
+    }
+
+    /**
+     * Closed days of one file.
+     *
+     * @param fileKey    identity of the file the days came from (so a rotated-and-recreated
+     *                   journal is not mistaken for the old one)
+     * @param closedUpTo offset of the first byte not covered by {@code days}
+     * @param lastKey    order key of the last line before {@code closedUpTo}, or {@code null}
+     * @param days       epoch day to totals; days before the day the entry was made
+     */
+    private record FileCache(Object fileKey, long closedUpTo, OrderKey lastKey, Map<Integer, DayStats> days) { }
+
+    /** Identity of an order: its id, or (when it has none, {@code orderId == 0}) its second and total. */
+    private record OrderKey(long second, long totalCents, long orderId) {
+        /** @return {@code true} if a line with these fields starts a different order */
+        boolean isFollowedByNew(long nextSecond, long nextTotal, long nextOrderId) {
+            if (orderId > 0 || nextOrderId > 0) return orderId != nextOrderId;
+            return second != nextSecond || totalCents != nextTotal;
+        }
+    }
+
+    /** @return the first line of a journal file (empty if it has none) */
+    private static String header(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(256);
+            int nl = 0;
+            while (nl < head.length && head[nl] != '\n') nl++;
+            return new String(head, 0, nl, StandardCharsets.UTF_8);
+        }
+    }
+
+    private FileScan submit(Path file, int today, ExecutorService pool) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        Object key = attrs.fileKey() != null ? attrs.fileKey() : attrs.creationTime();
+        long size = attrs.size();
+        FileCache cached = cache.get(file);
+        if (cached != null && (!Objects.equals(cached.fileKey(), key) || size < cached.closedUpTo())) cached = null;
+        long start = cached == null ? 0 : cached.closedUpTo();
+        boolean withOrderId = OrderJournal.logsOrderId(header(file));
+        List<Future<Partial>> chunks = new ArrayList<>();
+        for (long s = start; s < size; s += chunkBytes) {
+            long chunkStart = s, chunkEnd = Math.min(size, s + chunkBytes);
+            long regionStart = start;
+            chunks.add(pool.submit(() -> parseChunk(file, regionStart, chunkStart, chunkEnd, size, today, withOrderId)));
+        }
+        return new FileScan(file, key, cached, start, size, chunks);
+    }
+
+    /**
+     * Merges one file's chunks in file order, updates its cache entry, and returns every day's
+     * totals (cached closed days plus what was just parsed).
+     */
+    private Map<Integer, DayStats> merge(FileScan scan, long[] scanned) throws IOException {
+        Map<Integer, DayStats> closed = new HashMap<>();
+        if (scan.cached() != null) scan.cached().days().forEach((d, s) -> closed.put(d, s.copy()));
+        Map<Integer, DayStats> open = new HashMap<>();
+
+        OrderKey prevLast = scan.cached() == null ? null : scan.cached().lastKey();
+        long closedUpTo = scan.start();
+        OrderKey closedLast = prevLast;
+        boolean sawOpen = false;
+        for (Future<Partial> f : scan.chunks()) {
+            Partial p = await(f);
+            scanned[1] += p.rejected;
+            // An order split across two chunks was counted by both; uncount the second
+            if (p.first != null && p.first.equals(prevLast)) p.uncountFirstOrder();
+            if (p.last != null) prevLast = p.last;
+
+            p.addTo(sawOpen ? open : closed, open);
+            if (!sawOpen) {
+                if (p.firstOpenOffset >= 0) {
+                    sawOpen = true;
+                    closedUpTo = p.firstOpenOffset;
+                    closedLast = null; // the next line starts a new day, hence a new order
+                } else if (p.endOffset >= 0) {
+                    closedUpTo = p.endOffset;
+                    closedLast = p.last;
+                }
+            }
+        }
+        cache.put(scan.file(), new FileCache(scan.fileKey(), closedUpTo, closedLast, closed));
+
+        Map<Integer, DayStats> all = new HashMap<>();
+        closed.forEach((d, s) -> all.put(d, s.copy()));
+        open.forEach((d, s) -> all.merge(d, s, DayStats::add));
+        return all;
+    }
+
+    private static Partial await(Future<Partial> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Report interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Parses the lines that start in {@code [start, end)}. Unless the chunk begins the region
+     * being scanned, the partial line at its start belongs to the previous chunk and is skipped.
+     */
+    private static Partial parseChunk(Path file, long regionStart, long start, long end, long size, int today,
+                                      boolean withOrderId) throws IOException {
+        long mapFrom = start > regionStart ? start - 1 : start;
+        long mapTo = Math.min(size, end + MAX_LINE);
+        MappedByteBuffer b;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            b = ch.map(FileChannel.MapMode.READ_ONLY, mapFrom, mapTo - mapFrom);
+        }
+        Partial out = new Partial(today, withOrderId);
+        int lim = b.limit();
+        int pos = (int) (start - mapFrom);
+        if (start > regionStart) {
+            int p = pos - 1;
+            while (p < lim && b.get(p) != '\n') p++;
+            pos = p + 1;
+        }
+        int stop = (int) (end - mapFrom);
+        while (pos < stop) {
+            int nl = pos;
+            while (nl < lim && b.get(nl) != '\n') nl++;
+            if (nl == lim) {
+                if (mapTo < size) out.rejected++; // longer than MAX_LINE
+                break;                            // else: not yet terminated, left for the next scan
+            }
+            int to = nl > pos && b.get(nl - 1) == '\r' ? nl - 1 : nl;
+            out.line(b, pos, to, mapFrom + pos);
+            out.endOffset = mapFrom + nl + 1;
+            pos = nl + 1;
+        }
+        return out;
+    }
+
+    // ---------- Per-chunk parsing ----------
+
+    /**
+     * Totals of one chunk, split into closed days (lines before the first line of today or later)
+     * and open days (that line and everything after it).
+     */
+    private static final class Partial {
+        final int today;
+        final boolean withOrderId;
+        final NameDictionary names = new NameDictionary();
+        final Map<Integer, DayAcc> closed = new HashMap<>();
+        final Map<Integer, DayAcc> open = new HashMap<>();
+        OrderKey first, last;
+        int firstDay, firstHour;
+        boolean firstOpen;
+        long firstOpenOffset = -1;
+        long endOffset = -1;
+        long rejected;
+
+        private OrderKey prev;
+        private int accDay = Integer.MIN_VALUE;
+        private boolean accOpen;
+        private DayAcc acc;
+
+        Partial(int today, boolean withOrderId) {
+            this.today = today;
+            this.withOrderId = withOrderId;
+        }
+
+        /** Parses one line {@code [from, to)} starting at file offset {@code offset}. */
+        void line(MappedByteBuffer b, int from, int to, long offset) {
+            if (to - from < 30 || !isDigit(b.get(from))) {
+                if (to > from && b.get(from) != 't') rejected++; // blank lines and the header are fine
+                return;
+            }
+            // yyyy-MM-dd HH:mm:ss,
+            int y = digits(b, from, 4), mo = digits(b, from + 5, 2), d = digits(b, from + 8, 2);
+            int h = digits(b, from + 11, 2), mi = digits(b, from + 14, 2), s = digits(b, from + 17, 2);
+            if (y < 0 || mo < 1 || mo > 12 || d < 1 || d > 31 || h < 0 || h > 23 || mi < 0 || s < 0
+                    || b.get(from + 19) != ',') {
+                rejected++;
+                return;
+            }
+            long orderId = 0;
+            if (withOrderId) {
+                int cI = lastComma(b, from + 19, to);
+                if (cI + 1 < to) orderId = integer(b, cI + 1, to); // empty for stores without an order table
+                if (orderId == Long.MIN_VALUE) { rejected++; return; }
+                to = cI;
+            }
+            // product may contain commas in old journals: the numbers are the last four fields
+            int cT = lastComma(b, from + 19, to);
+            int cL = lastComma(b, from + 19, cT);
+            int cU = lastComma(b, from + 19, cL);
+            int cQ = lastComma(b, from + 19, cU);
+            if (cQ <= from + 20) { rejected++; return; }
+            long qty = integer(b, cQ + 1, cU);
+            long unit = cents(b, cU + 1, cL);
+            long lineCents = cents(b, cL + 1, cT);
+            long total = cents(b, cT + 1, to);
+            if (qty == Long.MIN_VALUE || unit == Long.MIN_VALUE || lineCents == Long.MIN_VALUE || total == Long.MIN_VALUE) {
+                rejected++;
+                return;
+            }
+
+            int day = epochDay(y, mo, d);
+            long second = day * 86_400L + h * 3600L + mi * 60L + s;
+            if (day >= today && firstOpenOffset < 0) firstOpenOffset = offset;
+            DayAcc a = acc(day);
+
+            boolean newOrder = prev == null || prev.isFollowedByNew(second, total, orderId);
+            if (newOrder) {
+                a.orders++;
+                a.orderTotal += total;
+                a.ordersByHour[h]++;
+            }
+            a.lines++;
+            a.units += qty;
+            a.revenue += lineCents;
+            a.revenueByHour[h] += lineCents;
+            a.product(names.code(b, from + 20, cQ), qty, lineCents);
+
+            if (newOrder) prev = new OrderKey(second, total, orderId);
+            if (first == null) {
+                first = prev;
+                firstDay = day;
+                firstHour = h;
+                firstOpen = firstOpenOffset >= 0;
+            }
+            if (newOrder) last = prev;
+        }
+
+        /** Accumulator for a day; lines after the first open line go to {@link #open}. */
+        private DayAcc acc(int day) {
+            boolean isOpen = firstOpenOffset >= 0;
+            if (day != accDay || isOpen != accOpen) {
+                acc = (isOpen ? open : closed).computeIfAbsent(day, k -> new DayAcc());
+                accDay = day;
+                accOpen = isOpen;
+            }
+            return acc;
+        }
+
+        /** Removes the first line's order, which the previous chunk already counted. */
+        void uncountFirstOrder() {
+            DayAcc a = (firstOpen ? open : closed).get(firstDay);
+            a.orders--;
+            a.orderTotal -= first.totalCents();
+            a.ordersByHour[firstHour]--;
+        }
+
+        /** Adds this chunk's totals by product name. */
+        void addTo(Map<Integer, DayStats> closedOut, Map<Integer, DayStats> openOut) {
+            String[] n = names.names();
+            closed.forEach((d, a) -> closedOut.computeIfAbsent(d, k -> new DayStats()).add(a, n));
+            open.forEach((d, a) -> openOut.computeIfAbsent(d, k -> new DayStats()).add(a, n));
+        }
+    }
+
+    /** One day's totals inside a chunk; products by chunk-local dictionary code. */
+    private static final class DayAcc {
+        long orders, lines, units, revenue, orderTotal;
+        final long[] revenueByHour = new long[24];
+        final long[] ordersByHour = new long[24];
+        long[] productUnits = new long[64];
+        long[] productCents = new long[64];
+
+        void product(int code, long qty, long cents) {
+            if (code >= productUnits.length) {
+                int n = Math.max(code + 1, productUnits.length * 2);
+                productUnits = Arrays.copyOf(productUnits, n);
+                productCents = Arrays.copyOf(productCents, n);
+            }
+            productUnits[code] += qty;
+            productCents[code] += cents;
+        }
+    }
+
+    /**
+     * Open-addressing dictionary of product names read straight from the mapped bytes; a name is
+     * copied out only the first time the chunk sees it.
+     */
+    private static final class NameDictionary {
+        private byte[][] keys = new byte[16][];
+        private int[] hashes = new int[16];
+        private int[] table = new int[64]; // code + 1, 0 = empty
+        private int size;
+
+        int code(MappedByteBuffer b, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) hash = 31 * hash + b.get(i);
+            int mask = table.length - 1;
+            for (int slot = (hash ^ (hash >>> 16)) & mask; ; slot = (slot + 1) & mask) {
+                int c = table[slot] - 1;
+                if (c < 0) return insert(b, from, to, hash, slot);
+                if (hashes[c] == hash && equal(keys[c], b, from, to)) return c;
+            }
+        }
+
+        private int insert(MappedByteBuffer b, int from, int to, int hash, int slot) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            byte[] k = new byte[to - from];
+            b.get(from, k);
+            keys[size] = k;
+            hashes[size] = hash;
+            table[slot] = size + 1;
+            if (++size * 2 > table.length) rehash();
+            return size - 1;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int c = 0; c < size; c++) {
+                int slot = (hashes[c] ^ (hashes[c] >>> 16)) & mask;
+                while (table[slot] != 0) slot = (slot + 1) & mask;
+                table[slot] = c + 1;
+            }
+        }
+
+        private static boolean equal(byte[] k, MappedByteBuffer b, int from, int to) {
+            if (k.length != to - from) return false;
+            for (int i = 0; i < k.length; i++) if (k[i] != b.get(from + i)) return false;
+            return true;
+        }
+
+        String[] names() {
+            String[] out = new String[size];
+            for (int c = 0; c < size; c++) out[c] = new String(keys[c], StandardCharsets.UTF_8);
+            return out;
+        }
+    }
+
+    // ---------- Merged totals ----------
+
+    /** Totals of one day (or a range of days), with products by name. */
+    private static final class DayStats {
+        long orders, lines, units, revenue, orderTotal;
+        final long[] revenueByHour = new long[24];
+        final long[] ordersByHour = new long[24];
+        /** Name to {units, cents}. */
+        final Map<String, long[]> products = new HashMap<>();
+
+        void add(DayAcc a, String[] names) {
+            orders += a.orders; lines += a.lines; units += a.units; revenue += a.revenue; orderTotal += a.orderTotal;
+            for (int h = 0; h < 24; h++) { revenueByHour[h] += a.revenueByHour[h]; ordersByHour[h] += a.ordersByHour[h]; }
+            for (int c = 0; c < names.length && c < a.productUnits.length; c++) {
+                if (a.productUnits[c] == 0 && a.productCents[c] == 0) continue;
+                long[] t = products.computeIfAbsent(names[c], k -> new long[2]);
+                t[0] += a.productUnits[c];
+                t[1] += a.productCents[c];
+            }
+        }
+
+        DayStats add(DayStats o) {
+            orders += o.orders; lines += o.lines; units += o.units; revenue += o.revenue; orderTotal += o.orderTotal;
+            for (int h = 0; h < 24; h++) { revenueByHour[h] += o.revenueByHour[h]; ordersByHour[h] += o.ordersByHour[h]; }
+            o.products.forEach((n, t) -> {
+                long[] mine = products.computeIfAbsent(n, k -> new long[2]);
+                mine[0] += t[0];
+                mine[1] += t[1];
+            });
+            return this;
+        }
+
+        DayStats copy() {
+            return new DayStats().add(this);
+        }
+
+        SalesReport toReport(LocalDate from, LocalDate to, Function<String, String> categoryOf,
+                             long scanned, long rejected, long millis) {
+            List<ProductSales> ps = new ArrayList<>(products.size());
+            Map<String, Long> byCategory = new HashMap<>();
+            products.forEach((n, t) -> {
+                String cat = categoryOf.apply(n);
+                ps.add(new ProductSales(n, cat, t[0], t[1]));
+                byCategory.merge(cat, t[1], Long::sum);
+            });
+            ps.sort((a, b) -> a.revenueCents() != b.revenueCents()
+                    ? Long.compare(b.revenueCents(), a.revenueCents()) : a.product().compareTo(b.product()));
+            Map<String, Long> sortedCategories = new LinkedHashMap<>();
+            byCategory.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .forEach(e -> sortedCategories.put(e.getKey(), e.getValue()));
+            return new SalesReport(from, to, orders, lines, units, revenue, orderTotal,
+                    revenueByHour.clone(), ordersByHour.clone(), List.copyOf(ps), sortedCategories, scanned, rejected, millis);
+        }
+    }
+
+    // ---------- Byte-level decoding ----------
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /** @return the value of {@code n} digits at {@code at}, or -1 if one is not a digit */
+    private static int digits(MappedByteBuffer b, int at, int n) {
+        int v = 0;
+        for (int i = at; i < at + n; i++) {
+            byte c = b.get(i);
+            if (!isDigit(c)) return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    /** @return position of the last comma in {@code (floor, to)}, or {@code floor} if none */
+    private static int lastComma(MappedByteBuffer b, int floor, int to) {
+        for (int i = to - 1; i > floor; i--) if (b.get(i) == ',') return i;
+        return floor;
+    }
+
+    /** @return the integer in {@code [from, to)}, or {@link Long#MIN_VALUE} if malformed */
+    private static long integer(MappedByteBuffer b, int from, int to) {
+        if (from >= to) return Long.MIN_VALUE;
+        long v = 0;
+        for (int i = from; i < to; i++) {
+            byte c = b.get(i);
+            if (!isDigit(c)) return Long.MIN_VALUE;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    /** @return {@code [-]d+[.d[d]]} in {@code [from, to)} as cents, or {@link Long#MIN_VALUE} if malformed */
+    static long cents(MappedByteBuffer b, int from, int to) {
+        boolean neg = from < to && b.get(from) == '-';
+        if (neg) from++;
+        long whole = 0;
+        int i = from;
+        for (; i < to && b.get(i) != '.'; i++) {
+            byte c = b.get(i);
+            if (!isDigit(c)) return Long.MIN_VALUE;
+            whole = whole * 10 + (c - '0');
+        }
+        if (i == from) return Long.MIN_VALUE;
+        long frac = 0;
+        int places = 0;
+        for (i++; i < to; i++, places++) {
+            byte c = b.get(i);
+            if (!isDigit(c) || places == 2) return Long.MIN_VALUE;
+            frac = frac * 10 + (c - '0');
+        }
+        if (places == 1) frac *= 10;
+        long v = whole * 100 + frac;
+        return neg ? -v : v;
+    }
+
+    /** Days since 1970-01-01 for a proleptic Gregorian date (no allocation, unlike {@link LocalDate}). */
+    private static int epochDay(int y, int m, int d) {
+        y -= m <= 2 ? 1 : 0;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int doy = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146_097 + doe - 719_468;
+    }
+}
@@ -0,0 +1,272 @@
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned, checksummed schema migrations for the kiosk database.
+ * <p>
+ * Every schema change is a numbered {@link Migration} in {@link #MIGRATIONS}; applied ones are
+ * recorded in {@code schema_version} with a checksum of their SQL. On startup {@link #migrate}
+ * reads that table once &ndash; when the schema is current that single primary-key scan is all
+ * it does, so kiosks booting together take no DDL or metadata locks. Otherwise the pending
+ * migrations are applied in order by whichever kiosk wins a MySQL advisory lock
+ * ({@code GET_LOCK}); the others wait on the lock, re-read the table and find nothing to do.
+ * <p>
+ * Databases created before migrations existed (by the old {@code Inventory.ensureSchema} or by
+ * {@link Database}) are brought forward in place: the baseline steps are idempotent, "duplicate
+ * column" and "duplicate key" errors are ignored, and type fixes run only when needed.
+ * <p>
+ * To change the schema, append a migration with the next number. Never edit one that has
+ * shipped: its checksum would no longer match and startup fails with {@link IllegalStateException}.
+ *
+ * @author Joseph Guarriello
+ */
+public final class SchemaMigrator {
+    /** Advisory lock serializing migrations across kiosks. */
+    private static final String LOCK_NAME = "foodkiosk.schema";
+    /** Seconds to wait for another kiosk's migration. */
+    private static final int LOCK_TIMEOUT_SECONDS = Integer.getInteger("kiosk.migrate.lockTimeoutSec", 60);
+    /** ER_DUP_FIELDNAME: column already exists. */
+    private static final int ER_DUP_FIELDNAME = 1060;
+    /** ER_DUP_KEYNAME: index already exists. */
+    private static final int ER_DUP_KEYNAME = 1061;
+    /** ER_NO_SUCH_TABLE. */
+    private static final int ER_NO_SUCH_TABLE = 1146;
+
+    /**
+     * One schema change.
+     *
+     * @param version     position in the migration order (1, 2, ...)
+     * @param description what the migration does
+     * @param onlyIf      query returning a count; the statements run only if it is non-zero
+     *                    ({@code null} = always run)
+     * @param statements  SQL applied in order
+     */
+    record Migration(int version, String description, String onlyIf, List<String> statements) {
+        Migration(int version, String description, String... statements) {
+            this(version, description, null, List.of(statements));
+        }
+
+        /** @return CRC32 of everything that defines the migration */
+        long checksum() {
+            CRC32 crc = new CRC32();
+            crc.update(description.getBytes(StandardCharsets.UTF_8));
+            if (onlyIf != null) crc.update(onlyIf.getBytes(StandardCharsets.UTF_8));
+            for (String s : statements) crc.update(s.getBytes(StandardCharsets.UTF_8));
+            return crc.getValue();
+        }
+    }
+
+    /** Every migration, in order. Append only. */
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "products table", """
+                    CREATE TABLE IF NOT EXISTS products (
+                        id INT PRIMARY KEY,
+                        category VARCHAR(50) NOT NULL,
+                        name VARCHAR(100) NOT NULL,
+                        price DECIMAL(10,2) NOT NULL,
+                        stock INT NOT NULL
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"""),
+            new Migration(2, "products.sold",
+                    "ALTER TABLE products ADD COLUMN sold INT NOT NULL DEFAULT 0 AFTER stock"),
+            new Migration(3, "normalize legacy products columns (price DOUBLE, nullable columns)",
+                    """
+                    SELECT COUNT(*) FROM information_schema.COLUMNS
+                    WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'products'
+                      AND ((COLUMN_NAME = 'price' AND DATA_TYPE <> 'decimal')
+                           OR (COLUMN_NAME IN ('category','name','price','stock','sold') AND IS_NULLABLE = 'YES'))""",
+                    List.of("""
+                            UPDATE products SET category = COALESCE(category, ''), name = COALESCE(name, ''),
+                                   price = COALESCE(price, 0), stock = COALESCE(stock, 0), sold = COALESCE(sold, 0)
+                            WHERE category IS NULL OR name IS NULL OR price IS NULL OR stock IS NULL OR sold IS NULL""",
+                            """
+                            ALTER TABLE products
+                                MODIFY category VARCHAR(50) NOT NULL,
+                                MODIFY name VARCHAR(100) NOT NULL,
+                                MODIFY price DECIMAL(10,2) NOT NULL,
+                                MODIFY stock INT NOT NULL,
+                                MODIFY sold INT NOT NULL DEFAULT 0""")),
+            new Migration(4, "products.version change tracking",
+                    "ALTER TABLE products ADD COLUMN version BIGINT NOT NULL DEFAULT 0",
+                    "CREATE INDEX idx_products_version ON products (version)"),
+            new Migration(5, "catalog_seq version counter", """
+                    CREATE TABLE IF NOT EXISTS catalog_seq (
+                        id TINYINT PRIMARY KEY,
+                        v BIGINT NOT NULL
+                    ) ENGINE=InnoDB""",
+                    "INSERT IGNORE INTO catalog_seq(id, v) VALUES (1, 0)"),
+            new Migration(6, "products.fingerprint for catalog sync", """
+                    ALTER TABLE products ADD COLUMN fingerprint BIGINT
+                        AS (CAST(CONV(LEFT(SHA1(CONCAT_WS('|', category, name, price)), 15), 16, 10) AS UNSIGNED)) STORED"""),
+            new Migration(7, "product_tombstones", """
+                    CREATE TABLE IF NOT EXISTS product_tombstones (
+                        id INT PRIMARY KEY,
+                        version BIGINT NOT NULL,
+                        INDEX idx_tombstones_version (version)
+                    ) ENGINE=InnoDB"""),
+            new Migration(8, "indexes for top sellers and category browsing",
+                    "CREATE INDEX idx_products_sold ON products (sold DESC, id)",
+                    "CREATE INDEX idx_products_category ON products (category, name)"),
+            new Migration(9, "orders and order_lines", """
+                    CREATE TABLE IF NOT EXISTS orders (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        created_at DATETIME(3) NOT NULL,
+                        total DECIMAL(12,2) NOT NULL,
+                        item_count INT NOT NULL,
+                        INDEX idx_orders_created (created_at)
+                    ) ENGINE=InnoDB""", """
+                    CREATE TABLE IF NOT EXISTS order_lines (
+                        order_id BIGINT NOT NULL,
+                        line_no SMALLINT NOT NULL,
+                        product_id INT NULL,
+                        product_name VARCHAR(100) NOT NULL,
+                        qty INT NOT NULL,
+                        unit_price DECIMAL(10,2) NOT NULL,
+                        line_total DECIMAL(12,2) NOT NULL,
+                        PRIMARY KEY (order_id, line_no),
+                        INDEX idx_order_lines_product (product_id, order_id),
+                        CONSTRAINT fk_order_lines_order FOREIGN KEY (order_id) REFERENCES orders (id) ON DELETE CASCADE
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"""),
+            new Migration(10, "orders.journal_key for backfilled orders without an id", """
+                    ALTER TABLE orders ADD COLUMN journal_key CHAR(40) CHARACTER SET ascii NULL,
+                        ADD UNIQUE INDEX uk_orders_journal_key (journal_key)"""),
+            new Migration(11, "stock_holds for cart reservations", """
+                    CREATE TABLE IF NOT EXISTS stock_holds (
+                        hold_id BIGINT NOT NULL,
+                        product_id INT NOT NULL,
+                        qty INT NOT NULL,
+                        expires_at DATETIME(3) NOT NULL,
+                        PRIMARY KEY (hold_id, product_id),
+                        INDEX idx_stock_holds_product (product_id, expires_at)
+                    ) ENGINE=InnoDB""")
+    );
+
+    /** Pools whose database is known to be current; later calls return without a query. */
+    private static final Set<ConnectionPool> CURRENT = ConcurrentHashMap.newKeySet();
+
+    private SchemaMigrator() { }
+
+    /**
+     * Brings the database behind {@code pool} up to the latest migration.
+     *
+     * @param pool connection pool to the kiosk database
+     * @throws IllegalStateException if an applied migration's checksum changed, or the lock times out
+     * @throws RuntimeException      if a migration fails
+     */
+    public static void migrate(ConnectionPool pool) {
+        if (CURRENT.contains(pool)) return;
+        try (PooledConnection c = pool.borrow()) {
+            if (isCurrent(applied(c))) {
+                CURRENT.add(pool);
+                return;
+            }
+            if (!lock(c)) throw new IllegalStateException("Timed out waiting for another kiosk's schema migration");
+            try {
+                try (Statement st = c.createStatement()) {
+                    st.execute("""
+                            CREATE TABLE IF NOT EXISTS schema_version (
+                                version INT PRIMARY KEY,
+                                description VARCHAR(200) NOT NULL,
+                                checksum BIGINT NOT NULL,
+                                applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                            ) ENGINE=InnoDB""");
+                }
+                Map<Integer, Long> done = applied(c); // another kiosk may have finished meanwhile
+                for (Migration m : MIGRATIONS) {
+                    if (done.containsKey(m.version())) continue;
+                    apply(c, m);
+                    System.out.println("Applied schema migration " + m.version() + ": " + m.description());
+                }
+            } finally {
+                unlock(c);
+            }
+            CURRENT.add(pool);
+        } catch (SQLException e) {
+            throw new RuntimeException("Schema migration failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads applied migrations and checks their checksums.
+     *
+     * @return version to checksum; empty if {@code schema_version} does not exist yet
+     */
+    private static Map<Integer, Long> applied(PooledConnection c) throws SQLException {
+        Map<Integer, Long> out = new HashMap<>();
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) out.put(rs.getInt(1), rs.getLong(2));
+        } catch (SQLException e) {
+            if (e.getErrorCode() == ER_NO_SUCH_TABLE) return out;
+            throw e;
+        }
+        for (Migration m : MIGRATIONS) {
+            Long sum = out.get(m.version());
+            if (sum != null && sum != m.checksum())
+                throw new IllegalStateException("Schema migration " + m.version() + " (" + m.description()
+                        + ") was changed after it was applied");
+        }
+        return out;
+    }
+
+    private static boolean isCurrent(Map<Integer, Long> applied) {
+        for (Migration m : MIGRATIONS) if (!applied.containsKey(m.version())) return false;
+        return true;
+    }
+
+    /**
+     * Runs one migration and records it. MySQL commits DDL implicitly, so each statement is its
+     * own step; the tolerated errors make re-running a partly applied migration safe.
+     */
+    private static void apply(PooledConnection c, Migration m) throws SQLException {
+        boolean run = true;
+        if (m.onlyIf() != null) {
+            try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery(m.onlyIf())) {
+                run = rs.next() && rs.getLong(1) > 0;
+            }
+        }
+        if (run) {
+            for (String sql : m.statements()) {
+                try (Statement st = c.createStatement()) {
+                    st.execute(sql);
+                } catch (SQLException e) {
+                    if (e.getErrorCode() != ER_DUP_FIELDNAME && e.getErrorCode() != ER_DUP_KEYNAME) throw e;
+                }
+            }
+        }
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO schema_version(version, description, checksum) VALUES (?, ?, ?)")) {
+            ps.setInt(1, m.version());
+            ps.setString(2, m.description());
+            ps.setLong(3, m.checksum());
+            ps.executeUpdate();
+        }
+    }
+
+    private static boolean lock(PooledConnection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void unlock(PooledConnection c) {
+        try (PreparedStatement ps = c.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.executeQuery().close();
+        } catch (SQLException e) {
+            c.markBroken(); // closing the session releases the lock
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmark for {@link MemoryInventoryStore#all()} and category listings: sorting the catalog on
+ * every call (the old {@code all()}) versus walking the snapshot's display-order index.
+ * <p>
+ * For each catalog size it times:
+ * <ul>
+ *   <li><b>sort per call</b>: {@code products().stream().sorted(category, name)} as {@code all()}
+ *       used to do;</li>
+ *   <li><b>indexed all()</b>: walking {@link CatalogSnapshot#sorted()};</li>
+ *   <li><b>category</b>: walking one {@link CatalogSnapshot#inCategory(String)} range;</li>
+ *   <li><b>add</b> and <b>rename</b>: one product committed, which merges it into the index
+ *       (O(n) copy-on-write, no re-sort), and <b>price edit</b>, which keeps its key and is
+ *       swapped in place.</li>
+ * </ul>
+ * Each run checks the indexed order against the sorted one.
+ * <p>
+ * Usage:
+ * <pre>
+ *   javac *.java
+ *   java -Xmx2g SortedIndexBenchmark [sizes...]
+ * </pre>
+ * Defaults: 10000, 100000 and 1000000 products in 32 categories.
+ *
+ * @author Joseph Guarriello
+ */
+public class SortedIndexBenchmark {
+    private static final int CATEGORIES = 32;
+    private static final Comparator<Product> DISPLAY =
+            Comparator.comparing(Product::getCategory).thenComparing(Product::getName);
+
+    /**
+     * Entry point.
+     *
+     * @param args optional catalog sizes
+     */
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[] {10_000, 100_000, 1_000_000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) sizes[i] = Integer.parseInt(args[i]);
+
+        System.out.println("products   sort/call ms   indexed all() ms   category us   add us   rename us   price edit us   order ok");
+        for (int n : sizes) {
+            MemoryInventoryStore store = new MemoryInventoryStore();
+            store.addAll(catalog(n, new Random(n)));
+            int rounds = Math.max(3, 2_000_000 / n);
+
+            double sort = millis(rounds, () -> {
+                List<Product> sorted = store.snapshot().products().stream().sorted(DISPLAY).collect(Collectors.toList());
+                return sorted.get(sorted.size() / 2).getId();
+            });
+            double walk = millis(rounds * 10, () -> {
+                long sum = 0;
+                for (Product p : store.all()) sum += p.getId();
+                return sum;
+            });
+            double category = millis(rounds * 10, () -> {
+                long sum = 0;
+                for (Product p : store.inCategory("Category 07")) sum += p.getId();
+                return sum;
+            }) * 1000;
+
+            int edits = Math.max(3, Math.min(200, 20_000_000 / n));
+            int[] nextId = {n + 1};
+            double add = millis(edits, () -> {
+                int id = nextId[0]++;
+                store.add(new Product(id, "Added " + id, "Category 03", 1.0, 10));
+                return id;
+            }) * 1000;
+            double rename = millis(edits, () -> {
+                CatalogSnapshot.Edit e = store.edit();
+                Product p = store.snapshot().at(nextId[0] % n);
+                e.put(p.withCatalog(p.getName() + "*", p.getCategory(), p.getPriceCents()));
+                return store.commit(e).version();
+            }) * 1000;
+            double price = millis(edits, () -> {
+                CatalogSnapshot.Edit e = store.edit();
+                Product p = store.snapshot().at(nextId[0]++ % n);
+                e.put(p.withCatalog(p.getName(), p.getCategory(), p.getPriceCents() + 1));
+                return store.commit(e).version();
+            }) * 1000;
+
+            List<Product> expected = new ArrayList<>(store.snapshot().products());
+            expected.sort(DISPLAY.thenComparingInt(Product::getId));
+            boolean ok = expected.equals(store.all());
+            System.out.printf("%,8d %14.3f %18.4f %13.2f %8.1f %11.1f %15.1f   %s%n",
+                    n, sort, walk, category, add, rename, price, ok ? "yes" : "NO");
+        }
+    }
+
+    /** @return products with random names spread over {@value #CATEGORIES} categories */
+    private static List<Product> catalog(int n, Random rnd) {
+        List<Product> out = new ArrayList<>(n);
+        for (int i = 1; i <= n; i++) {
+            String category = String.format("Category %02d", rnd.nextInt(CATEGORIES));
+            out.add(new Product(i, "Item " + Integer.toString(rnd.nextInt(n), 36), category, 1 + rnd.nextInt(900) / 100.0, 100));
+        }
+        return out;
+    }
+
+    /** Runs {@code task} once to warm up, then {@code rounds} times; returns mean milliseconds. */
+    private static double millis(int rounds, LongSupplier task) {
+        long sink = task.getAsLong();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) sink += task.getAsLong();
+        double ms = (System.nanoTime() - t0) / 1e6 / rounds;
+        if (sink == 42) System.out.print(""); // keep the results live
+        return ms;
+    }
+}
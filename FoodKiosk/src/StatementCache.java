@@ -0,0 +1,110 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-connection LRU cache of {@link PreparedStatement}s keyed by SQL text.
+ * <p>
+ * With {@code useServerPrepStmts=true} every {@code prepareStatement} call is a round trip
+ * in which MySQL parses and plans the query. Keeping the statement open per connection means
+ * each hot query is parsed once per physical connection instead of once per call.
+ * <p>
+ * Cached statements are owned by the cache: borrowers must <em>not</em> close them.
+ * The least recently used statement is closed when the cache is full.
+ * Not thread-safe; a connection is only ever used by the thread that leased it.
+ *
+ * @author Joseph Guarriello
+ */
+public class StatementCache {
+    private final Connection connection;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    /**
+     * @param connection connection the statements belong to
+     * @param capacity   maximum number of open statements
+     * @param hits       counter incremented on every cache hit (may be shared pool-wide)
+     * @param misses     counter incremented on every prepare (may be shared pool-wide)
+     */
+    StatementCache(Connection connection, int capacity, LongAdder hits, LongAdder misses) {
+        this.connection = connection;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) return false;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached statement for {@code sql}, preparing it on a miss.
+     * Parameters and pending batches from the previous use are cleared.
+     *
+     * @param sql SQL text (used verbatim as the cache key)
+     * @return an open prepared statement owned by this cache
+     * @throws SQLException on JDBC errors
+     */
+    public PreparedStatement get(String sql) throws SQLException {
+        return get(sql, false);
+    }
+
+    /**
+     * Returns the cached statement for {@code sql}, preparing it on a miss.
+     *
+     * @param sql        SQL text (used verbatim as the cache key)
+     * @param returnKeys prepare with {@link Statement#RETURN_GENERATED_KEYS} on a miss
+     * @return an open prepared statement owned by this cache
+     * @throws SQLException on JDBC errors
+     */
+    public PreparedStatement get(String sql, boolean returnKeys) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps != null && !ps.isClosed()) {
+            hits.increment();
+            ps.clearParameters();
+            ps.clearBatch();
+            return ps;
+        }
+        misses.increment();
+        ps = returnKeys
+                ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : connection.prepareStatement(sql);
+        statements.put(sql, ps);
+        return ps;
+    }
+
+    /**
+     * Prepares {@code sql} ahead of time if it is not already cached. Counts as neither a hit nor a miss.
+     *
+     * @param sql SQL text
+     * @throws SQLException on JDBC errors
+     */
+    public void preload(String sql) throws SQLException {
+        if (!statements.containsKey(sql)) statements.put(sql, connection.prepareStatement(sql));
+    }
+
+    /** @return number of statements currently held open */
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * Closes every cached statement.
+     */
+    public void clear() {
+        for (PreparedStatement ps : statements.values()) closeQuietly(ps);
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try { ps.close(); } catch (SQLException ignored) {}
+    }
+}
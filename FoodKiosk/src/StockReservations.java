@@ -0,0 +1,484 @@
+import java.security.SecureRandom;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * Soft stock reservations for carts: adding an item to a cart holds its quantity, so two
+ * customers cannot both put the last units in their carts and find out at checkout.
+ * <p>
+ * Where the reserved units are counted depends on the store ({@link #forStore}):
+ * <ul>
+ *   <li>MySQL ({@link Inventory}): kiosks share the database, so holds are rows of
+ *       {@code stock_holds(hold_id, product_id, qty, expires_at)}. Raising a hold locks the
+ *       product row ({@code SELECT ... FOR UPDATE}, the row the guarded sale decrement locks),
+ *       drops that product's lapsed holds, and succeeds only if {@code stock} minus every other
+ *       live hold still covers it. Every change pushes the hold's {@code expires_at} out, and rows
+ *       past it no longer count, so a kiosk that dies holds its carts' stock for one TTL at most.
+ *       If the database cannot be reached the change is let through: the hold is soft</li>
+ *   <li>in-process stores: one process owns the stock, so each product has a reserved-units
+ *       counter updated with a compare-and-set loop; concurrent carts never take a lock, so
+ *       throughput scales with cores. Stock comes from the caller's view of the catalog
+ *       ({@code stockOf})</li>
+ * </ul>
+ * Either way the guarded decrement at checkout stays the final authority.
+ * <p>
+ * A cart's reservations live in a {@link Hold}. Every change to the hold pushes its deadline
+ * {@code ttl} into the future; a hashed timer wheel (one daemon thread, {@code tick}-wide buckets)
+ * releases holds whose deadline has passed, so abandoned carts give their stock back. A hold
+ * whose deadline moved since it was scheduled is simply re-bucketed when its slot comes round.
+ * At checkout the hold is released once the sale commits: the sold units have then left stock.
+ *
+ * @author Joseph Guarriello
+ */
+public class StockReservations implements AutoCloseable {
+    /** Buckets in the timer wheel (power of two). */
+    private static final int WHEEL_SIZE = 512;
+    private static final SecureRandom HOLD_IDS = new SecureRandom();
+
+    private static final String SQL_LOCK_STOCK = "SELECT stock FROM products WHERE id=? FOR UPDATE";
+    private static final String SQL_PURGE = "DELETE FROM stock_holds WHERE product_id=? AND expires_at <= NOW(3)";
+    private static final String SQL_HELD_BY_OTHERS =
+            "SELECT COALESCE(SUM(qty), 0) FROM stock_holds WHERE product_id=? AND hold_id<>?";
+    private static final String SQL_HELD =
+            "SELECT COALESCE(SUM(qty), 0) FROM stock_holds WHERE product_id=? AND expires_at > NOW(3)";
+    private static final String SQL_HOLD = """
+    INSERT INTO stock_holds(hold_id, product_id, qty, expires_at)
+    VALUES (?,?,?,TIMESTAMPADD(MICROSECOND, ?, NOW(3)))
+    ON DUPLICATE KEY UPDATE qty=VALUES(qty), expires_at=VALUES(expires_at)
+""";
+    private static final String SQL_LOWER = "UPDATE stock_holds SET qty=? WHERE hold_id=? AND product_id=?";
+    private static final String SQL_DROP = "DELETE FROM stock_holds WHERE hold_id=? AND product_id=?";
+    private static final String SQL_EXTEND =
+            "UPDATE stock_holds SET expires_at=TIMESTAMPADD(MICROSECOND, ?, NOW(3)) WHERE hold_id=?";
+    private static final String SQL_RELEASE = "DELETE FROM stock_holds WHERE hold_id=?";
+
+    private final Ledger ledger;
+    private final long ttlNanos;
+    private final long tickNanos;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ConcurrentLinkedQueue<Hold>[] wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+    private final long startNanos = System.nanoTime();
+    private final Thread ticker;
+    private volatile boolean running = true;
+
+    /**
+     * Creates in-process reservations with a TTL of {@code kiosk.reserve.ttlSec} (default 600)
+     * and a wheel tick of {@code kiosk.reserve.tickMs} (default 1000).
+     *
+     * @param stockOf current stock of a product
+     */
+    public StockReservations(ToIntFunction<Product> stockOf) {
+        this(stockOf, ttlMillis(), tickMillis());
+    }
+
+    /**
+     * Creates in-process reservations and starts the expiry thread.
+     *
+     * @param stockOf    current stock of a product
+     * @param ttlMillis  how long an untouched hold lasts (&gt; 0)
+     * @param tickMillis timer wheel resolution (&gt; 0)
+     */
+    public StockReservations(ToIntFunction<Product> stockOf, long ttlMillis, long tickMillis) {
+        this(new LocalCounters(stockOf), ttlMillis, tickMillis);
+    }
+
+    /**
+     * Creates reservations for a store, sized like {@link #StockReservations(ToIntFunction)}:
+     * held in the shared database for {@link Inventory}, in this process otherwise.
+     *
+     * @param store   the kiosk's inventory store
+     * @param stockOf current stock of a product, as the caller sees it
+     * @return running reservations
+     */
+    public static StockReservations forStore(InventoryStore store, ToIntFunction<Product> stockOf) {
+        if (!(store instanceof Inventory inv)) return new StockReservations(stockOf);
+        long ttl = ttlMillis();
+        return new StockReservations(new SharedHolds(inv.pool(), stockOf, ttl), ttl, tickMillis());
+    }
+
+    private StockReservations(Ledger ledger, long ttlMillis, long tickMillis) {
+        if (ttlMillis <= 0 || tickMillis <= 0) throw new IllegalArgumentException("ttl and tick must be positive");
+        this.ledger = ledger;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        for (int i = 0; i < WHEEL_SIZE; i++) wheel[i] = new ConcurrentLinkedQueue<>();
+        ticker = new Thread(this::run, "reservation-expiry");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Opens an empty hold for a new cart.
+     *
+     * @return the hold
+     */
+    public Hold open() {
+        return new Hold();
+    }
+
+    /**
+     * @param p product
+     * @return units in stock not held by any cart (never negative)
+     */
+    public int available(Product p) {
+        return Math.max(0, ledger.stock(p) - reserved(p.getId()));
+    }
+
+    /**
+     * @param productId product identifier
+     * @return units held by all carts
+     */
+    public int reserved(int productId) {
+        return ledger.reserved(productId);
+    }
+
+    /** Stops the expiry thread. Holds stay as they are. */
+    @Override
+    public void close() {
+        running = false;
+        ticker.interrupt();
+    }
+
+    private static long ttlMillis() {
+        return TimeUnit.SECONDS.toMillis(Long.getLong("kiosk.reserve.ttlSec", 600L));
+    }
+
+    private static long tickMillis() {
+        return Long.getLong("kiosk.reserve.tickMs", 1_000L);
+    }
+
+    // ---------- Ledgers ----------
+
+    /** Where the units held by all carts are counted. */
+    private interface Ledger {
+        /** @return the product's stock */
+        int stock(Product p);
+
+        /** @return units held by all carts */
+        int reserved(int productId);
+
+        /**
+         * Changes what a hold reserves of a product from {@code held} to {@code qty} units and
+         * restarts the hold's TTL; an increase only if stock covers it.
+         *
+         * @return {@code false} (and nothing changed) if the increase is not available
+         */
+        boolean set(long holdId, Product p, int held, int qty);
+
+        /** Releases everything a hold reserves ({@code units}: product id to units). */
+        void release(long holdId, Map<Integer, Integer> units);
+    }
+
+    /** Lock-free per-product counters, for stores owned by this process. */
+    private static final class LocalCounters implements Ledger {
+        private final ToIntFunction<Product> stockOf;
+        private final Map<Integer, AtomicInteger> reserved = new ConcurrentHashMap<>();
+
+        LocalCounters(ToIntFunction<Product> stockOf) {
+            this.stockOf = stockOf;
+        }
+
+        @Override public int stock(Product p) {
+            return stockOf.applyAsInt(p);
+        }
+
+        @Override public int reserved(int productId) {
+            AtomicInteger r = reserved.get(productId);
+            return r == null ? 0 : r.get();
+        }
+
+        @Override public boolean set(long holdId, Product p, int held, int qty) {
+            if (qty > held) return acquire(p, qty - held);
+            if (qty < held) releaseUnits(p.getId(), held - qty);
+            return true;
+        }
+
+        @Override public void release(long holdId, Map<Integer, Integer> units) {
+            units.forEach(this::releaseUnits);
+        }
+
+        /**
+         * Adds {@code qty} to a product's reserved count if stock covers it (lock-free).
+         */
+        private boolean acquire(Product p, int qty) {
+            AtomicInteger r = reserved.computeIfAbsent(p.getId(), k -> new AtomicInteger());
+            int stock = stockOf.applyAsInt(p);
+            for (int cur = r.get(); ; cur = r.get()) {
+                if (stock - cur < qty) return false;
+                if (r.compareAndSet(cur, cur + qty)) return true;
+            }
+        }
+
+        private void releaseUnits(int productId, int qty) {
+            AtomicInteger r = reserved.get(productId);
+            if (r != null) r.addAndGet(-qty);
+        }
+    }
+
+    /**
+     * Holds as rows of {@code stock_holds}, shared by every kiosk on the database. An increase is
+     * checked against the product's locked stock row, so it is serialized with other kiosks'
+     * increases and sales of that product.
+     */
+    private static final class SharedHolds implements Ledger {
+        private final ConnectionPool pool;
+        private final ToIntFunction<Product> stockOf;
+        private final long ttlMicros;
+
+        SharedHolds(ConnectionPool pool, ToIntFunction<Product> stockOf, long ttlMillis) {
+            this.pool = pool;
+            this.stockOf = stockOf;
+            this.ttlMicros = TimeUnit.MILLISECONDS.toMicros(ttlMillis);
+        }
+
+        @Override public int stock(Product p) {
+            return stockOf.applyAsInt(p);
+        }
+
+        @Override public int reserved(int productId) {
+            try (PooledConnection c = pool.borrow()) {
+                PreparedStatement ps = c.prepareCached(SQL_HELD);
+                ps.setInt(1, productId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            } catch (SQLException e) {
+                System.out.println("Stock holds unavailable: " + e.getMessage());
+                return 0;
+            }
+        }
+
+        @Override public boolean set(long holdId, Product p, int held, int qty) {
+            for (int attempt = 1; ; attempt++) {
+                try (PooledConnection c = pool.borrow()) {
+                    c.setAutoCommit(false);
+                    if (qty > held && !available(c, holdId, p.getId(), qty)) {
+                        c.rollback();
+                        return false;
+                    }
+                    PreparedStatement ps;
+                    if (qty == 0) {
+                        ps = c.prepareCached(SQL_DROP);
+                        ps.setLong(1, holdId);
+                        ps.setInt(2, p.getId());
+                    } else if (qty > held) {
+                        ps = c.prepareCached(SQL_HOLD);
+                        ps.setLong(1, holdId);
+                        ps.setInt(2, p.getId());
+                        ps.setInt(3, qty);
+                        ps.setLong(4, ttlMicros);
+                    } else {
+                        ps = c.prepareCached(SQL_LOWER);
+                        ps.setInt(1, qty);
+                        ps.setLong(2, holdId);
+                        ps.setInt(3, p.getId());
+                    }
+                    ps.executeUpdate();
+                    PreparedStatement extend = c.prepareCached(SQL_EXTEND);
+                    extend.setLong(1, ttlMicros);
+                    extend.setLong(2, holdId);
+                    extend.executeUpdate();
+                    c.commit();
+                    return true;
+                } catch (SQLException e) {
+                    if (attempt < Inventory.MAX_SALE_ATTEMPTS && Inventory.isRetryable(e)) {
+                        Inventory.backOff(attempt);
+                        continue;
+                    }
+                    System.out.println("Stock hold not recorded for " + p.getName() + ": " + e.getMessage());
+                    return true; // soft: the guarded decrement at checkout still decides
+                }
+            }
+        }
+
+        @Override public void release(long holdId, Map<Integer, Integer> units) {
+            if (units.isEmpty()) return;
+            try (PooledConnection c = pool.borrow()) {
+                PreparedStatement ps = c.prepareCached(SQL_RELEASE);
+                ps.setLong(1, holdId);
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                System.out.println("Stock hold not released (it expires on its own): " + e.getMessage());
+            }
+        }
+
+        /**
+         * Locks the product's row, drops its lapsed holds and checks that the stock covers
+         * {@code qty} next to every other live hold.
+         */
+        private static boolean available(PooledConnection c, long holdId, int productId, int qty) throws SQLException {
+            PreparedStatement lock = c.prepareCached(SQL_LOCK_STOCK);
+            lock.setInt(1, productId);
+            int stock;
+            try (ResultSet rs = lock.executeQuery()) {
+                if (!rs.next()) return false;
+                stock = rs.getInt(1);
+            }
+            PreparedStatement purge = c.prepareCached(SQL_PURGE);
+            purge.setInt(1, productId);
+            purge.executeUpdate();
+            PreparedStatement others = c.prepareCached(SQL_HELD_BY_OTHERS);
+            others.setInt(1, productId);
+            others.setLong(2, holdId);
+            try (ResultSet rs = others.executeQuery()) {
+                rs.next();
+                return stock - rs.getInt(1) >= qty;
+            }
+        }
+    }
+
+    // ---------- Holds ----------
+
+    /**
+     * The reservations of one cart. Methods are called by the cart's owner and by the expiry
+     * thread, so they synchronize on the hold; the shared counters are lock-free.
+     */
+    public final class Hold {
+        private final long id = HOLD_IDS.nextLong();
+        private final Map<Integer, Integer> units = new HashMap<>();
+        private volatile long deadline;
+        private boolean scheduled;
+        private boolean expired;
+
+        private Hold() { }
+
+        /**
+         * Reserves more of a product.
+         *
+         * @param p   product
+         * @param qty additional units (&gt; 0)
+         * @return {@code false} (and nothing reserved) if not enough units are available
+         */
+        public synchronized boolean reserve(Product p, int qty) {
+            if (qty <= 0) throw new IllegalArgumentException("Quantity must be positive");
+            int held = units.getOrDefault(p.getId(), 0);
+            if (!ledger.set(id, p, held, held + qty)) return false;
+            units.put(p.getId(), held + qty);
+            touch();
+            return true;
+        }
+
+        /**
+         * Changes the units held for a product, reserving or releasing the difference.
+         *
+         * @param p   product
+         * @param qty new quantity ({@code 0} releases the product)
+         * @return {@code false} (and the hold unchanged) if an increase is not available
+         */
+        public synchronized boolean set(Product p, int qty) {
+            if (qty < 0) throw new IllegalArgumentException("Quantity must not be negative");
+            int held = units.getOrDefault(p.getId(), 0);
+            if (qty != held && !ledger.set(id, p, held, qty)) return false;
+            if (qty == 0) units.remove(p.getId());
+            else units.put(p.getId(), qty);
+            touch();
+            return true;
+        }
+
+        /**
+         * Re-reserves a cart's lines after the hold expired (a no-op while it is live).
+         *
+         * @param lines cart lines
+         * @return products that could not be held again; their lines are not reserved
+         */
+        public synchronized List<Product> renew(Map<Product, Integer> lines) {
+            List<Product> missing = new ArrayList<>();
+            if (!expired) return missing;
+            expired = false;
+            lines.forEach((p, q) -> {
+                int held = units.getOrDefault(p.getId(), 0); // reserved again since expiry
+                if (q != held && !ledger.set(id, p, held, q)) { missing.add(p); return; }
+                units.put(p.getId(), q);
+            });
+            touch();
+            return missing;
+        }
+
+        /**
+         * Releases everything (cart cleared, abandoned, or its sale committed).
+         */
+        public synchronized void releaseAll() {
+            ledger.release(id, units);
+            units.clear();
+        }
+
+        /**
+         * @return {@code true} if the TTL ran out and the cart's units were released; stays set
+         *         until {@link #renew} re-reserves the cart
+         */
+        public synchronized boolean isExpired() {
+            return expired;
+        }
+
+        /**
+         * @param productId product identifier
+         * @return units this hold reserves for the product
+         */
+        public synchronized int held(int productId) {
+            return units.getOrDefault(productId, 0);
+        }
+
+        /** Pushes the deadline out and makes sure the hold is on the wheel. */
+        private void touch() {
+            deadline = System.nanoTime() + ttlNanos;
+            if (!scheduled) {
+                scheduled = true;
+                schedule(this);
+            }
+        }
+
+        /**
+         * Called from the wheel: releases the hold if its deadline passed, else re-buckets it.
+         */
+        private synchronized void onTimer(long now) {
+            if (units.isEmpty()) { scheduled = false; return; }
+            if (now - deadline < 0) { schedule(this); return; }
+            scheduled = false;
+            expired = true;
+            releaseAll();
+        }
+    }
+
+    // ---------- Timer wheel ----------
+
+    private void schedule(Hold h) {
+        long ticks = Math.max(0, (h.deadline - startNanos + tickNanos - 1) / tickNanos);
+        wheel[(int) (ticks & (WHEEL_SIZE - 1))].add(h);
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            long wait = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            long now = System.nanoTime();
+            // catch up on every bucket whose time has come
+            for (long due = (now - startNanos) / tickNanos; tick <= due; tick++) {
+                ConcurrentLinkedQueue<Hold> bucket = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+                int n = bucket.size();
+                for (int i = 0; i < n; i++) {
+                    Hold h = bucket.poll();
+                    if (h == null) break;
+                    h.onTimer(now);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Products ranked by units sold (descending, ties by id), kept up to date as sales happen.
+ * <p>
+ * Ranking entries live in a concurrent skip list ordered by {@code (sold desc, id asc)}, and an
+ * id map points at each product's current entry. A sale replaces one entry (O(log n)), and
+ * {@link #top(int)} walks the first {@code k} entries (O(k)), so asking for the best sellers never
+ * sorts the catalog or queries the database. Readers never block writers; a read that races an
+ * update sees the product at either its old or its new rank.
+ *
+ * @author Joseph Guarriello
+ */
+public class TopSellers {
+    /** Sort order of {@link #ranked}: most sold first, then lowest id. */
+    private static final Comparator<Entry> ORDER =
+            Comparator.comparingInt((Entry e) -> e.sold()).reversed().thenComparingInt(Entry::id);
+
+    /** A product's rank key, frozen at the time it was recorded. */
+    private record Entry(int id, int sold, Product product) { }
+
+    private final ConcurrentSkipListSet<Entry> ranked = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Integer, Entry> byId = new ConcurrentHashMap<>();
+
+    /**
+     * Replaces the ranking with the given products.
+     *
+     * @param products every product to rank
+     */
+    public synchronized void seed(Collection<Product> products) {
+        ranked.clear();
+        byId.clear();
+        for (Product p : products) update(p);
+    }
+
+    /**
+     * Records a product's current sold count (call after every sale, restock or reload of it).
+     *
+     * @param p product whose count changed
+     */
+    public void update(Product p) {
+        byId.compute(p.getId(), (id, old) -> {
+            if (old != null) {
+                if (old.sold() == p.getSold() && old.product() == p) return old;
+                ranked.remove(old);
+            }
+            Entry e = new Entry(id, p.getSold(), p);
+            ranked.add(e);
+            return e;
+        });
+    }
+
+    /**
+     * Drops a product from the ranking.
+     *
+     * @param id product identifier
+     */
+    public void remove(int id) {
+        byId.computeIfPresent(id, (k, old) -> {
+            ranked.remove(old);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the best sellers.
+     *
+     * @param n maximum number of products (negative treated as 0)
+     * @return up to {@code n} products, most sold first
+     */
+    public List<Product> top(int n) {
+        List<Product> out = new ArrayList<>(Math.max(0, Math.min(n, 64)));
+        Iterator<Entry> it = ranked.iterator();
+        while (out.size() < n && it.hasNext()) out.add(it.next().product());
+        return out;
+    }
+}